@@ -0,0 +1,388 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Graceful timeouts learned from how long the previous graceful shutdowns of the same kind of processes took.
+ * <p>
+ * The durations are recorded per label (e.g. the name of a service) in a streaming histogram with logarithmic buckets,
+ * so the memory used does not grow with the number of samples and each percentile is overestimated by at most 10%.
+ * Older samples lose weight over time as all counts are halved once a label has {@value #MAX_SAMPLES} samples
+ * (the counts are fractional, so a single rare slow shutdown keeps part of its weight instead of being dropped).
+ * A shutdown that timed out is recorded with the timeout as its duration, so the estimate grows if the timeouts are too short.
+ * </p>
+ * <p>
+ * The timeout is the chosen percentile of the recorded durations plus a margin, limited by the minimum and maximum timeout.
+ * Until a label has enough samples the default timeout is used.
+ * </p>
+ * <p>
+ * If a file is given the history is loaded from it on creation and saved in a background thread shortly after a sample is recorded,
+ * so samples recorded in a burst are written at once and the history survives restarting the JVM.
+ * Failing to save it is logged. Call {@link #save()} to write it right away, e.g. before the JVM exits.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ *
+ * @see ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, AdaptiveTimeout, String, long, TimeUnit)
+ */
+public class AdaptiveTimeout {
+
+  private static final Logger log = LoggerFactory.getLogger(AdaptiveTimeout.class);
+
+  /**
+   * Number of samples of a label after which the counts are halved.
+   */
+  public static final int MAX_SAMPLES = 1000;
+
+  /**
+   * Ratio between the bounds of consecutive buckets.
+   */
+  private static final double GAMMA = 1.1;
+
+  /**
+   * Number of buckets, enough for durations up to about 10 days in milliseconds.
+   */
+  private static final int BUCKETS = 220;
+
+  /**
+   * Weights below this are dropped when halving, so the saved history stays small.
+   */
+  private static final double MIN_WEIGHT = 0.001;
+
+  private final File file;
+
+  /**
+   * Fractional counts per bucket, the last element holds the total count.
+   */
+  private final Map<String, double[]> histograms = new HashMap<String, double[]>();
+
+  /**
+   * <code>true</code> if a save is scheduled but has not started yet.
+   */
+  private final AtomicBoolean savePending = new AtomicBoolean();
+
+  private ScheduledExecutorService saver;
+
+  private volatile long saveDelay = 1000;
+
+  private volatile double percentile = 99;
+
+  private volatile long margin = 1000;
+
+  private volatile long minTimeout = 1000;
+
+  private volatile long maxTimeout = TimeUnit.MINUTES.toMillis(2);
+
+  private volatile long defaultTimeout = TimeUnit.SECONDS.toMillis(30);
+
+  private volatile int minSamples = 5;
+
+  /**
+   * Creates an instance that keeps the history only in memory.
+   */
+  public AdaptiveTimeout() {
+    this.file = null;
+  }
+
+  /**
+   * Creates an instance that keeps the history in the given file.
+   *
+   * @param file file where the history is loaded from (if it exists) and saved to.
+   * @throws IOException if the existing file could not be read.
+   */
+  public AdaptiveTimeout(File file) throws IOException {
+    this.file = file;
+    if (file.exists()) {
+      load();
+    }
+  }
+
+  public double getPercentile() {
+    return percentile;
+  }
+
+  /**
+   * @param percentile the percentile (from <code>0</code> to <code>100</code>) of the recorded durations used for the timeout.
+   */
+  public void setPercentile(double percentile) {
+    if (!(percentile >= 0 && percentile <= 100)) {
+      throw new IllegalArgumentException("Percentile must be between 0 and 100: " + percentile);
+    }
+    this.percentile = percentile;
+  }
+
+  /**
+   * @param margin time added to the percentile of the recorded durations.
+   * @param unit the time unit of the margin argument.
+   */
+  public void setMargin(long margin, TimeUnit unit) {
+    this.margin = unit.toMillis(margin);
+  }
+
+  /**
+   * @param minTimeout the shortest timeout returned.
+   * @param maxTimeout the longest timeout returned.
+   * @param unit the time unit of the timeout arguments.
+   */
+  public void setBounds(long minTimeout, long maxTimeout, TimeUnit unit) {
+    if (minTimeout > maxTimeout) {
+      throw new IllegalArgumentException("Minimum timeout " + minTimeout + " is greater than the maximum " + maxTimeout);
+    }
+    this.minTimeout = unit.toMillis(minTimeout);
+    this.maxTimeout = unit.toMillis(maxTimeout);
+  }
+
+  /**
+   * @param defaultTimeout the timeout used until a label has enough samples.
+   * @param unit the time unit of the defaultTimeout argument.
+   */
+  public void setDefaultTimeout(long defaultTimeout, TimeUnit unit) {
+    this.defaultTimeout = unit.toMillis(defaultTimeout);
+  }
+
+  /**
+   * @param saveDelay how long to wait after recording a sample before saving the history, so more samples are saved at once.
+   * @param unit the time unit of the saveDelay argument.
+   */
+  public void setSaveDelay(long saveDelay, TimeUnit unit) {
+    this.saveDelay = unit.toMillis(saveDelay);
+  }
+
+  /**
+   * @param minSamples number of samples a label needs before its history is used.
+   */
+  public void setMinSamples(int minSamples) {
+    this.minSamples = minSamples;
+  }
+
+  /**
+   * @param label the kind of the process.
+   * @param unit the desired time unit.
+   * @return the graceful timeout for processes with the given label.
+   */
+  public long getGracefulTimeout(String label, TimeUnit unit) {
+    long result;
+    synchronized (histograms) {
+      double[] counts = histograms.get(label);
+      if (counts == null || counts[BUCKETS] < minSamples) {
+        return unit.convert(defaultTimeout, TimeUnit.MILLISECONDS);
+      }
+      result = quantile(counts, percentile / 100) + margin;
+    }
+    result = Math.max(minTimeout, Math.min(maxTimeout, result));
+    return unit.convert(result, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * @param label the kind of the process.
+   * @return number of samples (after halving) recorded for the given label.
+   */
+  public int getSampleCount(String label) {
+    synchronized (histograms) {
+      double[] counts = histograms.get(label);
+      return counts == null ? 0 : (int) Math.round(counts[BUCKETS]);
+    }
+  }
+
+  /**
+   * Records the duration of a graceful shutdown.
+   *
+   * @param label the kind of the process.
+   * @param duration how long the graceful shutdown took (or the timeout if it did not finish).
+   * @param unit the time unit of the duration argument.
+   */
+  public void record(String label, long duration, TimeUnit unit) {
+    if (label == null) {
+      throw new IllegalArgumentException("Label must not be null");
+    }
+    synchronized (histograms) {
+      double[] counts = histograms.get(label);
+      if (counts == null) {
+        counts = new double[BUCKETS + 1];
+        histograms.put(label, counts);
+      }
+      counts[bucket(unit.toMillis(duration))]++;
+      if (++counts[BUCKETS] >= MAX_SAMPLES) {
+        double total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+          counts[i] = counts[i] / 2 < MIN_WEIGHT ? 0 : counts[i] / 2;
+          total += counts[i];
+        }
+        counts[BUCKETS] = total;
+      }
+    }
+    if (file != null && savePending.compareAndSet(false, true)) {
+      scheduleSave();
+    }
+  }
+
+  private void scheduleSave() {
+    // Not locking this, which is held while saving
+    synchronized (savePending) {
+      if (saver == null) {
+        saver = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+          @Override
+          public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "adaptive-timeout-saver");
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+      }
+      saver.schedule(new Runnable() {
+        @Override
+        public void run() {
+          // Samples recorded from now on schedule another save
+          savePending.set(false);
+          try {
+            save();
+          }
+          catch (Exception e) {
+            log.warn("Could not save graceful shutdown history to {}", file, e);
+          }
+        }
+      }, saveDelay, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private static int bucket(long millis) {
+    if (millis <= 1) {
+      return 0;
+    }
+    int result = (int) Math.ceil(Math.log(millis) / Math.log(GAMMA));
+    return Math.min(result, BUCKETS - 1);
+  }
+
+  /**
+   * @return upper bound of the bucket containing the given quantile in milliseconds.
+   */
+  private static long quantile(double[] counts, double quantile) {
+    // Summed in the same order as below, so the last non-empty bucket always reaches the rank
+    double total = 0;
+    for (int i = 0; i < BUCKETS; i++) {
+      total += counts[i];
+    }
+    double rank = quantile * total;
+    double seen = 0;
+    int i = 0;
+    for (; i < BUCKETS - 1; i++) {
+      seen += counts[i];
+      if (seen >= rank && seen > 0) {
+        break;
+      }
+    }
+    return (long) Math.ceil(Math.pow(GAMMA, i));
+  }
+
+  /**
+   * Saves the history to the file given in the constructor.
+   * The file is replaced atomically (if the file system supports it) only after the new content is written completely.
+   *
+   * @throws IOException on IO error.
+   */
+  public void save() throws IOException {
+    if (file == null) {
+      throw new IllegalStateException("No file given");
+    }
+    Properties properties = new Properties();
+    synchronized (histograms) {
+      for (Map.Entry<String, double[]> entry : histograms.entrySet()) {
+        StringBuilder value = new StringBuilder();
+        double[] counts = entry.getValue();
+        for (int i = 0; i < BUCKETS; i++) {
+          if (counts[i] > 0) {
+            if (value.length() > 0) {
+              value.append(' ');
+            }
+            value.append(i).append(':');
+            if (counts[i] == Math.rint(counts[i])) {
+              value.append((long) counts[i]);
+            }
+            else {
+              value.append(counts[i]);
+            }
+          }
+        }
+        properties.setProperty(entry.getKey(), value.toString());
+      }
+    }
+    synchronized (this) {
+      File temp = new File(file.getPath() + ".tmp");
+      OutputStream out = new FileOutputStream(temp);
+      try {
+        properties.store(out, "Graceful shutdown durations (bucket:count)");
+      }
+      finally {
+        out.close();
+      }
+      try {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+      }
+      catch (AtomicMoveNotSupportedException e) {
+        Files.move(temp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      }
+    }
+  }
+
+  private void load() throws IOException {
+    Properties properties = new Properties();
+    InputStream in = new FileInputStream(file);
+    try {
+      properties.load(in);
+    }
+    finally {
+      in.close();
+    }
+    synchronized (histograms) {
+      for (String label : properties.stringPropertyNames()) {
+        double[] counts = new double[BUCKETS + 1];
+        for (String pair : properties.getProperty(label).trim().split("\\s+")) {
+          if (pair.isEmpty()) {
+            continue;
+          }
+          int i = pair.indexOf(':');
+          try {
+            int bucket = Integer.parseInt(pair.substring(0, i));
+            double count = Double.parseDouble(pair.substring(i + 1));
+            if (bucket < 0 || bucket >= BUCKETS || !(count >= 0) || Double.isInfinite(count)) {
+              throw new NumberFormatException();
+            }
+            counts[bucket] += count;
+            counts[BUCKETS] += count;
+          }
+          catch (RuntimeException e) {
+            throw new IOException("Invalid history of '" + label + "' in " + file + ": " + pair);
+          }
+        }
+        histograms.put(label, counts);
+      }
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(percentile=" + percentile + ", margin=" + margin + " ms, bounds=" + minTimeout + "-" + maxTimeout
+        + " ms, file=" + file + ")";
+  }
+
+}
@@ -0,0 +1,309 @@
+package org.zeroturnaround.process;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.zeroturnaround.process.unix.LibC;
+
+/**
+ * Represents all processes of a Linux cgroup v2 control group (e.g. a systemd service or a container).
+ * <p>
+ * It reads <code>cgroup.events</code> for checking the status, <code>cgroup.procs</code> of the group and its descendant groups
+ * for listing the members and
+ * writes <code>cgroup.kill</code> for destroying all members forcefully.
+ * The last one kills every member atomically, including processes forked during the operation.
+ * On kernels older than 5.14 without <code>cgroup.kill</code> the members are signaled one by one instead.
+ * Graceful destroying always signals the members one by one.
+ * </p>
+ * <p>
+ * <code>waitFor</code> methods watch <code>cgroup.events</code> for modifications (the kernel notifies about any change in
+ * the <code>populated</code> value) and fall back to polling in case no notification arrives.
+ * </p>
+ * <p>
+ * The cgroup file system root is <code>/sys/fs/cgroup</code> by default.
+ * Any other directory with the same files can be used instead, e.g. in tests.
+ * </p>
+ */
+public class CgroupProcess extends PollingProcess {
+
+  /**
+   * Default mount point of the cgroup v2 file system.
+   */
+  public static final File DEFAULT_ROOT = new File("/sys/fs/cgroup");
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  private static final String EVENTS = "cgroup.events";
+  private static final String PROCS = "cgroup.procs";
+  private static final String KILL = "cgroup.kill";
+
+  private static final String POPULATED = "populated ";
+
+  /**
+   * The control group directory.
+   */
+  private final File dir;
+
+  /**
+   * @param path path of the control group relative to {@link #DEFAULT_ROOT}, e.g. <code>system.slice/my.service</code>.
+   */
+  public CgroupProcess(String path) {
+    this(DEFAULT_ROOT, path);
+  }
+
+  /**
+   * @param root the cgroup file system root.
+   * @param path path of the control group relative to the root, e.g. <code>system.slice/my.service</code>.
+   */
+  public CgroupProcess(File root, String path) {
+    this(new File(root, path));
+  }
+
+  /**
+   * @param dir the control group directory.
+   */
+  public CgroupProcess(File dir) {
+    this.dir = dir;
+  }
+
+  /**
+   * @return the control group directory.
+   */
+  public File getDir() {
+    return dir;
+  }
+
+  /**
+   * @return <code>true</code> if the control group has any live processes (including its descendant groups),
+   *    <code>false</code> if it is empty or was removed.
+   * @throws IOException on IO error.
+   */
+  @Override
+  public boolean isAlive() throws IOException {
+    BufferedReader reader;
+    try {
+      reader = open(EVENTS);
+    }
+    catch (FileNotFoundException e) {
+      return false;
+    }
+    try {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        if (line.startsWith(POPULATED)) {
+          return !line.substring(POPULATED.length()).trim().equals("0");
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+    throw new IOException("No '" + POPULATED.trim() + "' entry in " + new File(dir, EVENTS));
+  }
+
+  /**
+   * @return the process IDs of the members of this control group and its descendant groups.
+   *    The result is empty if the group was removed.
+   * @throws IOException on IO error.
+   */
+  public int[] getPids() throws IOException {
+    // Under the no internal processes rule a non-leaf group (e.g. a slice) has members only in its descendants
+    int[] result = new int[16];
+    int size = 0;
+    List<File> groups = new ArrayList<File>();
+    groups.add(dir);
+    for (int i = 0; i < groups.size(); i++) {
+      File group = groups.get(i);
+      BufferedReader reader;
+      try {
+        reader = open(group, PROCS);
+      }
+      catch (FileNotFoundException e) {
+        // Removed meanwhile
+        continue;
+      }
+      try {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          line = line.trim();
+          if (line.isEmpty()) {
+            continue;
+          }
+          if (size == result.length) {
+            result = Arrays.copyOf(result, size * 2);
+          }
+          result[size++] = Integer.parseInt(line);
+        }
+      }
+      finally {
+        reader.close();
+      }
+      File[] children = group.listFiles();
+      if (children != null) {
+        for (File child : children) {
+          if (child.isDirectory()) {
+            groups.add(child);
+          }
+        }
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  @Override
+  public void destroy(boolean forceful) throws IOException {
+    if (forceful && writeKill()) {
+      return;
+    }
+    kill(forceful ? LibC.SIGKILL : LibC.SIGTERM);
+  }
+
+  /**
+   * Sends a signal to all members of this control group and its descendant groups.
+   * Processes forked after listing the members do not receive the signal.
+   *
+   * @param signal name of the signal.
+   * @return number of processes that received the signal.
+   *
+   * @throws IOException on IO or system call error.
+   */
+  public int kill(int signal) throws IOException {
+    int result = 0;
+    for (int pid : getPids()) {
+      if (UnixProcess.kill(pid, signal)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return <code>true</code> if all members were killed using <code>cgroup.kill</code>,
+   *    <code>false</code> if it's not supported.
+   */
+  private boolean writeKill() throws IOException {
+    File file = new File(dir, KILL);
+    if (!file.isFile()) {
+      log.debug("{} not found", file);
+      return false;
+    }
+    OutputStream out = new FileOutputStream(file);
+    try {
+      out.write('1');
+    }
+    finally {
+      out.close();
+    }
+    return true;
+  }
+
+  @Override
+  public void waitFor() throws InterruptedException {
+    waitFor(Long.MAX_VALUE);
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    return waitFor(Math.max(0, unit.toNanos(timeout)));
+  }
+
+  /**
+   * @param timeout the maximum time to wait in nanoseconds, {@link Long#MAX_VALUE} for no timeout.
+   * @return <code>true</code> if the control group is empty.
+   */
+  private boolean waitFor(long timeout) throws InterruptedException {
+    long start = System.nanoTime();
+    WatchService watcher = null;
+    try {
+      try {
+        watcher = FileSystems.getDefault().newWatchService();
+        dir.toPath().register(watcher, StandardWatchEventKinds.ENTRY_MODIFY);
+      }
+      catch (IOException e) {
+        log.debug("Could not watch {}, polling instead", dir, e);
+      }
+      catch (RuntimeException e) {
+        log.debug("Could not watch {}, polling instead", dir, e);
+      }
+      while (true) {
+        if (!isAliveOrFail()) {
+          return true;
+        }
+        long wait = getIntervalForCheckingFinished();
+        if (timeout != Long.MAX_VALUE) {
+          long remaining = timeout - (System.nanoTime() - start);
+          if (remaining <= 0) {
+            return false;
+          }
+          wait = Math.min(wait, Math.max(1, TimeUnit.NANOSECONDS.toMillis(remaining)));
+        }
+        if (watcher == null) {
+          Thread.sleep(wait);
+        }
+        else {
+          try {
+            WatchKey key = watcher.poll(wait, TimeUnit.MILLISECONDS);
+            if (key != null) {
+              key.pollEvents();
+              key.reset();
+            }
+          }
+          catch (ClosedWatchServiceException e) {
+            watcher = null;
+          }
+        }
+      }
+    }
+    finally {
+      if (watcher != null) {
+        try {
+          watcher.close();
+        }
+        catch (IOException e) {
+          log.debug("Failed to close the watch service of {}", dir, e);
+        }
+      }
+    }
+  }
+
+  private boolean isAliveOrFail() {
+    try {
+      return isAlive();
+    }
+    catch (IOException e) {
+      String message = "Failed to check if process " + getDescription() + " is alive";
+      log.debug(message, e);
+      throw new RuntimeException(message, e);
+    }
+  }
+
+  private BufferedReader open(String name) throws FileNotFoundException {
+    return open(dir, name);
+  }
+
+  private static BufferedReader open(File group, String name) throws FileNotFoundException {
+    return new BufferedReader(new InputStreamReader(new FileInputStream(new File(group, name)), ASCII));
+  }
+
+  @Override
+  protected String getDescription() {
+    return dir.getPath();
+  }
+
+}
@@ -0,0 +1,105 @@
+package org.zeroturnaround.process;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Point in time by which an operation must complete, measured with the monotonic {@link System#nanoTime()} clock.
+ * <p>
+ * Unlike a timeout a deadline can be passed on to nested operations, each of them using only the time that is still left.
+ * A total budget can also be split into stages, e.g. the graceful and forceful steps of destroying a process.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, Deadline, double)
+ */
+public class Deadline {
+
+  /**
+   * Longest supported time budget (about 146 years), so that adding it to {@link System#nanoTime()} never overflows.
+   */
+  private static final long MAX_NANOS = Long.MAX_VALUE >> 1;
+
+  /**
+   * Value of {@link System#nanoTime()} when the deadline is reached.
+   */
+  private final long end;
+
+  private Deadline(long end) {
+    this.end = end;
+  }
+
+  /**
+   * @param timeout the time budget starting from now (negative values are treated as zero).
+   * @param unit the time unit of the timeout argument.
+   * @return deadline after the given time.
+   */
+  public static Deadline after(long timeout, TimeUnit unit) {
+    long nanos = Math.min(Math.max(0, unit.toNanos(timeout)), MAX_NANOS);
+    return new Deadline(System.nanoTime() + nanos);
+  }
+
+  /**
+   * @param unit the desired time unit.
+   * @return time left until this deadline, <code>0</code> if it has passed.
+   */
+  public long remaining(TimeUnit unit) {
+    return unit.convert(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+  }
+
+  /**
+   * @return <code>true</code> if this deadline has passed.
+   */
+  public boolean isExpired() {
+    return end - System.nanoTime() <= 0;
+  }
+
+  /**
+   * @param other another deadline.
+   * @return the earlier of this and the given deadline.
+   */
+  public Deadline min(Deadline other) {
+    return end - other.end <= 0 ? this : other;
+  }
+
+  /**
+   * Splits the time left until this deadline into consecutive stages.
+   * The stage deadlines are cumulative, so the last one is always this deadline.
+   * E.g. with 10 seconds left <code>split(0.8, 0.2)</code> returns deadlines after 8 and 10 seconds.
+   *
+   * @param ratios relative shares of the stages (they don't have to add up to 1).
+   * @return deadline of each stage in the same order.
+   */
+  public Deadline[] split(double... ratios) {
+    if (ratios.length == 0) {
+      throw new IllegalArgumentException("No stages");
+    }
+    double sum = 0;
+    for (double ratio : ratios) {
+      if (!(ratio >= 0) || Double.isInfinite(ratio)) {
+        throw new IllegalArgumentException("Invalid stage ratio: " + ratio);
+      }
+      sum += ratio;
+    }
+    if (sum == 0) {
+      throw new IllegalArgumentException("Stage ratios must not all be zero");
+    }
+    long now = System.nanoTime();
+    long remaining = Math.max(0, end - now);
+    Deadline[] result = new Deadline[ratios.length];
+    double cumulative = 0;
+    for (int i = 0; i < ratios.length - 1; i++) {
+      cumulative += ratios[i];
+      result[i] = new Deadline(now + (long) (remaining * (cumulative / sum)));
+    }
+    result[ratios.length - 1] = this;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(remaining=" + remaining(TimeUnit.MILLISECONDS) + " ms)";
+  }
+
+}
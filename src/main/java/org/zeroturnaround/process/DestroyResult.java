@@ -0,0 +1,66 @@
+package org.zeroturnaround.process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Outcome of destroying the children of a composite process one by one.
+ * <p>
+ * Each child is in exactly one of the lists:
+ * it either finished after the graceful destroy operation, finished after the forceful one or did not finish at all.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see ProcessUtil#destroyEachGracefullyOrForcefullyAndWait(AndProcess, long, java.util.concurrent.TimeUnit, long, java.util.concurrent.TimeUnit)
+ */
+public class DestroyResult {
+
+  private final List<SystemProcess> exited;
+
+  private final List<SystemProcess> killed;
+
+  private final List<SystemProcess> survived;
+
+  DestroyResult(List<SystemProcess> exited, List<SystemProcess> killed, List<SystemProcess> survived) {
+    this.exited = Collections.unmodifiableList(new ArrayList<SystemProcess>(exited));
+    this.killed = Collections.unmodifiableList(new ArrayList<SystemProcess>(killed));
+    this.survived = Collections.unmodifiableList(new ArrayList<SystemProcess>(survived));
+  }
+
+  /**
+   * @return processes that finished after the graceful destroy operation.
+   */
+  public List<SystemProcess> getExited() {
+    return exited;
+  }
+
+  /**
+   * @return processes that were destroyed forcefully and finished after that.
+   */
+  public List<SystemProcess> getKilled() {
+    return killed;
+  }
+
+  /**
+   * @return processes that were still alive when the forceful timeout was reached.
+   */
+  public List<SystemProcess> getSurvived() {
+    return survived;
+  }
+
+  /**
+   * @return <code>true</code> if all processes finished.
+   */
+  public boolean isAllFinished() {
+    return survived.isEmpty();
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(exited=" + exited + ", killed=" + killed + ", survived=" + survived + ")";
+  }
+
+}
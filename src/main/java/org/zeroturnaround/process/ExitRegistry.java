@@ -0,0 +1,206 @@
+package org.zeroturnaround.process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys registered processes when the JVM exits, using a single shutdown hook for all of them.
+ * <p>
+ * At exit all processes still alive get the graceful destroy signal at once and the ones that don't finish within the graceful share
+ * of the total timeout are destroyed forcefully (see {@link ProcessUtil#destroyEachGracefullyOrForcefullyAndWait(AndProcess, Deadline, double)}).
+ * The hook never takes longer than the timeout, so it can't stop the JVM from exiting.
+ * </p>
+ * <p>
+ * Processes are kept in a concurrent set, so registering does not block other threads.
+ * Finished processes are removed in a background thread every time the number of processes doubles,
+ * so the registry does not grow without bound even if processes are never unregistered.
+ * </p>
+ * <p>
+ * The global instance ({@link #getInstance()}) installs its shutdown hook on the first registration.
+ * Other instances have no hook, they are destroyed by calling {@link #destroyAll()}.
+ * </p>
+ */
+public class ExitRegistry {
+
+  private static final Logger log = LoggerFactory.getLogger(ExitRegistry.class);
+
+  private static final int MIN_PRUNE_THRESHOLD = 64;
+
+  private static final ExitRegistry INSTANCE = new ExitRegistry(true);
+
+  private final Set<SystemProcess> processes = Collections.newSetFromMap(new ConcurrentHashMap<SystemProcess, Boolean>());
+
+  private final boolean installHook;
+
+  private final AtomicBoolean hookInstalled = new AtomicBoolean();
+
+  /**
+   * Number of processes that triggers removing the finished ones.
+   */
+  private final AtomicInteger pruneThreshold = new AtomicInteger(MIN_PRUNE_THRESHOLD);
+
+  private volatile long timeout = 5000;
+
+  private volatile double gracefulRatio = 0.5;
+
+  /**
+   * Creates a registry without a shutdown hook.
+   */
+  public ExitRegistry() {
+    this(false);
+  }
+
+  private ExitRegistry(boolean installHook) {
+    this.installHook = installHook;
+  }
+
+  /**
+   * @return the global registry whose processes are destroyed when the JVM exits.
+   */
+  public static ExitRegistry getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @param timeout the maximum time destroying all processes may take.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.timeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * @param gracefulRatio share of the timeout used for the graceful destroy operation (from <code>0</code> to <code>1</code>).
+   */
+  public void setGracefulRatio(double gracefulRatio) {
+    if (!(gracefulRatio >= 0 && gracefulRatio <= 1)) {
+      throw new IllegalArgumentException("Graceful ratio must be between 0 and 1: " + gracefulRatio);
+    }
+    this.gracefulRatio = gracefulRatio;
+  }
+
+  /**
+   * Registers a process to be destroyed when the JVM exits.
+   *
+   * @param process the process.
+   * @return the same process.
+   */
+  public <T extends SystemProcess> T register(T process) {
+    if (installHook && hookInstalled.compareAndSet(false, true)) {
+      Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+        @Override
+        public void run() {
+          destroyAll();
+        }
+      }, "process-exit-registry"));
+    }
+    processes.add(process);
+    int threshold = pruneThreshold.get();
+    if (processes.size() >= threshold && pruneThreshold.compareAndSet(threshold, Integer.MAX_VALUE)) {
+      // Only one thread prunes at a time
+      startPruning();
+    }
+    return process;
+  }
+
+  /**
+   * Removes the finished processes in a background thread, so registering does not wait for checking all processes.
+   */
+  private void startPruning() {
+    Thread thread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          prune();
+        }
+        finally {
+          pruneThreshold.set(Math.max(MIN_PRUNE_THRESHOLD, processes.size() * 2));
+        }
+      }
+    }, "process-exit-registry-prune");
+    thread.setDaemon(true);
+    try {
+      thread.start();
+    }
+    catch (Throwable e) {
+      log.debug("Could not start removing finished processes", e);
+      pruneThreshold.set(Math.max(MIN_PRUNE_THRESHOLD, processes.size() * 2));
+    }
+  }
+
+  /**
+   * @param process the process that should not be destroyed any more.
+   * @return <code>true</code> if the process was registered.
+   */
+  public boolean unregister(SystemProcess process) {
+    return processes.remove(process);
+  }
+
+  /**
+   * @return number of processes currently registered (including the finished ones not removed yet).
+   */
+  public int size() {
+    return processes.size();
+  }
+
+  /**
+   * Removes the processes that have finished.
+   *
+   * @return number of processes removed.
+   */
+  public int prune() {
+    int result = 0;
+    for (SystemProcess process : processes) {
+      try {
+        if (!process.isAlive()) {
+          processes.remove(process);
+          result++;
+        }
+      }
+      catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        break;
+      }
+      catch (Exception e) {
+        log.debug("Could not check whether {} is alive", process, e);
+      }
+    }
+    log.trace("Removed {} finished processes", result);
+    return result;
+  }
+
+  /**
+   * Destroys all registered processes in parallel and waits until they finish or the timeout is reached.
+   * The processes are unregistered.
+   *
+   * @return which processes exited after the graceful destroy operation, which were killed and which did not finish.
+   */
+  public DestroyResult destroyAll() {
+    Deadline deadline = Deadline.after(timeout, TimeUnit.MILLISECONDS);
+    List<SystemProcess> targets = new ArrayList<SystemProcess>(processes);
+    processes.removeAll(targets);
+    List<SystemProcess> none = Collections.emptyList();
+    if (targets.isEmpty()) {
+      return new DestroyResult(none, none, none);
+    }
+    log.info("Destroying {} processes.", targets.size());
+    try {
+      return ProcessUtil.destroyEachGracefullyOrForcefullyAndWait(new AndProcess(targets), deadline, gracefulRatio);
+    }
+    catch (InterruptedException e) {
+      log.warn("Interrupted while destroying {}", targets);
+      Thread.currentThread().interrupt();
+      return new DestroyResult(none, none, targets);
+    }
+  }
+
+}
@@ -0,0 +1,223 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Heuristics for detecting a Linux process that is not making any progress with its graceful shutdown,
+ * so it can be destroyed forcefully without waiting for the whole graceful timeout.
+ * <p>
+ * The process is sampled from <code>/proc/&lt;pid&gt;/stat</code>. It's considered hung if
+ * </p>
+ * <ul>
+ * <li>it has been in the uninterruptible sleep (<code>D</code>) state for too long,</li>
+ * <li>its CPU time (<code>utime</code> + <code>stime</code> of all threads) has not changed for too long or</li>
+ * <li>it is stopped (<code>T</code> state) and therefore can't handle the signal at all.</li>
+ * </ul>
+ * <p>
+ * A limit of <code>0</code> disables the corresponding check.
+ * If the process represents multiple PIDs it's considered hung only if all of them that are still alive are hung.
+ * Processes with no known PID are never considered hung.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, long, TimeUnit, long, TimeUnit, HangDetection)
+ */
+public class HangDetection {
+
+  private static final long DEFAULT_SAMPLE_INTERVAL = 200;
+
+  private static final long DEFAULT_LIMIT = 2000;
+
+  private final long sampleInterval;
+
+  private final long uninterruptibleLimit;
+
+  private final long noProgressLimit;
+
+  private final boolean stoppedIsHung;
+
+  private final File procRoot;
+
+  private HangDetection(long sampleInterval, long uninterruptibleLimit, long noProgressLimit, boolean stoppedIsHung, File procRoot) {
+    this.sampleInterval = sampleInterval;
+    this.uninterruptibleLimit = uninterruptibleLimit;
+    this.noProgressLimit = noProgressLimit;
+    this.stoppedIsHung = stoppedIsHung;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * @return heuristics sampling every 200 ms with limits of 2 seconds for both the <code>D</code> state and no CPU progress.
+   */
+  public static HangDetection defaults() {
+    return new HangDetection(DEFAULT_SAMPLE_INTERVAL, DEFAULT_LIMIT, DEFAULT_LIMIT, true, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param interval time between the samples.
+   * @param unit the time unit of the interval argument.
+   * @return copy of this object with the given sampling interval.
+   */
+  public HangDetection withSampleInterval(long interval, TimeUnit unit) {
+    long millis = unit.toMillis(interval);
+    if (millis <= 0) {
+      throw new IllegalArgumentException("Sample interval must be positive: " + interval + " " + unit);
+    }
+    return new HangDetection(millis, uninterruptibleLimit, noProgressLimit, stoppedIsHung, procRoot);
+  }
+
+  /**
+   * @param limit how long a process may stay in the uninterruptible sleep state, <code>0</code> for no limit.
+   * @param unit the time unit of the limit argument.
+   * @return copy of this object with the given limit.
+   */
+  public HangDetection withUninterruptibleLimit(long limit, TimeUnit unit) {
+    return new HangDetection(sampleInterval, unit.toMillis(limit), noProgressLimit, stoppedIsHung, procRoot);
+  }
+
+  /**
+   * @param limit how long the CPU time of a process may stay unchanged, <code>0</code> for no limit.
+   * @param unit the time unit of the limit argument.
+   * @return copy of this object with the given limit.
+   */
+  public HangDetection withNoProgressLimit(long limit, TimeUnit unit) {
+    return new HangDetection(sampleInterval, uninterruptibleLimit, unit.toMillis(limit), stoppedIsHung, procRoot);
+  }
+
+  /**
+   * @param stoppedIsHung <code>true</code> if a stopped process is considered hung right away.
+   * @return copy of this object with the given option.
+   */
+  public HangDetection withStoppedIsHung(boolean stoppedIsHung) {
+    return new HangDetection(sampleInterval, uninterruptibleLimit, noProgressLimit, stoppedIsHung, procRoot);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   * @return copy of this object reading the given proc file system.
+   */
+  public HangDetection withProcRoot(File procRoot) {
+    return new HangDetection(sampleInterval, uninterruptibleLimit, noProgressLimit, stoppedIsHung, procRoot);
+  }
+
+  public long getSampleInterval(TimeUnit unit) {
+    return unit.convert(sampleInterval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Starts monitoring the given process.
+   *
+   * @param process the target process.
+   * @return new monitor.
+   */
+  Monitor monitor(SystemProcess process) {
+    return new Monitor(PidUtil.findPids(process));
+  }
+
+  /**
+   * Keeps track of the samples of a set of processes.
+   */
+  class Monitor {
+
+    private final int[] pids;
+
+    private final byte[] buffer = new byte[512];
+
+    private final long[] cpuTime;
+
+    /**
+     * When the CPU time last changed (value of {@link System#nanoTime()}).
+     */
+    private final long[] cpuChanged;
+
+    /**
+     * When the uninterruptible sleep state started (value of {@link System#nanoTime()}), <code>0</code> if not in this state.
+     */
+    private final long[] uninterruptibleSince;
+
+    private Monitor(int[] pids) {
+      this.pids = pids;
+      this.cpuTime = new long[pids.length];
+      this.cpuChanged = new long[pids.length];
+      this.uninterruptibleSince = new long[pids.length];
+      for (int i = 0; i < pids.length; i++) {
+        cpuTime[i] = -1;
+      }
+    }
+
+    /**
+     * Takes a sample of each process.
+     *
+     * @return description of the reason if all processes that are still alive are hung, <code>null</code> otherwise.
+     * @throws IOException on IO error.
+     */
+    String sample() throws IOException {
+      long now = System.nanoTime();
+      String result = null;
+      boolean allHung = true;
+      for (int i = 0; i < pids.length; i++) {
+        int size = LinuxProcFs.readStat(procRoot, pids[i], buffer);
+        if (size < 0) {
+          continue;
+        }
+        int state = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STATE);
+        int utime = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_UTIME);
+        if (state < 0 || utime < 0) {
+          throw new IOException("Invalid stat file of process " + pids[i]);
+        }
+        int stime = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STIME);
+        String reason = sample(i, now, buffer[state], LinuxProcFs.parseLong(buffer, size, utime) + LinuxProcFs.parseLong(buffer, size, stime));
+        // Sample all processes to keep their history up to date
+        if (reason == null) {
+          allHung = false;
+        }
+        else if (result == null) {
+          result = reason;
+        }
+      }
+      return allHung ? result : null;
+    }
+
+    private String sample(int i, long now, byte state, long cpu) {
+      if (state == 'Z' || state == 'X') {
+        // Finished but not reaped yet
+        return null;
+      }
+      String result = null;
+      if (state == 'T' && stoppedIsHung) {
+        result = "process " + pids[i] + " is stopped";
+      }
+      if (state == 'D') {
+        if (uninterruptibleSince[i] == 0) {
+          uninterruptibleSince[i] = now;
+        }
+        else if (uninterruptibleLimit > 0 && now - uninterruptibleSince[i] >= TimeUnit.MILLISECONDS.toNanos(uninterruptibleLimit)) {
+          result = "process " + pids[i] + " has been in uninterruptible sleep for " + TimeUnit.NANOSECONDS.toMillis(now - uninterruptibleSince[i]) + " ms";
+        }
+      }
+      else {
+        uninterruptibleSince[i] = 0;
+      }
+      if (cpu != cpuTime[i]) {
+        cpuTime[i] = cpu;
+        cpuChanged[i] = now;
+      }
+      else if (noProgressLimit > 0 && now - cpuChanged[i] >= TimeUnit.MILLISECONDS.toNanos(noProgressLimit)) {
+        result = "CPU time of process " + pids[i] + " has not changed for " + TimeUnit.NANOSECONDS.toMillis(now - cpuChanged[i]) + " ms";
+      }
+      return result;
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(sampleInterval=" + sampleInterval + " ms, uninterruptibleLimit=" + uninterruptibleLimit
+        + " ms, noProgressLimit=" + noProgressLimit + " ms, stoppedIsHung=" + stoppedIsHung + ")";
+  }
+
+}
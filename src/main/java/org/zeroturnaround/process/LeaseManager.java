@@ -0,0 +1,316 @@
+package org.zeroturnaround.process;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys processes whose owner stops renewing their leases (a dead man's switch), e.g. because the owning thread is deadlocked.
+ * <p>
+ * Each process gets a {@link Lease} that has to be renewed within the lease duration.
+ * {@link Lease#renew()} only writes a volatile field, it never locks or allocates, so it can be called very often from many threads.
+ * </p>
+ * <p>
+ * A single background thread sweeps the leases (see {@link #start()}).
+ * The process of an expired lease is destroyed gracefully and if it's still alive after the graceful timeout, forcefully.
+ * The sweep never waits for a process to finish, the escalation is checked again on the following sweeps,
+ * so one stuck process does not delay the expiration of the others.
+ * Released leases and finished processes are removed automatically.
+ * </p>
+ */
+public class LeaseManager {
+
+  private static final Logger log = LoggerFactory.getLogger(LeaseManager.class);
+
+  private final long duration;
+
+  private final Set<Lease> leases = Collections.newSetFromMap(new ConcurrentHashMap<Lease, Boolean>());
+
+  private volatile long interval;
+
+  private volatile long gracefulTimeout = 5000;
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param duration the maximum time between the renewals of a lease.
+   * @param unit the time unit of the duration argument.
+   */
+  public LeaseManager(long duration, TimeUnit unit) {
+    if (duration <= 0) {
+      throw new IllegalArgumentException("Lease duration must be positive: " + duration);
+    }
+    this.duration = unit.toNanos(duration);
+    this.interval = Math.max(1, unit.toMillis(duration) / 4);
+  }
+
+  /**
+   * @return the maximum time between the renewals of a lease in milliseconds.
+   */
+  public long getDuration() {
+    return TimeUnit.NANOSECONDS.toMillis(duration);
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * @param interval sweeping interval in milliseconds (used by {@link #start()}), a quarter of the lease duration by default.
+   */
+  public void setInterval(long interval) {
+    this.interval = interval;
+  }
+
+  /**
+   * @param timeout the maximum time to wait until an expired process finishes after the graceful destroy operation
+   *    (<code>0</code> for destroying it forcefully right away).
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setGracefulTimeout(long timeout, TimeUnit unit) {
+    this.gracefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * Hands out a new lease for the given process, valid for the lease duration from now.
+   *
+   * @param process the process to destroy once the lease expires.
+   * @return the new lease.
+   */
+  public Lease acquire(SystemProcess process) {
+    Lease result = new Lease(process, duration);
+    leases.add(result);
+    return result;
+  }
+
+  /**
+   * @return number of leases not released or finished yet (including the ones being destroyed).
+   */
+  public int size() {
+    return leases.size();
+  }
+
+  /**
+   * Starts sweeping the leases in a background thread.
+   */
+  public synchronized void start() {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "process-lease-manager");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sweep();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+          log.error("Failed to sweep the leases", e);
+        }
+      }
+    }, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background thread started by {@link #start()}.
+   * The leases stay valid but no longer expire until the manager is started again.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Destroys the processes of the leases that have expired since the previous sweep
+   * and destroys forcefully the ones that did not finish within the graceful timeout.
+   *
+   * @return the processes that were destroyed gracefully or forcefully by this sweep.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public List<SystemProcess> sweep() throws InterruptedException {
+    List<SystemProcess> result = new ArrayList<SystemProcess>();
+    long now = System.nanoTime();
+    for (Lease lease : leases) {
+      if (lease.state == Lease.RELEASED) {
+        leases.remove(lease);
+      }
+      else if (lease.state == Lease.ACTIVE) {
+        if (now - lease.expires >= 0 && Lease.STATE.compareAndSet(lease, Lease.ACTIVE, Lease.EXPIRED)) {
+          if (now - lease.expires < 0) {
+            // Renewed right before it was marked as expired
+            Lease.STATE.set(lease, Lease.ACTIVE);
+            continue;
+          }
+          log.warn("Lease of {} expired {} ms ago, destroying it", lease.process, TimeUnit.NANOSECONDS.toMillis(now - lease.expires));
+          lease.expired = now;
+          if (gracefulTimeout > 0 && destroy(lease, false)) {
+            result.add(lease.process);
+          }
+          else {
+            Lease.STATE.set(lease, Lease.KILLED);
+            if (destroy(lease, true)) {
+              result.add(lease.process);
+            }
+          }
+        }
+      }
+      else if (!isAlive(lease.process)) {
+        log.debug("{} finished after its lease expired", lease.process);
+        leases.remove(lease);
+      }
+      else if (lease.state == Lease.EXPIRED && now - lease.expired >= TimeUnit.MILLISECONDS.toNanos(gracefulTimeout)) {
+        log.warn("{} did not finish in {} ms after its lease expired, destroying it forcefully", lease.process, gracefulTimeout);
+        Lease.STATE.set(lease, Lease.KILLED);
+        if (destroy(lease, true)) {
+          result.add(lease.process);
+        }
+      }
+    }
+    return result;
+  }
+
+  private boolean destroy(Lease lease, boolean forceful) throws InterruptedException {
+    try {
+      if (forceful) {
+        lease.process.destroyForcefully();
+      }
+      else {
+        lease.process.destroyGracefully();
+      }
+      return true;
+    }
+    catch (InterruptedException e) {
+      throw e;
+    }
+    catch (UnsupportedOperationException e) {
+      log.trace("Destroying {} {} is unsupported", lease.process, forceful ? "forcefully" : "gracefully");
+    }
+    catch (Exception e) {
+      log.error("Could not destroy {} {}", lease.process, forceful ? "forcefully" : "gracefully", e);
+    }
+    return false;
+  }
+
+  private static boolean isAlive(SystemProcess process) throws InterruptedException {
+    try {
+      return process.isAlive();
+    }
+    catch (InterruptedException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      log.debug("Could not check whether {} is alive", process, e);
+      return true;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + getDuration() + " ms, " + leases.size() + " leases)";
+  }
+
+  /**
+   * Lease of a single process handed out by a {@link LeaseManager}.
+   */
+  public static class Lease {
+
+    private static final int ACTIVE = 0;
+
+    private static final int RELEASED = 1;
+
+    private static final int EXPIRED = 2;
+
+    private static final int KILLED = 3;
+
+    private static final AtomicIntegerFieldUpdater<Lease> STATE = AtomicIntegerFieldUpdater.newUpdater(Lease.class, "state");
+
+    private final SystemProcess process;
+
+    private final long duration;
+
+    /**
+     * Value of {@link System#nanoTime()} when this lease expires.
+     */
+    private volatile long expires;
+
+    /**
+     * Value of {@link System#nanoTime()} when the expiry was detected.
+     */
+    private volatile long expired;
+
+    private volatile int state;
+
+    private Lease(SystemProcess process, long duration) {
+      this.process = process;
+      this.duration = duration;
+      this.expires = System.nanoTime() + duration;
+    }
+
+    public SystemProcess getProcess() {
+      return process;
+    }
+
+    /**
+     * Extends this lease by the lease duration from now.
+     *
+     * @return <code>false</code> if this lease was already released or expired (the renewal has no effect then).
+     */
+    public boolean renew() {
+      expires = System.nanoTime() + duration;
+      return state == ACTIVE;
+    }
+
+    /**
+     * Releases this lease, so its process is no longer destroyed.
+     *
+     * @return <code>false</code> if this lease had already expired or was released before.
+     */
+    public boolean release() {
+      return STATE.compareAndSet(this, ACTIVE, RELEASED);
+    }
+
+    /**
+     * @return <code>true</code> if this lease has expired and its process is being or was destroyed.
+     */
+    public boolean isExpired() {
+      return state >= EXPIRED;
+    }
+
+    /**
+     * @param unit the time unit of the result.
+     * @return time left until this lease expires in the given unit (negative if the expiry is overdue).
+     */
+    public long getRemaining(TimeUnit unit) {
+      return unit.convert(expires - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+      return "Lease(" + process + ")";
+    }
+
+  }
+
+}
@@ -0,0 +1,224 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Finds the Linux processes that use files under a given path, like <code>fuser -m</code> does for a mount point.
+ * <p>
+ * A process uses the path if its current directory, root directory or executable,
+ * any of its open file descriptors (<code>/proc/&lt;pid&gt;/fd</code>)
+ * or any of its memory-mapped files (<code>/proc/&lt;pid&gt;/maps</code>) is the path itself or under it.
+ * These are checked in this order and each process is done as soon as one of them matches,
+ * so the memory maps are only read for the processes that don't use the path otherwise.
+ * The processes are checked in parallel in a single scan of <code>/proc</code>,
+ * by default in a pool of their own, as the blocking reads would hold up other users of the {@link ForkJoinPool#commonPool()}.
+ * The links and files of other users' processes can only be read as root.
+ * </p>
+ */
+final class LinuxPathHolders {
+
+  private static final int BATCH_SIZE = 64;
+
+  private static final int BUFFER_SIZE = 16384;
+
+  private static final String[] LINKS = { "cwd", "root", "exe" };
+
+  private LinuxPathHolders() {
+  }
+
+  /**
+   * @return the default pool for checking the processes, its idle threads finish after a while.
+   */
+  static ForkJoinPool getDefaultPool() {
+    return DefaultPool.INSTANCE;
+  }
+
+  private static final class DefaultPool {
+
+    static final ForkJoinPool INSTANCE = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+        new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+          @Override
+          public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("process-path-holders-" + thread.getPoolIndex());
+            thread.setDaemon(true);
+            return thread;
+          }
+        }, null, false);
+
+  }
+
+  /**
+   * Finds the processes that use the given path.
+   *
+   * @param root the proc file system root.
+   * @param path canonical path of the file or directory.
+   * @param pool the pool for checking the processes in parallel.
+   * @return the process IDs in ascending order (except the current process).
+   * @throws IOException on IO error.
+   */
+  static int[] find(File root, String path, ForkJoinPool pool) throws IOException {
+    int[] pids = LinuxProcFs.listPids(root);
+    boolean[] found = new boolean[pids.length];
+    pool.invoke(new FindTask(root, path, pids, found, 0, pids.length));
+    int myPid = root.equals(LinuxProcFs.DEFAULT_ROOT) ? PidUtil.getMyPid() : -1;
+    int[] result = new int[pids.length];
+    int count = 0;
+    for (int i = 0; i < pids.length; i++) {
+      if (found[i] && pids[i] != myPid) {
+        result[count++] = pids[i];
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Checks a range of PIDs, splitting it in halves until it's small enough.
+   */
+  private static class FindTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final File root;
+
+    private final String path;
+
+    private final int[] pids;
+
+    private final boolean[] found;
+
+    private final int from;
+
+    private final int to;
+
+    FindTask(File root, String path, int[] pids, boolean[] found, int from, int to) {
+      this.root = root;
+      this.path = path;
+      this.pids = pids;
+      this.found = found;
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > BATCH_SIZE) {
+        int middle = (from + to) >>> 1;
+        invokeAll(new FindTask(root, path, pids, found, from, middle), new FindTask(root, path, pids, found, middle, to));
+        return;
+      }
+      Matcher matcher = new Matcher(path);
+      for (int i = from; i < to; i++) {
+        found[i] = isHolding(pids[i], matcher);
+      }
+    }
+
+    private boolean isHolding(int pid, Matcher matcher) {
+      File dir = new File(root, Integer.toString(pid));
+      for (String link : LINKS) {
+        if (matcher.matches(LinuxProcFs.readLink(new File(dir, link)))) {
+          return true;
+        }
+      }
+      if (LinuxProcFs.isHoldingFile(root, pid, matcher)) {
+        return true;
+      }
+      try {
+        return matcher.matchesAnyMapping(new File(dir, "maps"));
+      }
+      catch (IOException e) {
+        // Finished or no permission
+        return false;
+      }
+    }
+
+  }
+
+  /**
+   * Matches paths against the given path and everything under it, keeping a buffer for reading the memory maps.
+   */
+  private static class Matcher implements LinuxProcFs.LinkMatcher {
+
+    private final String path;
+
+    private final String prefix;
+
+    private final byte[] pathBytes;
+
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+
+    Matcher(String path) {
+      this.path = path;
+      this.prefix = path.endsWith("/") ? path : path + "/";
+      this.pathBytes = path.getBytes(Charset.defaultCharset());
+    }
+
+    @Override
+    public boolean matches(String target) {
+      return target != null && (target.equals(path) || target.startsWith(prefix));
+    }
+
+    /**
+     * Reads a <code>maps</code> file (<code>address perms offset dev inode pathname</code> per line)
+     * and checks the path names in place, stopping at the first match.
+     */
+    boolean matchesAnyMapping(File file) throws IOException {
+      FileInputStream in = new FileInputStream(file);
+      try {
+        int size = 0;
+        int n;
+        while ((n = in.read(buffer, size, buffer.length - size)) > 0) {
+          size += n;
+          int start = 0;
+          for (int i = 0; i < size; i++) {
+            if (buffer[i] != '\n') {
+              continue;
+            }
+            if (matchesMapping(start, i)) {
+              return true;
+            }
+            start = i + 1;
+          }
+          // Keep the incomplete last line for the next read
+          size -= start;
+          System.arraycopy(buffer, start, buffer, 0, size);
+          if (size == buffer.length) {
+            throw new IOException("Too long line in " + file);
+          }
+        }
+        return false;
+      }
+      finally {
+        in.close();
+      }
+    }
+
+    private boolean matchesMapping(int start, int end) {
+      // The path name is the only field that contains a slash
+      int i = start;
+      while (i < end && buffer[i] != '/') {
+        i++;
+      }
+      if (end - i < pathBytes.length) {
+        return false;
+      }
+      for (int j = 0; j < pathBytes.length; j++) {
+        if (buffer[i + j] != pathBytes[j]) {
+          return false;
+        }
+      }
+      int next = i + pathBytes.length;
+      // The path itself (possibly followed by " (deleted)") or anything under it
+      return next == end || buffer[next] == ' ' || buffer[next] == '/' || buffer[next - 1] == '/';
+    }
+
+  }
+
+}
@@ -0,0 +1,682 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Set;
+
+import org.zeroturnaround.process.unix.LibC;
+
+/**
+ * Helper methods for reading process information from the Linux <code>/proc</code> file system.
+ */
+final class LinuxProcFs {
+
+  /**
+   * Default mount point of the proc file system.
+   */
+  static final File DEFAULT_ROOT = new File("/proc");
+
+  private LinuxProcFs() {
+  }
+
+  /**
+   * @return size of a memory page in bytes.
+   */
+  static int getPageSize() {
+    return PageSizeHolder.PAGE_SIZE;
+  }
+
+  /**
+   * Helper for lazy initialization.
+   */
+  private static class PageSizeHolder {
+
+    private static final int PAGE_SIZE = findPageSize();
+
+    private static int findPageSize() {
+      try {
+        return LibC.INSTANCE.getpagesize();
+      }
+      catch (Throwable e) {
+        return 4096;
+      }
+    }
+
+  }
+
+  /**
+   * @return number of clock ticks per second used for the times in a <code>stat</code> file.
+   */
+  static long getClockTicks() {
+    return ClockTicksHolder.CLOCK_TICKS;
+  }
+
+  /**
+   * Helper for lazy initialization.
+   */
+  private static class ClockTicksHolder {
+
+    private static final long CLOCK_TICKS = findClockTicks();
+
+    private static long findClockTicks() {
+      try {
+        long result = LibC.INSTANCE.sysconf(LibC._SC_CLK_TCK);
+        return result > 0 ? result : 100;
+      }
+      catch (Throwable e) {
+        return 100;
+      }
+    }
+
+  }
+
+  /**
+   * @param root the proc file system root.
+   * @return <code>true</code> if the given proc file system root exists.
+   */
+  static boolean isSupported(File root) {
+    return root.isDirectory();
+  }
+
+  /**
+   * @param name name of a proc file system entry.
+   * @return PID if the name is a process directory name, <code>-1</code> otherwise.
+   */
+  static int parsePid(String name) {
+    int length = name.length();
+    if (length == 0 || length > 9) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = 0; i < length; i++) {
+      char c = name.charAt(i);
+      if (c < '0' || c > '9') {
+        return -1;
+      }
+      result = result * 10 + (c - '0');
+    }
+    return result;
+  }
+
+  /**
+   * Reads the beginning of a proc file into the given buffer.
+   *
+   * @return number of bytes read, <code>-1</code> if the file was not found (e.g. the process has finished).
+   */
+  static int read(File file, byte[] buffer) throws IOException {
+    FileInputStream in;
+    try {
+      in = new FileInputStream(file);
+    }
+    catch (FileNotFoundException e) {
+      return -1;
+    }
+    try {
+      int size = 0;
+      int n;
+      while (size < buffer.length && (n = in.read(buffer, size, buffer.length - size)) > 0) {
+        size += n;
+      }
+      return size;
+    }
+    catch (IOException e) {
+      // Reading a file of a process that has just finished fails with ESRCH
+      if (!file.getParentFile().exists()) {
+        return -1;
+      }
+      throw e;
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * @return index of the first field after the command name in a <code>stat</code> file, i.e. the process state,
+   *    <code>-1</code> if the data is not valid.
+   */
+  static int statFieldsStart(byte[] buffer, int size) {
+    for (int i = size - 1; i >= 0; i--) {
+      if (buffer[i] == ')') {
+        return i + 2 < size ? i + 2 : -1;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * @return index of the given field (the process state is field <code>0</code>) in a <code>stat</code> file,
+   *    <code>-1</code> if there's no such field.
+   */
+  static int statField(byte[] buffer, int size, int field) {
+    int i = statFieldsStart(buffer, size);
+    if (i < 0) {
+      return -1;
+    }
+    for (int f = 0; f < field; f++) {
+      while (i < size && buffer[i] != ' ') {
+        i++;
+      }
+      i++;
+      if (i >= size) {
+        return -1;
+      }
+    }
+    return i;
+  }
+
+  /**
+   * @return the decimal number starting at the given index.
+   */
+  static long parseLong(byte[] buffer, int size, int offset) {
+    long result = 0;
+    boolean negative = offset < size && buffer[offset] == '-';
+    for (int i = negative ? offset + 1 : offset; i < size; i++) {
+      byte b = buffer[i];
+      if (b < '0' || b > '9') {
+        break;
+      }
+      result = result * 10 + (b - '0');
+    }
+    return negative ? -result : result;
+  }
+
+  /**
+   * @return index of the value of the given key (e.g. <code>"Threads:"</code>) in a <code>status</code> file,
+   *    <code>-1</code> if there's no such line.
+   */
+  static int statusField(byte[] buffer, int size, String key) {
+    int line = 0;
+    while (line < size) {
+      if (line + key.length() < size && startsWith(buffer, line, key)) {
+        int i = line + key.length();
+        while (i < size && (buffer[i] == ' ' || buffer[i] == '\t')) {
+          i++;
+        }
+        return i;
+      }
+      while (line < size && buffer[line] != '\n') {
+        line++;
+      }
+      line++;
+    }
+    return -1;
+  }
+
+  private static boolean startsWith(byte[] buffer, int offset, String prefix) {
+    for (int i = 0; i < prefix.length(); i++) {
+      if (buffer[offset + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /*
+   * Field indexes in a stat file (see statField())
+   */
+  static final int STAT_STATE = 0;
+  static final int STAT_PPID = 1;
+  static final int STAT_PGRP = 2;
+  static final int STAT_SESSION = 3;
+  static final int STAT_UTIME = 11;
+  static final int STAT_STIME = 12;
+  static final int STAT_NUM_THREADS = 17;
+  static final int STAT_STARTTIME = 19;
+  static final int STAT_RSS = 21;
+
+  /**
+   * Reads the <code>stat</code> file of the given process into the given buffer.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param buffer buffer for reading the file.
+   * @return number of bytes read, <code>-1</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  static int readStat(File root, int pid, byte[] buffer) throws IOException {
+    return read(new File(root, pid + "/stat"), buffer);
+  }
+
+  /**
+   * Checks whether the given process has finished but has not been reaped by its parent yet.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param buffer buffer for reading the <code>stat</code> file.
+   * @return <code>true</code> if the process is a zombie, <code>false</code> if it's running or was not found.
+   * @throws IOException on IO error.
+   */
+  static boolean isZombie(File root, int pid, byte[] buffer) throws IOException {
+    int size = readStat(root, pid, buffer);
+    if (size < 0) {
+      return false;
+    }
+    int i = statField(buffer, size, STAT_STATE);
+    return i >= 0 && (buffer[i] == 'Z' || buffer[i] == 'X');
+  }
+
+  /**
+   * Reads the parent PID of the given process.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param buffer buffer for reading the <code>stat</code> file.
+   * @return the parent process ID, <code>-1</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  static int readParentPid(File root, int pid, byte[] buffer) throws IOException {
+    int size = readStat(root, pid, buffer);
+    if (size < 0) {
+      return -1;
+    }
+    int i = statField(buffer, size, STAT_PPID);
+    if (i < 0) {
+      throw new IOException("Invalid stat file of process " + pid);
+    }
+    return (int) parseLong(buffer, size, i);
+  }
+
+  /**
+   * Reads the start time of the given process.
+   * Together with the PID it identifies a process even after the PID is reused.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param buffer buffer for reading the <code>stat</code> file.
+   * @return the start time in clock ticks after the system boot, <code>-1</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  static long readStartTime(File root, int pid, byte[] buffer) throws IOException {
+    int size = readStat(root, pid, buffer);
+    if (size < 0) {
+      return -1;
+    }
+    int i = statField(buffer, size, STAT_STARTTIME);
+    if (i < 0) {
+      throw new IOException("Invalid stat file of process " + pid);
+    }
+    return parseLong(buffer, size, i);
+  }
+
+  /**
+   * Reads the resident set size of the given process from its <code>statm</code> file.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param buffer buffer for reading the file.
+   * @return the resident set size in bytes, <code>-1</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  static long readRss(File root, int pid, byte[] buffer) throws IOException {
+    int size = read(new File(root, pid + "/statm"), buffer);
+    if (size < 0) {
+      return -1;
+    }
+    int i = 0;
+    while (i < size && buffer[i] != ' ') {
+      i++;
+    }
+    if (++i >= size) {
+      throw new IOException("Invalid statm file of process " + pid);
+    }
+    return parseLong(buffer, size, i) * getPageSize();
+  }
+
+  /**
+   * Reads the time since the system boot from the <code>uptime</code> file.
+   *
+   * @param root the proc file system root.
+   * @param buffer buffer for reading the file.
+   * @return the uptime in milliseconds.
+   * @throws IOException on IO error.
+   */
+  static long readUptime(File root, byte[] buffer) throws IOException {
+    int size = read(new File(root, "uptime"), buffer);
+    if (size <= 0) {
+      throw new IOException("Could not read " + new File(root, "uptime"));
+    }
+    long result = parseLong(buffer, size, 0) * 1000;
+    int i = 0;
+    while (i < size && buffer[i] != '.' && buffer[i] != ' ') {
+      i++;
+    }
+    if (i < size && buffer[i] == '.') {
+      long scale = 100;
+      for (i++; i < size && buffer[i] >= '0' && buffer[i] <= '9' && scale > 0; i++) {
+        result += (buffer[i] - '0') * scale;
+        scale /= 10;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads the random ID generated by the kernel on each boot.
+   *
+   * @param root the proc file system root.
+   * @return the boot ID, <code>null</code> if it's not available.
+   * @throws IOException on IO error.
+   */
+  static String readBootId(File root) throws IOException {
+    byte[] buffer = new byte[64];
+    int size = read(new File(root, "sys/kernel/random/boot_id"), buffer);
+    if (size <= 0) {
+      return null;
+    }
+    String result = new String(buffer, 0, size, "US-ASCII").trim();
+    return result.isEmpty() ? null : result;
+  }
+
+  /**
+   * Counts the open file descriptors of the given process.
+   * Since Linux 6.2 the size of the <code>fd</code> directory in the proc file system is the number of descriptors,
+   * so no entries are listed (this is not used for other roots, e.g. test fixtures).
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @return number of open file descriptors, <code>-1</code> if the process was not found.
+   */
+  static int countOpenFiles(File root, int pid) {
+    File dir = new File(root, pid + "/fd");
+    long length = root.equals(DEFAULT_ROOT) ? dir.length() : 0;
+    if (length > 0) {
+      return (int) length;
+    }
+    String[] names = dir.list();
+    return names == null ? -1 : names.length;
+  }
+
+  /**
+   * Suffix of a link target in the proc file system if the file has been deleted.
+   */
+  private static final String DELETED_SUFFIX = " (deleted)";
+
+  /**
+   * Reads a symbolic link in the proc file system, e.g. a file descriptor or the current directory of a process.
+   *
+   * @param link the link.
+   * @return the target without the <code>(deleted)</code> suffix, <code>null</code> if the link could not be read.
+   */
+  static String readLink(File link) {
+    String result;
+    try {
+      result = Files.readSymbolicLink(link.toPath()).toString();
+    }
+    catch (Exception e) {
+      // Closed meanwhile, finished or no permission
+      return null;
+    }
+    if (result.endsWith(DELETED_SUFFIX)) {
+      result = result.substring(0, result.length() - DELETED_SUFFIX.length());
+    }
+    return result;
+  }
+
+  /**
+   * Finds a process that has any of the given files open.
+   * The given process is checked first, so a holder found by the previous call is found again without listing all processes.
+   *
+   * @param root the proc file system root.
+   * @param paths canonical paths of the files.
+   * @param hint process ID to check first, <code>-1</code> for none.
+   * @return ID of the first process found, <code>-1</code> if there is none.
+   * @throws IOException on IO error.
+   */
+  static int findFileHolder(File root, Set<String> paths, int hint) throws IOException {
+    if (hint > 0 && isHoldingFile(root, hint, paths)) {
+      return hint;
+    }
+    for (int pid : listPids(root)) {
+      if (pid != hint && isHoldingFile(root, pid, paths)) {
+        return pid;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Checks whether the given process has a descriptor whose link target is any of the given ones.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param paths the link targets, e.g. canonical paths of files or <code>socket:[inode]</code>.
+   * @return <code>true</code> if any of the descriptors matches, <code>false</code> if none does or they could not be read.
+   */
+  static boolean isHoldingFile(File root, int pid, final Set<String> paths) {
+    return isHoldingFile(root, pid, new LinkMatcher() {
+      @Override
+      public boolean matches(String target) {
+        return paths.contains(target);
+      }
+    });
+  }
+
+  /**
+   * Checks whether the given process has a descriptor whose link target matches.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param matcher matcher of the link targets (without the <code>(deleted)</code> suffix).
+   * @return <code>true</code> if any of the descriptors matches, <code>false</code> if none does or they could not be read.
+   */
+  static boolean isHoldingFile(File root, int pid, LinkMatcher matcher) {
+    File dir = new File(root, pid + "/fd");
+    String[] fds = dir.list();
+    if (fds == null) {
+      // Finished or no permission
+      return false;
+    }
+    for (String fd : fds) {
+      String target = readLink(new File(dir, fd));
+      if (target != null && matcher.matches(target)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Matcher of the targets of the links in the proc file system.
+   */
+  interface LinkMatcher {
+
+    boolean matches(String target);
+
+  }
+
+  /**
+   * Reads the OOM killer score adjustment of the given process.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @return the score adjustment (from <code>-1000</code> to <code>1000</code>).
+   * @throws IOException on IO error or if the process was not found.
+   */
+  static int readOomScoreAdj(File root, int pid) throws IOException {
+    byte[] buffer = new byte[16];
+    int size = read(new File(root, pid + "/oom_score_adj"), buffer);
+    if (size <= 0) {
+      throw new IOException("Process " + pid + " not found");
+    }
+    return (int) parseLong(buffer, size, 0);
+  }
+
+  /**
+   * Changes the OOM killer score adjustment of the given process.
+   * Lowering the value requires the <code>CAP_SYS_RESOURCE</code> capability.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @param score the score adjustment (from <code>-1000</code> to <code>1000</code>).
+   * @return <code>true</code> if the score was changed, <code>false</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  static boolean writeOomScoreAdj(File root, int pid, int score) throws IOException {
+    File file = new File(root, pid + "/oom_score_adj");
+    // Don't create the file if the process is gone
+    if (!file.isFile()) {
+      return false;
+    }
+    OutputStream out;
+    try {
+      out = new FileOutputStream(file);
+    }
+    catch (FileNotFoundException e) {
+      if (!file.getParentFile().exists()) {
+        return false;
+      }
+      throw e;
+    }
+    try {
+      out.write(Integer.toString(score).getBytes("US-ASCII"));
+    }
+    finally {
+      out.close();
+    }
+    return true;
+  }
+
+  /**
+   * Lists all processes.
+   *
+   * @param root the proc file system root.
+   * @return process IDs in ascending order.
+   * @throws IOException on IO error.
+   */
+  static int[] listPids(File root) throws IOException {
+    String[] names = root.list();
+    if (names == null) {
+      throw new IOException("Could not list " + root);
+    }
+    int[] result = new int[names.length];
+    int size = 0;
+    for (String name : names) {
+      int pid = parsePid(name);
+      if (pid > 0) {
+        result[size++] = pid;
+      }
+    }
+    result = Arrays.copyOf(result, size);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Lists the threads of the given process.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @return thread IDs in ascending order (empty if the process was not found).
+   */
+  static int[] listThreads(File root, int pid) {
+    String[] names = new File(root, pid + "/task").list();
+    if (names == null) {
+      return new int[0];
+    }
+    int[] result = new int[names.length];
+    int size = 0;
+    for (String name : names) {
+      int tid = parsePid(name);
+      if (tid > 0) {
+        result[size++] = tid;
+      }
+    }
+    result = Arrays.copyOf(result, size);
+    Arrays.sort(result);
+    return result;
+  }
+
+  /**
+   * Lists the children of the given process from the <code>children</code> files of its threads.
+   * Unlike {@link #findDescendants(File, int)} it does not scan all processes.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @return the child process IDs (empty if the process was not found),
+   *    <code>null</code> if the kernel does not provide the <code>children</code> files (<code>CONFIG_PROC_CHILDREN</code>).
+   * @throws IOException on IO error.
+   */
+  static int[] listChildren(File root, int pid) throws IOException {
+    int[] threads = listThreads(root, pid);
+    if (threads.length > 0 && !new File(root, pid + "/task/" + threads[0] + "/children").exists()) {
+      return null;
+    }
+    byte[] buffer = new byte[512];
+    int[] result = new int[16];
+    int count = 0;
+    for (int tid : threads) {
+      File file = new File(root, pid + "/task/" + tid + "/children");
+      int size;
+      while ((size = read(file, buffer)) == buffer.length) {
+        buffer = new byte[buffer.length * 2];
+      }
+      for (int i = 0; i < size; i++) {
+        if (buffer[i] < '0' || buffer[i] > '9') {
+          continue;
+        }
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
+        }
+        result[count++] = (int) parseLong(buffer, size, i);
+        while (i < size && buffer[i] != ' ') {
+          i++;
+        }
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Finds all descendants of the given process with a single scan of the proc file system.
+   *
+   * @param root the proc file system root.
+   * @param pid the process ID.
+   * @return the descendant process IDs (children before grandchildren), not including the given process.
+   * @throws IOException on IO error.
+   */
+  static int[] findDescendants(File root, int pid) throws IOException {
+    int[] pids = listPids(root);
+    byte[] buffer = new byte[512];
+    // (parent PID, PID) pairs sorted by the parent PID
+    long[] pairs = new long[pids.length];
+    int size = 0;
+    for (int p : pids) {
+      int parent = readParentPid(root, p, buffer);
+      if (parent > 0) {
+        pairs[size++] = ((long) parent << 32) | p;
+      }
+    }
+    pairs = Arrays.copyOf(pairs, size);
+    Arrays.sort(pairs);
+
+    int[] result = new int[16];
+    int count = 0;
+    int next = -1;
+    int parent = pid;
+    while (true) {
+      int i = Arrays.binarySearch(pairs, (long) parent << 32);
+      if (i < 0) {
+        i = -i - 1;
+      }
+      for (; i < pairs.length && (int) (pairs[i] >>> 32) == parent; i++) {
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
+        }
+        result[count++] = (int) pairs[i];
+      }
+      if (++next >= count) {
+        break;
+      }
+      parent = result[next];
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+}
@@ -0,0 +1,285 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Helper methods for finding the processes that own network sockets using the Linux <code>/proc</code> file system.
+ * <p>
+ * The sockets are read from <code>/proc/net/tcp</code>, <code>tcp6</code>, <code>udp</code> and <code>udp6</code>
+ * (of the network namespace of the current process).
+ * The tables are parsed in place from a byte buffer without creating objects per socket.
+ * Sockets are mapped to processes by their inodes, which are found from the <code>socket:[inode]</code> links in <code>/proc/&lt;pid&gt;/fd</code>.
+ * The descriptors of other users' processes can only be read as root.
+ * </p>
+ */
+final class LinuxSockets {
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final String[] TCP_FILES = { "net/tcp", "net/tcp6" };
+
+  private static final String[] UDP_FILES = { "net/udp", "net/udp6" };
+
+  /**
+   * State of a listening TCP socket in the <code>st</code> column.
+   */
+  private static final int TCP_LISTEN = 0x0A;
+
+  /**
+   * State of a closed TCP connection waiting for the last packets, it has no owner any more.
+   */
+  private static final int TCP_TIME_WAIT = 0x06;
+
+  /**
+   * Index of the <code>inode</code> column after <code>sl local_address rem_address st tx_queue:rx_queue tr:tm-&gt;when retrnsmt uid timeout</code>.
+   */
+  private static final int INODE_COLUMN = 9;
+
+  private LinuxSockets() {
+  }
+
+  /**
+   * Visitor of the sockets in a socket table.
+   */
+  private interface SocketVisitor {
+
+    /**
+     * @param port the local port.
+     * @param state the state (TCP only).
+     * @param inode the socket inode, <code>0</code> if the socket has no owner any more.
+     * @return <code>false</code> to stop reading the table.
+     */
+    boolean visit(int port, int state, long inode);
+
+  }
+
+  /**
+   * Finds the inodes of the TCP sockets listening on the given port and the UDP sockets bound to it.
+   *
+   * @param root the proc file system root.
+   * @param port the local port.
+   * @return the socket inodes.
+   * @throws IOException on IO error.
+   */
+  static Set<Long> findListeningInodes(File root, int port) throws IOException {
+    final Set<Long> result = new HashSet<Long>();
+    byte[] buffer = new byte[BUFFER_SIZE];
+    int[] ports = { port };
+    for (String name : TCP_FILES) {
+      readTable(new File(root, name), ports, buffer, new SocketVisitor() {
+        @Override
+        public boolean visit(int port, int state, long inode) {
+          if (state == TCP_LISTEN) {
+            result.add(inode);
+          }
+          return true;
+        }
+      });
+    }
+    for (String name : UDP_FILES) {
+      readTable(new File(root, name), ports, buffer, new SocketVisitor() {
+        @Override
+        public boolean visit(int port, int state, long inode) {
+          result.add(inode);
+          return true;
+        }
+      });
+    }
+    // Sockets with no owner left (e.g. in TIME_WAIT) have inode 0
+    result.remove(0L);
+    return result;
+  }
+
+  /**
+   * Checks whether any TCP or UDP socket uses any of the given local ports.
+   * The check stops at the first match.
+   *
+   * @param root the proc file system root.
+   * @param ports the local ports in ascending order.
+   * @param includeTimeWait <code>true</code> if TCP connections in the <code>TIME_WAIT</code> state are also counted.
+   * @param buffer buffer for reading the socket tables, larger than any line of them.
+   * @return description of the first socket found, e.g. <code>tcp6 port 8080</code>, <code>null</code> if there is none.
+   * @throws IOException on IO error.
+   */
+  static String findBoundPort(File root, int[] ports, boolean includeTimeWait, byte[] buffer) throws IOException {
+    for (String name : TCP_FILES) {
+      int port = findBoundPort(new File(root, name), ports, includeTimeWait ? -1 : TCP_TIME_WAIT, buffer);
+      if (port >= 0) {
+        return name.substring(4) + " port " + port;
+      }
+    }
+    for (String name : UDP_FILES) {
+      int port = findBoundPort(new File(root, name), ports, -1, buffer);
+      if (port >= 0) {
+        return name.substring(4) + " port " + port;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param ignoredState state of the sockets to skip, <code>-1</code> for none.
+   * @return the first local port found, <code>-1</code> if there is none.
+   */
+  private static int findBoundPort(File file, int[] ports, final int ignoredState, byte[] buffer) throws IOException {
+    final int[] result = { -1 };
+    readTable(file, ports, buffer, new SocketVisitor() {
+      @Override
+      public boolean visit(int port, int state, long inode) {
+        if (ignoredState >= 0 && state == ignoredState) {
+          return true;
+        }
+        result[0] = port;
+        return false;
+      }
+    });
+    return result[0];
+  }
+
+  /**
+   * Reads a socket table and visits the sockets on any of the given local ports.
+   * Missing tables (e.g. when IPv6 is disabled) have no sockets.
+   *
+   * @param ports the local ports in ascending order.
+   */
+  private static void readTable(File file, int[] ports, byte[] buffer, SocketVisitor visitor) throws IOException {
+    FileInputStream in;
+    try {
+      in = new FileInputStream(file);
+    }
+    catch (FileNotFoundException e) {
+      return;
+    }
+    try {
+      boolean header = true;
+      int size = 0;
+      int n;
+      while ((n = in.read(buffer, size, buffer.length - size)) > 0) {
+        size += n;
+        int start = 0;
+        for (int i = 0; i < size; i++) {
+          if (buffer[i] != '\n') {
+            continue;
+          }
+          if (header) {
+            header = false;
+          }
+          else if (!parseLine(buffer, start, i, ports, visitor)) {
+            return;
+          }
+          start = i + 1;
+        }
+        // Keep the incomplete last line for the next read
+        size -= start;
+        System.arraycopy(buffer, start, buffer, 0, size);
+        if (size == buffer.length) {
+          throw new IOException("Too long line in " + file);
+        }
+      }
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  /**
+   * Parses a line of a socket table: <code>sl local_address rem_address st ... inode ...</code>
+   * where the addresses end with a colon and the port in hex, the state is in hex and the inode is decimal.
+   * The rest of the line is only parsed if the local port is one of the given ports.
+   *
+   * @return the result of the visitor, <code>true</code> if the socket was not visited.
+   */
+  private static boolean parseLine(byte[] buffer, int start, int end, int[] ports, SocketVisitor visitor) {
+    int i = skipField(buffer, skipSpaces(buffer, start, end), end);
+    int local = skipSpaces(buffer, i, end);
+    i = skipField(buffer, local, end);
+    int colon = i - 1;
+    while (colon > local && buffer[colon] != ':') {
+      colon--;
+    }
+    int port = parseHex(buffer, colon + 1, i);
+    if (port < 0 || Arrays.binarySearch(ports, port) < 0) {
+      return true;
+    }
+    i = skipField(buffer, skipSpaces(buffer, i, end), end);
+    int state = skipSpaces(buffer, i, end);
+    i = skipField(buffer, state, end);
+    int stateValue = parseHex(buffer, state, i);
+    for (int column = 4; column <= INODE_COLUMN; column++) {
+      i = skipSpaces(buffer, i, end);
+      if (column < INODE_COLUMN) {
+        i = skipField(buffer, i, end);
+      }
+    }
+    long inode = i < end ? LinuxProcFs.parseLong(buffer, end, i) : 0;
+    return visitor.visit(port, stateValue, inode);
+  }
+
+  private static int skipSpaces(byte[] buffer, int i, int end) {
+    while (i < end && buffer[i] == ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  private static int skipField(byte[] buffer, int i, int end) {
+    while (i < end && buffer[i] != ' ') {
+      i++;
+    }
+    return i;
+  }
+
+  /**
+   * @return the value, <code>-1</code> if it's empty or not a hex number.
+   */
+  private static int parseHex(byte[] buffer, int start, int end) {
+    if (start >= end) {
+      return -1;
+    }
+    int result = 0;
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(buffer[i], 16);
+      if (digit < 0) {
+        return -1;
+      }
+      result = result * 16 + digit;
+    }
+    return result;
+  }
+
+  /**
+   * Finds the processes that have a descriptor of any of the given sockets.
+   * All descriptors of all processes are read once, no matter how many sockets there are.
+   *
+   * @param root the proc file system root.
+   * @param inodes the socket inodes.
+   * @return the process IDs in ascending order.
+   * @throws IOException on IO error.
+   */
+  static int[] findPidsBySocketInodes(File root, Set<Long> inodes) throws IOException {
+    if (inodes.isEmpty()) {
+      return new int[0];
+    }
+    // The descriptor links of the sockets
+    Set<String> targets = new HashSet<String>();
+    for (long inode : inodes) {
+      targets.add("socket:[" + inode + "]");
+    }
+    int[] pids = LinuxProcFs.listPids(root);
+    int[] result = new int[pids.length];
+    int count = 0;
+    for (int pid : pids) {
+      if (LinuxProcFs.isHoldingFile(root, pid, targets)) {
+        result[count++] = pid;
+      }
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+}
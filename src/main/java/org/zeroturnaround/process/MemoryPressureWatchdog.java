@@ -0,0 +1,337 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys registered processes when the Linux host is running out of memory, before the kernel OOM killer has to choose a victim itself.
+ * <p>
+ * It samples the memory pressure stall information (PSI) from <code>/proc/pressure/memory</code>.
+ * The pressure is the share of time some (or with {@link #setFullStall(boolean)} all) tasks were stalled on memory
+ * since the previous sample, calculated from the <code>total</code> counter
+ * (unlike the <code>avg10</code> value it reacts on the very next sample after a victim is gone).
+ * </p>
+ * <p>
+ * When the pressure is at or above the threshold a single victim is destroyed using
+ * {@link ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, long, TimeUnit, long, TimeUnit)}.
+ * The victim is a live process with the lowest priority and the largest resident set size among those.
+ * This repeats on the following samples until the pressure drops below the threshold or no processes are left.
+ * Finished processes are unregistered automatically.
+ * </p>
+ * <p>
+ * Both the pressure file and the proc file system root can be replaced e.g. in tests.
+ * </p>
+ */
+public class MemoryPressureWatchdog {
+
+  private static final Logger log = LoggerFactory.getLogger(MemoryPressureWatchdog.class);
+
+  /**
+   * Default location of the memory pressure file.
+   */
+  public static final File DEFAULT_PRESSURE_FILE = new File("/proc/pressure/memory");
+
+  private final File pressureFile;
+
+  private final File procRoot;
+
+  private final Map<SystemProcess, Integer> priorities = new ConcurrentHashMap<SystemProcess, Integer>();
+
+  private final byte[] buffer = new byte[512];
+
+  private volatile double threshold = 20;
+
+  private volatile boolean fullStall;
+
+  private volatile long interval = 1000;
+
+  private volatile long gracefulTimeout = 5000;
+
+  private volatile long forcefulTimeout = 5000;
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * Stall time counter of the previous sample in microseconds, <code>-1</code> if there's none.
+   */
+  private long lastTotal = -1;
+
+  /**
+   * Value of {@link System#nanoTime()} of the previous sample.
+   */
+  private long lastTime;
+
+  public MemoryPressureWatchdog() {
+    this(DEFAULT_PRESSURE_FILE, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param pressureFile the file with the memory pressure stall information.
+   * @param procRoot the proc file system root for reading the resident set sizes.
+   */
+  public MemoryPressureWatchdog(File pressureFile, File procRoot) {
+    this.pressureFile = pressureFile;
+    this.procRoot = procRoot;
+  }
+
+  public double getThreshold() {
+    return threshold;
+  }
+
+  /**
+   * @param threshold percentage of stalled time (0-100) that causes a process to be destroyed.
+   */
+  public void setThreshold(double threshold) {
+    this.threshold = threshold;
+  }
+
+  public boolean isFullStall() {
+    return fullStall;
+  }
+
+  /**
+   * @param fullStall <code>true</code> if the <code>full</code> line (all tasks stalled) is used instead of the <code>some</code> one.
+   */
+  public void setFullStall(boolean fullStall) {
+    this.fullStall = fullStall;
+  }
+
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * @param interval sampling interval in milliseconds (used by {@link #start()}).
+   */
+  public void setInterval(long interval) {
+    this.interval = interval;
+  }
+
+  /**
+   * @param timeout the maximum time to wait until a victim finishes after the graceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setGracefulTimeout(long timeout, TimeUnit unit) {
+    this.gracefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * @param timeout the maximum time to wait until a victim finishes after the forceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setForcefulTimeout(long timeout, TimeUnit unit) {
+    this.forcefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * Registers a process that can be destroyed.
+   * Registering the same process again updates its priority.
+   *
+   * @param process the process.
+   * @param priority priority of the process, processes with lower values are destroyed first.
+   */
+  public void register(SystemProcess process, int priority) {
+    priorities.put(process, priority);
+  }
+
+  /**
+   * @param process the process that should not be destroyed any more.
+   */
+  public void unregister(SystemProcess process) {
+    priorities.remove(process);
+  }
+
+  /**
+   * @return the processes currently registered.
+   */
+  public List<SystemProcess> getProcesses() {
+    return new ArrayList<SystemProcess>(priorities.keySet());
+  }
+
+  /**
+   * Starts sampling the memory pressure in a background thread.
+   */
+  public synchronized void start() {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "memory-pressure-watchdog");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          check();
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+          log.error("Failed to check the memory pressure", e);
+        }
+      }
+    }, 0, interval, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Stops the background thread started by {@link #start()}.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Takes a single sample of the memory pressure and destroys a victim if it's at or above the threshold.
+   * The first sample only records the counters.
+   *
+   * @return <code>true</code> if a process was destroyed.
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public boolean check() throws IOException, InterruptedException {
+    SystemProcess victim;
+    synchronized (buffer) {
+      long total = readStallTotal();
+      long time = System.nanoTime();
+      long previousTotal = lastTotal;
+      long previousTime = lastTime;
+      lastTotal = total;
+      lastTime = time;
+      if (previousTotal < 0 || time == previousTime) {
+        return false;
+      }
+      double pressure = (total - previousTotal) * 1000.0 * 100 / (time - previousTime);
+      log.trace("Memory pressure is {}%", pressure);
+      if (pressure < threshold) {
+        return false;
+      }
+      victim = selectVictim();
+      if (victim == null) {
+        log.warn("Memory pressure {}% is above {}% but there's no process to destroy", format(pressure), threshold);
+        return false;
+      }
+      log.warn("Memory pressure {}% is above {}%, destroying {}", format(pressure), threshold, victim);
+    }
+    priorities.remove(victim);
+    try {
+      ProcessUtil.destroyGracefullyOrForcefullyAndWait(victim, gracefulTimeout, TimeUnit.MILLISECONDS, forcefulTimeout, TimeUnit.MILLISECONDS);
+    }
+    catch (TimeoutException e) {
+      log.error("Failed to destroy {}", victim, e);
+    }
+    synchronized (buffer) {
+      // The next sample should only measure the pressure after the victim is gone
+      lastTotal = readStallTotal();
+      lastTime = System.nanoTime();
+    }
+    return true;
+  }
+
+  private static String format(double pressure) {
+    return String.format("%.1f", pressure);
+  }
+
+  /**
+   * @return the live process with the lowest priority and the largest resident set size, <code>null</code> if there's none.
+   */
+  private SystemProcess selectVictim() throws IOException, InterruptedException {
+    SystemProcess result = null;
+    int resultPriority = 0;
+    long resultRss = 0;
+    for (Map.Entry<SystemProcess, Integer> entry : priorities.entrySet()) {
+      SystemProcess process = entry.getKey();
+      int priority = entry.getValue();
+      if (result != null && priority > resultPriority) {
+        continue;
+      }
+      if (!process.isAlive()) {
+        log.debug("Unregistering finished {}", process);
+        priorities.remove(process);
+        continue;
+      }
+      long rss = readRss(process);
+      if (result == null || priority < resultPriority || rss > resultRss) {
+        result = process;
+        resultPriority = priority;
+        resultRss = rss;
+      }
+    }
+    return result;
+  }
+
+  private long readRss(SystemProcess process) throws IOException {
+    int pid = PidUtil.findPid(process);
+    if (pid <= 0) {
+      return 0;
+    }
+    return Math.max(0, LinuxProcFs.readRss(procRoot, pid, buffer));
+  }
+
+  /**
+   * @return the total stall time in microseconds.
+   */
+  private long readStallTotal() throws IOException {
+    int size = LinuxProcFs.read(pressureFile, buffer);
+    if (size < 0) {
+      throw new IOException(pressureFile + " not found");
+    }
+    String prefix = fullStall ? "full " : "some ";
+    int line = 0;
+    while (line < size) {
+      if (startsWith(buffer, size, line, prefix)) {
+        int i = indexOf(buffer, size, line, "total=");
+        if (i >= 0) {
+          return LinuxProcFs.parseLong(buffer, size, i + "total=".length());
+        }
+      }
+      while (line < size && buffer[line] != '\n') {
+        line++;
+      }
+      line++;
+    }
+    throw new IOException("No '" + prefix.trim() + "' total in " + pressureFile);
+  }
+
+  private static boolean startsWith(byte[] buffer, int size, int offset, String prefix) {
+    if (offset + prefix.length() > size) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length(); i++) {
+      if (buffer[offset + i] != prefix.charAt(i)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int indexOf(byte[] buffer, int size, int offset, String value) {
+    for (int i = offset; i < size && buffer[i] != '\n'; i++) {
+      if (startsWith(buffer, size, i, value)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+}
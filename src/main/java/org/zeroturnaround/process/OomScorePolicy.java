@@ -0,0 +1,109 @@
+package org.zeroturnaround.process;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Policy for adjusting the Linux OOM killer score (<code>oom_score_adj</code>) of managed processes.
+ * <p>
+ * The score is either fixed or chosen by the role of the process.
+ * Optionally a different score is applied when the process is being destroyed gracefully,
+ * so a process that is shutting down is the first one killed if the system runs out of memory meanwhile.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see OomScoreProcess
+ * @see Processes#newProcessWithOomScore(SystemProcess, OomScorePolicy, String)
+ */
+public class OomScorePolicy {
+
+  /**
+   * The lowest score adjustment (the process is never killed by the OOM killer).
+   */
+  public static final int MIN_SCORE = -1000;
+
+  /**
+   * The highest score adjustment (the process is always killed first by the OOM killer).
+   */
+  public static final int MAX_SCORE = 1000;
+
+  private final Map<String, Integer> roleScores;
+
+  private final Integer defaultScore;
+
+  private final Integer shutdownScore;
+
+  private OomScorePolicy(Map<String, Integer> roleScores, Integer defaultScore, Integer shutdownScore) {
+    this.roleScores = roleScores;
+    this.defaultScore = defaultScore;
+    this.shutdownScore = shutdownScore;
+  }
+
+  /**
+   * @param score the score adjustment applied to all processes.
+   * @return policy with a fixed score.
+   */
+  public static OomScorePolicy fixed(int score) {
+    return new OomScorePolicy(Collections.<String, Integer>emptyMap(), checkScore(score), null);
+  }
+
+  /**
+   * @param scores the score adjustments by the process roles.
+   * @param defaultScore the score adjustment of other roles, <code>null</code> for leaving them unchanged.
+   * @return policy with scores by the process roles.
+   */
+  public static OomScorePolicy byRole(Map<String, Integer> scores, Integer defaultScore) {
+    Map<String, Integer> copy = new HashMap<String, Integer>();
+    for (Map.Entry<String, Integer> entry : scores.entrySet()) {
+      copy.put(entry.getKey(), checkScore(entry.getValue()));
+    }
+    return new OomScorePolicy(Collections.unmodifiableMap(copy), defaultScore == null ? null : checkScore(defaultScore), null);
+  }
+
+  /**
+   * @param score the score adjustment applied when a process is being destroyed gracefully.
+   * @return copy of this policy that also changes the score during graceful shutdown.
+   */
+  public OomScorePolicy withShutdownScore(int score) {
+    return new OomScorePolicy(roleScores, defaultScore, checkScore(score));
+  }
+
+  /**
+   * @return copy of this policy that makes a process the first one to be killed by the OOM killer during graceful shutdown.
+   */
+  public OomScorePolicy withShutdownScore() {
+    return withShutdownScore(MAX_SCORE);
+  }
+
+  /**
+   * @param role the process role (may be <code>null</code>).
+   * @return the score adjustment of a running process, <code>null</code> for leaving it unchanged.
+   */
+  public Integer getScore(String role) {
+    Integer result = role == null ? null : roleScores.get(role);
+    return result == null ? defaultScore : result;
+  }
+
+  /**
+   * @return the score adjustment of a process that is being destroyed gracefully, <code>null</code> for leaving it unchanged.
+   */
+  public Integer getShutdownScore() {
+    return shutdownScore;
+  }
+
+  static int checkScore(int score) {
+    if (score < MIN_SCORE || score > MAX_SCORE) {
+      throw new IllegalArgumentException("OOM score adjustment must be between " + MIN_SCORE + " and " + MAX_SCORE + ": " + score);
+    }
+    return score;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(roles=" + roleScores + ", default=" + defaultScore + ", shutdown=" + shutdownScore + ")";
+  }
+
+}
@@ -0,0 +1,119 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Wraps another {@link SystemProcess} and adjusts the Linux OOM killer score of the represented processes according to an {@link OomScorePolicy}.
+ * <p>
+ * The score is adjusted by {@link #apply()} and, if the policy says so, again before the graceful destroy signal is sent.
+ * It applies to all processes with a known PID, including the parts of an {@link AndProcess}.
+ * Failing to adjust the score is logged and does not prevent destroying the process.
+ * </p>
+ * <p>
+ * All other operations are delegated to the wrapped process.
+ * </p>
+ */
+public class OomScoreProcess extends AbstractProcess {
+
+  private final SystemProcess target;
+
+  private final OomScorePolicy policy;
+
+  private final String role;
+
+  private final File procRoot;
+
+  /**
+   * @param target the wrapped process.
+   * @param policy the score policy.
+   * @param role the process role passed to the policy (may be <code>null</code>).
+   */
+  public OomScoreProcess(SystemProcess target, OomScorePolicy policy, String role) {
+    this(target, policy, role, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param target the wrapped process.
+   * @param policy the score policy.
+   * @param role the process role passed to the policy (may be <code>null</code>).
+   * @param procRoot the proc file system root.
+   */
+  public OomScoreProcess(SystemProcess target, OomScorePolicy policy, String role, File procRoot) {
+    this.target = target;
+    this.policy = policy;
+    this.role = role;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * @return the wrapped process.
+   */
+  public SystemProcess getTarget() {
+    return target;
+  }
+
+  /**
+   * @return the process role.
+   */
+  public String getRole() {
+    return role;
+  }
+
+  /**
+   * Adjusts the score of the running processes according to the policy.
+   *
+   * @return number of processes whose score was changed.
+   */
+  public int apply() {
+    return adjust(policy.getScore(role));
+  }
+
+  private int adjust(Integer score) {
+    if (score == null) {
+      return 0;
+    }
+    int result = 0;
+    for (int pid : PidUtil.findPids(target)) {
+      try {
+        if (LinuxProcFs.writeOomScoreAdj(procRoot, pid, score)) {
+          result++;
+        }
+      }
+      catch (IOException e) {
+        log.warn("Could not set OOM score adjustment of {} to {}", pid, score, e);
+      }
+    }
+    return result;
+  }
+
+  @Override
+  public boolean isAlive() throws IOException, InterruptedException {
+    return target.isAlive();
+  }
+
+  @Override
+  public void waitFor() throws InterruptedException {
+    target.waitFor();
+  }
+
+  @Override
+  public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+    return target.waitFor(timeout, unit);
+  }
+
+  @Override
+  public void destroy(boolean forceful) throws IOException, InterruptedException {
+    if (!forceful) {
+      adjust(policy.getShutdownScore());
+    }
+    CompositeProcess.invokeDestroy(target, forceful);
+  }
+
+  @Override
+  protected String getDescription() {
+    return target.toString();
+  }
+
+}
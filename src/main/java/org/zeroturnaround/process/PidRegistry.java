@@ -0,0 +1,393 @@
+package org.zeroturnaround.process;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * File that records the processes managed by this JVM, so they can be cleaned up by the next JVM if this one dies without destroying them.
+ * <p>
+ * The file starts with the boot ID of the system (<code>/proc/sys/kernel/random/boot_id</code>).
+ * Each registration appends a line with the PID, the start time and the label of the process, each unregistration appends a removal line.
+ * A line is written with a single <code>write</code> system call without buffering or syncing,
+ * so it survives the JVM being killed (but not necessarily the host crashing) and costs only a few microseconds.
+ * The file is compacted once most of its lines are removals.
+ * </p>
+ * <p>
+ * On startup {@link #cleanUp(File, long, TimeUnit)} reads the file of the previous JVM and destroys the processes that are still alive.
+ * A process is only destroyed if it was registered during the current boot and its start time still matches,
+ * so a reused PID is never signaled (start times are counted from the boot, so they may match again after a reboot).
+ * Start times are read from <code>/proc</code>, so the verification works on Linux only; elsewhere no process is destroyed.
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class PidRegistry implements Closeable {
+
+  private static final Logger log = LoggerFactory.getLogger(PidRegistry.class);
+
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private static final int MIN_COMPACT_LINES = 1024;
+
+  private static final String BOOT_PREFIX = "# boot ";
+
+  private final File file;
+
+  private final File procRoot;
+
+  private final Map<Integer, Entry> entries = new ConcurrentHashMap<Integer, Entry>();
+
+  private final byte[] buffer = new byte[512];
+
+  /**
+   * ID of the current boot, <code>null</code> if it's not available.
+   */
+  private final String bootId;
+
+  /**
+   * Header line with the boot ID, empty if the boot ID is not available.
+   */
+  private final String header;
+
+  private FileChannel channel;
+
+  /**
+   * Number of lines in the file.
+   */
+  private int lines;
+
+  /**
+   * Creates a new registry file, replacing the existing one.
+   * Call {@link #cleanUp(File, long, TimeUnit)} before that to destroy the processes left over by the previous JVM.
+   *
+   * @param file the registry file.
+   * @throws IOException if the file could not be created.
+   */
+  public PidRegistry(File file) throws IOException {
+    this(file, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param file the registry file.
+   * @param procRoot the proc file system root for reading the start times.
+   * @throws IOException if the file could not be created.
+   */
+  public PidRegistry(File file, File procRoot) throws IOException {
+    this.file = file;
+    this.procRoot = procRoot;
+    this.bootId = LinuxProcFs.isSupported(procRoot) ? LinuxProcFs.readBootId(procRoot) : null;
+    this.header = bootId == null ? "" : BOOT_PREFIX + bootId + "\n";
+    this.channel = new FileOutputStream(file).getChannel();
+    if (!header.isEmpty()) {
+      append(header);
+    }
+  }
+
+  /**
+   * @return the registry file.
+   */
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Registers a process so it's destroyed by the next JVM if it's still alive.
+   *
+   * @param process the process (its PID must be known).
+   * @param label description of the process (may be <code>null</code>).
+   * @return the same process.
+   * @throws IOException on IO error.
+   * @throws IllegalArgumentException if the PID of the process is unknown.
+   */
+  public <T extends SystemProcess> T register(T process, String label) throws IOException {
+    int pid = PidUtil.findPid(process);
+    if (pid <= 0) {
+      throw new IllegalArgumentException("PID of " + process + " is unknown");
+    }
+    register(pid, label);
+    return process;
+  }
+
+  /**
+   * Registers a process so it's destroyed by the next JVM if it's still alive.
+   *
+   * @param pid the process ID.
+   * @param label description of the process (may be <code>null</code>).
+   * @throws IOException on IO error.
+   */
+  public void register(int pid, String label) throws IOException {
+    long startTime;
+    synchronized (buffer) {
+      startTime = LinuxProcFs.isSupported(procRoot) ? LinuxProcFs.readStartTime(procRoot, pid, buffer) : 0;
+    }
+    if (startTime < 0) {
+      log.debug("Process {} has already finished, not registering it", pid);
+      return;
+    }
+    Entry entry = new Entry(pid, startTime, label == null ? "" : label.replace('\n', ' ').replace('\r', ' '), bootId);
+    synchronized (this) {
+      append("+ " + entry + "\n");
+      entries.put(pid, entry);
+    }
+  }
+
+  /**
+   * Unregisters a process that has been destroyed or should not be destroyed any more.
+   *
+   * @param pid the process ID.
+   * @throws IOException on IO error.
+   */
+  public synchronized void unregister(int pid) throws IOException {
+    if (entries.remove(pid) == null) {
+      return;
+    }
+    append("- " + pid + "\n");
+    if (lines >= MIN_COMPACT_LINES && lines > 4 * entries.size()) {
+      compact();
+    }
+  }
+
+  /**
+   * @return the processes currently registered.
+   */
+  public Collection<Entry> getEntries() {
+    return Collections.unmodifiableCollection(new ArrayList<Entry>(entries.values()));
+  }
+
+  private void append(String line) throws IOException {
+    if (channel == null) {
+      throw new IllegalStateException("Registry is closed");
+    }
+    ByteBuffer bytes = ByteBuffer.wrap(line.getBytes(UTF_8));
+    while (bytes.hasRemaining()) {
+      channel.write(bytes);
+    }
+    lines++;
+  }
+
+  /**
+   * Rewrites the file with only the registered processes.
+   */
+  private void compact() throws IOException {
+    File temp = new File(file.getPath() + ".tmp");
+    StringBuilder content = new StringBuilder(header);
+    for (Entry entry : entries.values()) {
+      content.append("+ ").append(entry).append('\n');
+    }
+    FileOutputStream out = new FileOutputStream(temp);
+    try {
+      out.write(content.toString().getBytes(UTF_8));
+    }
+    finally {
+      out.close();
+    }
+    channel.close();
+    try {
+      if (!temp.renameTo(file)) {
+        temp.delete();
+        throw new IOException("Could not rename " + temp + " to " + file);
+      }
+    }
+    finally {
+      // Keep appending to the old file if the rename failed
+      channel = new FileOutputStream(file, true).getChannel();
+    }
+    lines = entries.size() + (header.isEmpty() ? 0 : 1);
+    log.trace("Compacted {} to {} entries", file, lines);
+  }
+
+  /**
+   * Closes the file. The registered processes stay in the file.
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (channel != null) {
+      channel.close();
+      channel = null;
+    }
+  }
+
+  /**
+   * Reads the processes registered in the given file.
+   *
+   * @param file the registry file.
+   * @return the registered processes, empty if the file does not exist.
+   *    Their boot ID is the one in the header of the file.
+   * @throws IOException on IO error.
+   */
+  public static List<Entry> read(File file) throws IOException {
+    Map<Integer, Entry> result = new LinkedHashMap<Integer, Entry>();
+    if (!file.exists()) {
+      return new ArrayList<Entry>();
+    }
+    BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF_8));
+    try {
+      String bootId = null;
+      String line;
+      while ((line = reader.readLine()) != null) {
+        try {
+          if (line.startsWith(BOOT_PREFIX)) {
+            bootId = line.substring(BOOT_PREFIX.length()).trim();
+          }
+          else if (line.startsWith("+ ")) {
+            String[] parts = line.split(" ", 4);
+            int pid = Integer.parseInt(parts[1]);
+            result.put(pid, new Entry(pid, Long.parseLong(parts[2]), parts.length > 3 ? parts[3] : "", bootId));
+          }
+          else if (line.startsWith("- ")) {
+            result.remove(Integer.parseInt(line.substring(2).trim()));
+          }
+          else if (!line.isEmpty()) {
+            throw new NumberFormatException();
+          }
+        }
+        catch (RuntimeException e) {
+          // The last line may be incomplete if the JVM died while writing it
+          log.warn("Ignoring invalid line in {}: {}", file, line);
+        }
+      }
+    }
+    finally {
+      reader.close();
+    }
+    return new ArrayList<Entry>(result.values());
+  }
+
+  /**
+   * Destroys the processes left over in the given registry file by a previous JVM and deletes the file.
+   * Only the processes registered during the current boot with a matching start time are destroyed, all of them in parallel
+   * (see {@link ProcessUtil#destroyEachGracefullyOrForcefullyAndWait(AndProcess, Deadline, double)}).
+   *
+   * @param file the registry file.
+   * @param timeout the maximum time to wait until the processes finish.
+   * @param unit the time unit of the timeout argument.
+   * @return which processes exited after the graceful destroy operation, which were killed and which did not finish.
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public static DestroyResult cleanUp(File file, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+    return cleanUp(file, LinuxProcFs.DEFAULT_ROOT, timeout, unit);
+  }
+
+  /**
+   * Destroys the processes left over in the given registry file by a previous JVM and deletes the file.
+   *
+   * @param file the registry file.
+   * @param procRoot the proc file system root for reading the start times.
+   * @param timeout the maximum time to wait until the processes finish.
+   * @param unit the time unit of the timeout argument.
+   * @return which processes exited after the graceful destroy operation, which were killed and which did not finish.
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public static DestroyResult cleanUp(File file, File procRoot, long timeout, TimeUnit unit) throws IOException, InterruptedException {
+    Deadline deadline = Deadline.after(timeout, unit);
+    List<SystemProcess> leftovers = new ArrayList<SystemProcess>();
+    if (LinuxProcFs.isSupported(procRoot)) {
+      byte[] buffer = new byte[512];
+      int myPid = PidUtil.getMyPid();
+      String bootId = LinuxProcFs.readBootId(procRoot);
+      for (Entry entry : read(file)) {
+        if (bootId == null || !bootId.equals(entry.bootId)) {
+          log.debug("PID {} was registered during another boot, not destroying it", entry.pid);
+          continue;
+        }
+        long startTime = LinuxProcFs.readStartTime(procRoot, entry.pid, buffer);
+        if (startTime < 0) {
+          continue;
+        }
+        if (startTime != entry.startTime || entry.pid == myPid) {
+          log.debug("PID {} has been reused, not destroying it", entry.pid);
+          continue;
+        }
+        log.info("Destroying leftover process {} ({})", entry.pid, entry.label);
+        leftovers.add(new UnixProcess(entry.pid));
+      }
+    }
+    else if (file.exists()) {
+      log.warn("Process start times can't be verified, not destroying the processes in {}", file);
+    }
+    DestroyResult result;
+    if (leftovers.isEmpty()) {
+      List<SystemProcess> none = Collections.emptyList();
+      result = new DestroyResult(none, none, none);
+    }
+    else {
+      result = ProcessUtil.destroyEachGracefullyOrForcefullyAndWait(new AndProcess(leftovers), deadline, 0.5);
+    }
+    if (file.exists() && !file.delete()) {
+      throw new IOException("Could not delete " + file);
+    }
+    return result;
+  }
+
+  /**
+   * Process recorded in a registry.
+   */
+  public static class Entry {
+
+    private final int pid;
+
+    private final long startTime;
+
+    private final String label;
+
+    private final String bootId;
+
+    Entry(int pid, long startTime, String label, String bootId) {
+      this.pid = pid;
+      this.startTime = startTime;
+      this.label = label;
+      this.bootId = bootId;
+    }
+
+    public int getPid() {
+      return pid;
+    }
+
+    /**
+     * @return start time in clock ticks after the system boot, <code>0</code> if unknown.
+     */
+    public long getStartTime() {
+      return startTime;
+    }
+
+    public String getLabel() {
+      return label;
+    }
+
+    /**
+     * @return ID of the boot during which the process was registered, <code>null</code> if unknown.
+     */
+    public String getBootId() {
+      return bootId;
+    }
+
+    @Override
+    public String toString() {
+      return pid + " " + startTime + " " + label;
+    }
+
+  }
+
+}
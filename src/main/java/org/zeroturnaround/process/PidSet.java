@@ -0,0 +1,170 @@
+package org.zeroturnaround.process;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.zeroturnaround.process.unix.LibC;
+
+/**
+ * Represents a large set of UNIX processes by their PID values.
+ * <p>
+ * Unlike an {@link AndProcess} of {@link UnixProcess} instances it keeps the PIDs in a single sorted <code>int</code> array
+ * so tracking a process costs 4 bytes of heap and no per-process objects are created by any operation.
+ * It uses the same <code>getpgid</code> and <code>kill</code> system calls as {@link UnixProcess}.
+ * </p>
+ * <p>
+ * Once a process is found to be finished it is never checked or signaled again.
+ * The finished processes are skipped from the beginning of the array,
+ * so polling in {@link #waitFor()} makes only a single system call per process over the whole wait
+ * plus one for each poll.
+ * </p>
+ * <p>
+ * {@link #isAlive()} returns <code>true</code> if at least one of the processes is still alive.
+ * If it fails to signal any process it still tries to signal other processes before actually throwing the initial error.
+ * </p>
+ */
+public class PidSet extends PollingProcess {
+
+  /**
+   * The distinct process IDs in ascending order.
+   */
+  private final int[] pids;
+
+  /**
+   * Index of the first process that is not known to be finished yet.
+   */
+  private int firstAlive;
+
+  /**
+   * Buffer for checking zombies while the JVM is a child subreaper, allocated on the first such check.
+   */
+  private byte[] buffer;
+
+  /**
+   * @param pids the process IDs (the array is copied, duplicates are removed).
+   * @throws IllegalArgumentException if any of the process IDs is not positive
+   *    (<code>kill</code> treats such values as process groups or all processes).
+   */
+  public PidSet(int... pids) {
+    this.pids = sortedDistinct(pids);
+  }
+
+  private static int[] sortedDistinct(int[] pids) {
+    int[] result = pids.clone();
+    Arrays.sort(result);
+    if (result.length > 0 && result[0] <= 0) {
+      throw new IllegalArgumentException("Invalid PID: " + result[0]);
+    }
+    int size = 0;
+    for (int i = 0; i < result.length; i++) {
+      if (size == 0 || result[size - 1] != result[i]) {
+        result[size++] = result[i];
+      }
+    }
+    return size == result.length ? result : Arrays.copyOf(result, size);
+  }
+
+  /**
+   * @return number of processes in this set (finished or not).
+   */
+  public int size() {
+    return pids.length;
+  }
+
+  /**
+   * @param pid the process ID.
+   * @return <code>true</code> if this set contains the given process ID.
+   */
+  public boolean contains(int pid) {
+    return Arrays.binarySearch(pids, pid) >= 0;
+  }
+
+  /**
+   * @return copy of the process IDs in ascending order.
+   */
+  public int[] getPids() {
+    return pids.clone();
+  }
+
+  /**
+   * Checks all processes that are not known to be finished yet.
+   *
+   * @return the process IDs that are still alive in ascending order.
+   * @throws IOException on system call error.
+   */
+  public synchronized int[] getAlivePids() throws IOException {
+    int[] result = new int[pids.length - firstAlive];
+    int size = 0;
+    for (int i = firstAlive; i < pids.length; i++) {
+      if (isAlive(pids[i])) {
+        result[size++] = pids[i];
+      }
+      else if (size == 0) {
+        firstAlive = i + 1;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  @Override
+  public synchronized boolean isAlive() throws IOException {
+    while (firstAlive < pids.length) {
+      if (isAlive(pids[firstAlive])) {
+        return true;
+      }
+      firstAlive++;
+    }
+    return false;
+  }
+
+  private boolean isAlive(int pid) throws IOException {
+    if (UnixProcess.checkZombies && buffer == null) {
+      buffer = new byte[512];
+    }
+    return UnixProcess.isAlive(pid, buffer);
+  }
+
+  @Override
+  public void destroy(boolean forceful) throws IOException {
+    kill(forceful ? LibC.SIGKILL : LibC.SIGTERM);
+  }
+
+  /**
+   * Sends a signal to all processes that are not known to be finished yet.
+   *
+   * @param signal name of the signal.
+   * @return number of processes that received the signal.
+   *
+   * @throws IOException on system call error (after trying to signal all processes).
+   */
+  public synchronized int kill(int signal) throws IOException {
+    IOException firstException = null;
+    int result = 0;
+    for (int i = firstAlive; i < pids.length; i++) {
+      try {
+        if (UnixProcess.kill(pids[i], signal)) {
+          result++;
+        }
+      }
+      catch (IOException e) {
+        log.error("Failed to signal {}", pids[i], e);
+        if (firstException == null) {
+          firstException = e;
+        }
+      }
+    }
+    if (firstException != null) {
+      throw firstException;
+    }
+    return result;
+  }
+
+  @Override
+  protected String getDescription() {
+    if (pids.length <= 10) {
+      return Arrays.toString(pids);
+    }
+    return pids.length + " PIDs from " + pids[0] + " to " + pids[pids.length - 1];
+  }
+
+}
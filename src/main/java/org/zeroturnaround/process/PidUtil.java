@@ -4,6 +4,7 @@ import java.lang.management.ManagementFactory;
 import java.lang.management.RuntimeMXBean;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.Arrays;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -100,6 +101,71 @@ public final class PidUtil {
     return result;
   }
 
+  /**
+   * Finds the PID of the given {@link SystemProcess} if it represents a single process with a known PID.
+   * Detecting the PID of a {@link JavaProcess} does not throw any errors.
+   *
+   * @param process process object (not <code>null</code>).
+   * @return the PID or <code>-1</code> if it's unknown.
+   */
+  static int findPid(SystemProcess process) {
+    if (process instanceof PidProcess && !(process instanceof UnixProcessTree)) {
+      return ((PidProcess) process).getPid();
+    }
+    if (process instanceof JavaProcess) {
+      try {
+        return doGetPid(((JavaProcess) process).getProcess());
+      }
+      catch (RuntimeException e) {
+        log.debug("Could not detect PID from {}", process, e);
+        return -1;
+      }
+    }
+    if (process instanceof OrProcess) {
+      // Prefer alternatives with a PID value as detecting it from a Java process is more expensive
+      for (SystemProcess child : ((OrProcess) process).children) {
+        if (child instanceof PidProcess) {
+          // A process tree has no single PID, so try the other alternatives then
+          int result = findPid(child);
+          if (result > 0) {
+            return result;
+          }
+        }
+      }
+      for (SystemProcess child : ((OrProcess) process).children) {
+        int result = findPid(child);
+        if (result > 0) {
+          return result;
+        }
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Finds the PIDs of all processes represented by the given {@link SystemProcess}.
+   *
+   * @param process process object (not <code>null</code>).
+   * @return the known PIDs (may be empty).
+   */
+  static int[] findPids(SystemProcess process) {
+    if (process instanceof PidSet) {
+      return ((PidSet) process).getPids();
+    }
+    if (process instanceof AndProcess) {
+      int[] result = new int[0];
+      for (SystemProcess child : ((AndProcess) process).children) {
+        int[] pids = findPids(child);
+        int size = result.length;
+        result = Arrays.copyOf(result, size + pids.length);
+        System.arraycopy(pids, 0, result, size, pids.length);
+      }
+      return result;
+    }
+    int pid = findPid(process);
+    return pid > 0 ? new int[] { pid } : new int[0];
+  }
+
   private static int doGetPid(Process process) {
     String type;
     try {
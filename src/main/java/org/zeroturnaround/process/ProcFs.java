@@ -0,0 +1,477 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.jna.Memory;
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+
+/**
+ * Reads process information from the Linux <code>/proc</code> file system without creating garbage.
+ * <p>
+ * The <code>stat</code>, <code>status</code> and <code>cmdline</code> files are parsed by hand from reusable buffers
+ * into a reusable {@link ProcessInfo}, so scanning all processes of a host allocates close to nothing in steady state.
+ * On 64-bit Linux the files are opened and read with direct JNA calls into native memory
+ * and the process directories are listed with <code>getdents64</code>,
+ * elsewhere (or if the native calls are not available) the regular Java file API is used.
+ * </p>
+ * <p>
+ * Instances are not thread-safe, use one instance per thread.
+ * </p>
+ */
+public class ProcFs {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcFs.class);
+
+  private static final int FILE_BUFFER_SIZE = 8192;
+
+  private static final int DIR_BUFFER_SIZE = 32768;
+
+  private static final int O_RDONLY = 0;
+
+  private static final int O_CLOEXEC = 02000000;
+
+  private final File root;
+
+  private final byte[] rootPath;
+
+  private final byte[] buffer = new byte[FILE_BUFFER_SIZE];
+
+  /**
+   * Copy of the directory entries read by <code>getdents64</code>.
+   */
+  private final byte[] dirents;
+
+  /**
+   * Native memory for the file contents and directory entries, <code>null</code> if the native calls are not used.
+   */
+  private final Memory memory;
+
+  /**
+   * Native memory for the NUL-terminated path of the file being opened.
+   */
+  private final Memory path;
+
+  private final byte[] pathBuffer = new byte[512];
+
+  private final ProcessInfo info = new ProcessInfo();
+
+  /**
+   * Growable buffer for reading whole files that don't fit into the file buffer.
+   */
+  private byte[] wholeBuffer = new byte[FILE_BUFFER_SIZE * 2];
+
+  private ProcessInfo.Chars wholeCommand = new ProcessInfo.Chars(FILE_BUFFER_SIZE * 2);
+
+  private int[] pids = new int[1024];
+
+  public ProcFs() {
+    this(LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param root the proc file system root.
+   */
+  public ProcFs(File root) {
+    this.root = root;
+    this.rootPath = root.getAbsolutePath().getBytes(Charset.defaultCharset());
+    if (Direct.AVAILABLE && rootPath.length < pathBuffer.length - 32) {
+      memory = new Memory(Math.max(FILE_BUFFER_SIZE, DIR_BUFFER_SIZE));
+      path = new Memory(pathBuffer.length);
+      dirents = new byte[DIR_BUFFER_SIZE];
+    }
+    else {
+      memory = null;
+      path = null;
+      dirents = null;
+    }
+  }
+
+  /**
+   * @return <code>true</code> if the native calls are used for reading the files.
+   */
+  public boolean isNative() {
+    return memory != null;
+  }
+
+  /**
+   * Visitor of processes.
+   */
+  public interface Visitor {
+
+    /**
+     * @param info information about the process, only valid during this call.
+     * @return <code>false</code> to stop visiting the rest of the processes.
+     */
+    boolean visit(ProcessInfo info) throws IOException;
+
+  }
+
+  /**
+   * Reads information about the given process.
+   *
+   * @param pid the process ID.
+   * @param fields which fields to read, a combination of {@link ProcessInfo#STAT}, {@link ProcessInfo#STATUS} and {@link ProcessInfo#CMDLINE}.
+   * @param info the instance to fill in.
+   * @return <code>false</code> if the process was not found.
+   * @throws IOException on IO error.
+   */
+  public boolean read(int pid, int fields, ProcessInfo info) throws IOException {
+    info.reset(pid);
+    return readMore(pid, fields, info);
+  }
+
+  /**
+   * Reads more fields of the given process without clearing the ones read before.
+   *
+   * @return <code>false</code> if the process was not found.
+   */
+  boolean readMore(int pid, int fields, ProcessInfo info) throws IOException {
+    if ((fields & ProcessInfo.STAT) != 0 && !readStat(pid, info)) {
+      return false;
+    }
+    if ((fields & ProcessInfo.STATUS) != 0 && !readStatus(pid, info)) {
+      return false;
+    }
+    if ((fields & ProcessInfo.CMDLINE) != 0 && !readCommand(pid, info)) {
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Reads information about all processes, reusing the same {@link ProcessInfo} for each of them.
+   * Processes that finish while they are being read are skipped.
+   *
+   * @param fields which fields to read, a combination of {@link ProcessInfo#STAT}, {@link ProcessInfo#STATUS} and {@link ProcessInfo#CMDLINE}.
+   * @param visitor visitor of the processes.
+   * @return number of processes visited.
+   * @throws IOException on IO error.
+   */
+  public int forEach(int fields, Visitor visitor) throws IOException {
+    int count = listPids();
+    int result = 0;
+    for (int i = 0; i < count; i++) {
+      if (read(pids[i], fields, info)) {
+        result++;
+        if (!visitor.visit(info)) {
+          break;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * @return IDs of all processes in ascending order.
+   * @throws IOException on IO error.
+   */
+  public int[] getPids() throws IOException {
+    return Arrays.copyOf(pids, listPids());
+  }
+
+  /**
+   * Lists the process IDs into the reusable array.
+   *
+   * @return number of process IDs.
+   */
+  private int listPids() throws IOException {
+    if (memory == null || !Dirents.AVAILABLE) {
+      int[] result = LinuxProcFs.listPids(root);
+      pids = result;
+      return result.length;
+    }
+    int fd = open(rootPath.length);
+    if (fd < 0) {
+      throw new IOException("Could not list " + root);
+    }
+    int count = 0;
+    try {
+      long n;
+      while ((n = Dirents.getdents64(fd, Pointer.nativeValue(memory), DIR_BUFFER_SIZE)) > 0) {
+        count = parseDirents((int) n, count);
+      }
+      if (n < 0) {
+        throw new IOException("Could not list " + root + ": errno " + Native.getLastError());
+      }
+    }
+    finally {
+      Direct.close(fd);
+    }
+    Arrays.sort(pids, 0, count);
+    return count;
+  }
+
+  /**
+   * Parses <code>linux_dirent64</code> records (inode, offset, little-endian record length, type, name) and adds the numeric names.
+   */
+  private int parseDirents(int size, int count) {
+    memory.read(0, dirents, 0, size);
+    int offset = 0;
+    while (offset < size) {
+      int length = (dirents[offset + 16] & 0xff) | (dirents[offset + 17] & 0xff) << 8;
+      long pid = 0;
+      int i = offset + 19;
+      byte b;
+      while ((b = dirents[i]) >= '0' && b <= '9' && pid <= Integer.MAX_VALUE) {
+        pid = pid * 10 + (b - '0');
+        i++;
+      }
+      if (b == 0 && i > offset + 19 && pid <= Integer.MAX_VALUE) {
+        if (count == pids.length) {
+          pids = Arrays.copyOf(pids, count * 2);
+        }
+        pids[count++] = (int) pid;
+      }
+      offset += length;
+    }
+    return count;
+  }
+
+  private boolean readStat(int pid, ProcessInfo info) throws IOException {
+    int size = readFile(pid, "stat");
+    if (size < 0) {
+      return false;
+    }
+    int start = LinuxProcFs.statFieldsStart(buffer, size);
+    int rss = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_RSS);
+    if (start < 0 || rss < 0) {
+      throw new IOException("Invalid stat file of process " + pid);
+    }
+    int nameStart = 0;
+    while (nameStart < start && buffer[nameStart] != '(') {
+      nameStart++;
+    }
+    // The name ends with ") " before the state
+    info.name.set(buffer, nameStart + 1, Math.max(0, start - 2 - (nameStart + 1)));
+    info.state = (char) buffer[start];
+    info.parentPid = (int) LinuxProcFs.parseLong(buffer, size, LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_PPID));
+    info.processGroupId = (int) LinuxProcFs.parseLong(buffer, size, LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_PGRP));
+    info.sessionId = (int) LinuxProcFs.parseLong(buffer, size, LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_SESSION));
+    info.startTime = LinuxProcFs.parseLong(buffer, size, LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STARTTIME));
+    info.rss = LinuxProcFs.parseLong(buffer, size, rss) * LinuxProcFs.getPageSize();
+    return true;
+  }
+
+  private boolean readStatus(int pid, ProcessInfo info) throws IOException {
+    int size = readFile(pid, "status");
+    if (size < 0) {
+      return false;
+    }
+    int i = LinuxProcFs.statusField(buffer, size, "Uid:");
+    if (i >= 0) {
+      info.uid = (int) LinuxProcFs.parseLong(buffer, size, i);
+    }
+    return true;
+  }
+
+  private boolean readCommand(int pid, ProcessInfo info) throws IOException {
+    int size = readFile(pid, "cmdline");
+    if (size < 0) {
+      return false;
+    }
+    // Drop the terminating NUL
+    if (size > 0 && buffer[size - 1] == 0) {
+      size--;
+    }
+    info.command.set(buffer, 0, size);
+    info.commandTruncated = size > info.command.length;
+    return true;
+  }
+
+  /**
+   * Reads the whole command line of the given process, however long it is (unlike {@link ProcessInfo#getCommand()}).
+   *
+   * @return the arguments separated by spaces, a view that changes on the next call, <code>null</code> if the process was not found.
+   */
+  CharSequence readWholeCommand(int pid) throws IOException {
+    int size = readWholeFile(pid, "cmdline");
+    if (size < 0) {
+      return null;
+    }
+    if (size > 0 && wholeBuffer[size - 1] == 0) {
+      size--;
+    }
+    if (size > wholeCommand.bytes.length) {
+      wholeCommand = new ProcessInfo.Chars(wholeBuffer.length);
+    }
+    wholeCommand.set(wholeBuffer, 0, size);
+    return wholeCommand;
+  }
+
+  /**
+   * Reads a file of the given process into the buffer.
+   *
+   * @return number of bytes read, <code>-1</code> if the process was not found.
+   */
+  private int readFile(int pid, String name) throws IOException {
+    if (memory == null) {
+      return LinuxProcFs.read(new File(root, pid + "/" + name), buffer);
+    }
+    int fd = openFile(pid, name);
+    if (fd < 0) {
+      // The process has finished
+      return -1;
+    }
+    try {
+      long address = Pointer.nativeValue(memory);
+      int size = 0;
+      long n;
+      while (size < FILE_BUFFER_SIZE && (n = Direct.read(fd, address + size, FILE_BUFFER_SIZE - size)) != 0) {
+        if (n < 0) {
+          // Reading a file of a process that has just finished fails with ESRCH
+          return -1;
+        }
+        size += (int) n;
+      }
+      memory.read(0, buffer, 0, size);
+      return size;
+    }
+    finally {
+      Direct.close(fd);
+    }
+  }
+
+  /**
+   * Reads a whole file of the given process into the growable buffer, one chunk of the file buffer size at a time.
+   *
+   * @return number of bytes read, <code>-1</code> if the process was not found.
+   */
+  private int readWholeFile(int pid, String name) throws IOException {
+    if (memory == null) {
+      File file = new File(root, pid + "/" + name);
+      int size;
+      // Proc files can't be resumed by the Java file API, so the file is read again into a larger buffer
+      while ((size = LinuxProcFs.read(file, wholeBuffer)) == wholeBuffer.length) {
+        wholeBuffer = new byte[wholeBuffer.length * 2];
+      }
+      return size;
+    }
+    int fd = openFile(pid, name);
+    if (fd < 0) {
+      return -1;
+    }
+    try {
+      long address = Pointer.nativeValue(memory);
+      int size = 0;
+      long n;
+      while ((n = Direct.read(fd, address, FILE_BUFFER_SIZE)) != 0) {
+        if (n < 0) {
+          return -1;
+        }
+        if (size + n > wholeBuffer.length) {
+          wholeBuffer = Arrays.copyOf(wholeBuffer, Math.max(wholeBuffer.length * 2, size + (int) n));
+        }
+        memory.read(0, wholeBuffer, size, (int) n);
+        size += (int) n;
+      }
+      return size;
+    }
+    finally {
+      Direct.close(fd);
+    }
+  }
+
+  /**
+   * Opens a file of the given process.
+   *
+   * @return the file descriptor, negative if the file could not be opened (e.g. the process has finished).
+   */
+  private int openFile(int pid, String name) {
+    int length = rootPath.length;
+    pathBuffer[length++] = '/';
+    length = appendInt(pid, length);
+    pathBuffer[length++] = '/';
+    for (int i = 0; i < name.length(); i++) {
+      pathBuffer[length++] = (byte) name.charAt(i);
+    }
+    return open(length);
+  }
+
+  /**
+   * Opens the path of the given length in the path buffer (prefixed by the root path).
+   */
+  private int open(int length) {
+    System.arraycopy(rootPath, 0, pathBuffer, 0, rootPath.length);
+    pathBuffer[length] = 0;
+    path.write(0, pathBuffer, 0, length + 1);
+    return Direct.open(Pointer.nativeValue(path), O_RDONLY | O_CLOEXEC);
+  }
+
+  private int appendInt(int value, int offset) {
+    int digits = 1;
+    for (int v = value; v >= 10; v /= 10) {
+      digits++;
+    }
+    for (int i = offset + digits - 1; i >= offset; i--) {
+      pathBuffer[i] = (byte) ('0' + value % 10);
+      value /= 10;
+    }
+    return offset + digits;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + root + ")";
+  }
+
+  /**
+   * Directly mapped C library functions (64-bit Linux only, pointers are passed as addresses).
+   */
+  private static final class Direct {
+
+    static final boolean AVAILABLE = register();
+
+    private static boolean register() {
+      if (!SystemUtils.IS_OS_LINUX || Native.LONG_SIZE != 8 || ByteOrder.nativeOrder() != ByteOrder.LITTLE_ENDIAN) {
+        return false;
+      }
+      try {
+        Native.register(Direct.class, "c");
+        return true;
+      }
+      catch (Throwable e) {
+        log.debug("Native file access is not available", e);
+        return false;
+      }
+    }
+
+    static native int open(long path, int flags);
+
+    static native long read(int fd, long buffer, long count);
+
+    static native int close(int fd);
+
+  }
+
+  /**
+   * Directly mapped <code>getdents64</code> (glibc 2.30 or later).
+   */
+  private static final class Dirents {
+
+    static final boolean AVAILABLE = Direct.AVAILABLE && register();
+
+    private static boolean register() {
+      try {
+        Native.register(Dirents.class, "c");
+        return true;
+      }
+      catch (Throwable e) {
+        log.debug("getdents64 is not available", e);
+        return false;
+      }
+    }
+
+    static native long getdents64(int fd, long buffer, long count);
+
+  }
+
+}
@@ -0,0 +1,241 @@
+package org.zeroturnaround.process;
+
+/**
+ * Information about a single process read by {@link ProcFs}.
+ * <p>
+ * Instances are reusable views: {@link ProcFs} overwrites the same instance for each process it reads, so nothing is allocated per process.
+ * The name and the command line are returned as {@link CharSequence} views of the same buffers,
+ * call {@link Object#toString()} on them to keep a copy.
+ * Use {@link #copy()} to keep the whole information, a copy only takes as much memory as its name and command line need.
+ * </p>
+ * <p>
+ * Fields that were not read (see {@link #STAT}, {@link #STATUS} and {@link #CMDLINE}) are <code>-1</code> or empty.
+ * </p>
+ */
+public class ProcessInfo {
+
+  /**
+   * Fields from the <code>stat</code> file: parent PID, process group ID, session ID, state, start time, RSS and name.
+   */
+  public static final int STAT = 1;
+
+  /**
+   * Fields from the <code>status</code> file: user ID.
+   */
+  public static final int STATUS = 2;
+
+  /**
+   * Command line from the <code>cmdline</code> file.
+   */
+  public static final int CMDLINE = 4;
+
+  /**
+   * All fields.
+   */
+  public static final int ALL = STAT | STATUS | CMDLINE;
+
+  /**
+   * Maximum number of bytes kept of the command line, the rest is cut off (see {@link #isCommandTruncated()}).
+   * {@link ProcessSelector} still matches the whole command line.
+   */
+  public static final int MAX_COMMAND_LENGTH = 4096;
+
+  private static final int MAX_NAME_LENGTH = 64;
+
+  int pid;
+
+  int parentPid;
+
+  int processGroupId;
+
+  int sessionId;
+
+  char state;
+
+  long startTime;
+
+  int uid;
+
+  long rss;
+
+  final Chars name;
+
+  final Chars command;
+
+  boolean commandTruncated;
+
+  /**
+   * Creates an empty instance for reading processes into.
+   */
+  public ProcessInfo() {
+    this(MAX_NAME_LENGTH, MAX_COMMAND_LENGTH);
+  }
+
+  private ProcessInfo(int nameCapacity, int commandCapacity) {
+    name = new Chars(nameCapacity);
+    command = new Chars(commandCapacity);
+  }
+
+  /**
+   * Clears all fields except the PID.
+   */
+  void reset(int pid) {
+    this.pid = pid;
+    parentPid = -1;
+    processGroupId = -1;
+    sessionId = -1;
+    state = '?';
+    startTime = -1;
+    uid = -1;
+    rss = -1;
+    name.length = 0;
+    command.length = 0;
+    commandTruncated = false;
+  }
+
+  public int getPid() {
+    return pid;
+  }
+
+  public int getParentPid() {
+    return parentPid;
+  }
+
+  public int getProcessGroupId() {
+    return processGroupId;
+  }
+
+  public int getSessionId() {
+    return sessionId;
+  }
+
+  /**
+   * @return the state, e.g. <code>R</code> (running), <code>S</code> (sleeping), <code>D</code> (uninterruptible sleep) or <code>Z</code> (zombie),
+   *    <code>?</code> if unknown.
+   */
+  public char getState() {
+    return state;
+  }
+
+  /**
+   * @return start time in clock ticks after the system boot.
+   *    Together with the PID it identifies a process even after the PID is reused.
+   */
+  public long getStartTime() {
+    return startTime;
+  }
+
+  /**
+   * @return the real user ID.
+   */
+  public int getUid() {
+    return uid;
+  }
+
+  /**
+   * @return the resident set size in bytes.
+   */
+  public long getRss() {
+    return rss;
+  }
+
+  /**
+   * @return the name of the executable (at most 15 characters on Linux), a view that changes when the next process is read.
+   */
+  public CharSequence getName() {
+    return name;
+  }
+
+  /**
+   * @return the arguments separated by spaces (empty for kernel threads and zombies),
+   *    a view that changes when the next process is read.
+   */
+  public CharSequence getCommand() {
+    return command;
+  }
+
+  /**
+   * @return <code>true</code> if the command line is longer than {@link #MAX_COMMAND_LENGTH} and {@link #getCommand()} returns only its beginning.
+   */
+  public boolean isCommandTruncated() {
+    return commandTruncated;
+  }
+
+  /**
+   * @return a new instance with the same information that does not change any more.
+   */
+  public ProcessInfo copy() {
+    ProcessInfo result = new ProcessInfo(name.length, command.length);
+    result.pid = pid;
+    result.parentPid = parentPid;
+    result.processGroupId = processGroupId;
+    result.sessionId = sessionId;
+    result.state = state;
+    result.startTime = startTime;
+    result.uid = uid;
+    result.rss = rss;
+    result.name.set(name.bytes, 0, name.length);
+    result.command.set(command.bytes, 0, command.length);
+    result.commandTruncated = commandTruncated;
+    return result;
+  }
+
+  @Override
+  public String toString() {
+    return pid + " " + state + " " + (command.length > 0 ? command : "[" + name + "]");
+  }
+
+  /**
+   * Characters of a reusable byte buffer (decoded as ISO-8859-1, so each byte is one character).
+   */
+  static final class Chars implements CharSequence {
+
+    final byte[] bytes;
+
+    int length;
+
+    Chars(int capacity) {
+      bytes = new byte[capacity];
+    }
+
+    /**
+     * Copies the given bytes, cutting them off at the capacity and replacing the NUL separators with spaces.
+     */
+    void set(byte[] src, int offset, int count) {
+      length = Math.min(count, bytes.length);
+      for (int i = 0; i < length; i++) {
+        byte b = src[offset + i];
+        bytes[i] = b == 0 ? (byte) ' ' : b;
+      }
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= length) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return (char) (bytes[index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+      char[] chars = new char[length];
+      for (int i = 0; i < length; i++) {
+        chars[i] = (char) (bytes[i] & 0xff);
+      }
+      return new String(chars);
+    }
+
+  }
+
+}
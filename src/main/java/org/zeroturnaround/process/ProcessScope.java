@@ -0,0 +1,157 @@
+package org.zeroturnaround.process;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys all registered processes that are still alive when it's closed, e.g. at the end of a <code>try</code>-with-resources block:
+ * <pre>
+ * try (ProcessScope scope = new ProcessScope()) {
+ *   SystemProcess server = scope.register(new ProcessBuilder("server").start());
+ *   ...
+ * }
+ * </pre>
+ * <p>
+ * All processes get the graceful destroy signal at once and share a single deadline.
+ * The ones still alive after the graceful share of it are destroyed forcefully
+ * (see {@link ProcessUtil#destroyEachGracefullyOrForcefullyAndWait(AndProcess, Deadline, double)}).
+ * Optionally the descendants of the processes are destroyed as well (see {@link UnixProcessTree}, Linux only).
+ * </p>
+ * <p>
+ * This class is thread-safe.
+ * </p>
+ */
+public class ProcessScope implements AutoCloseable {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessScope.class);
+
+  private final List<SystemProcess> processes = new ArrayList<SystemProcess>();
+
+  private boolean closed;
+
+  private volatile long timeout = 10000;
+
+  private volatile double gracefulRatio = 0.5;
+
+  private volatile boolean includeDescendants;
+
+  /**
+   * @param timeout the maximum time {@link #close()} may take.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setTimeout(long timeout, TimeUnit unit) {
+    this.timeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * @param gracefulRatio share of the timeout used for the graceful destroy operation (from <code>0</code> to <code>1</code>).
+   */
+  public void setGracefulRatio(double gracefulRatio) {
+    if (!(gracefulRatio >= 0 && gracefulRatio <= 1)) {
+      throw new IllegalArgumentException("Graceful ratio must be between 0 and 1: " + gracefulRatio);
+    }
+    this.gracefulRatio = gracefulRatio;
+  }
+
+  public boolean isIncludeDescendants() {
+    return includeDescendants;
+  }
+
+  /**
+   * @param includeDescendants <code>true</code> if the descendants of the processes with a known PID are destroyed as well (Linux only).
+   */
+  public void setIncludeDescendants(boolean includeDescendants) {
+    this.includeDescendants = includeDescendants;
+  }
+
+  /**
+   * Registers a process to be destroyed when this scope is closed.
+   *
+   * @param process the process.
+   * @return the same process.
+   * @throws IllegalStateException if this scope is already closed.
+   */
+  public synchronized <T extends SystemProcess> T register(T process) {
+    if (closed) {
+      throw new IllegalStateException("Scope is already closed");
+    }
+    processes.add(process);
+    return process;
+  }
+
+  /**
+   * Registers a process to be destroyed when this scope is closed.
+   *
+   * @param process instance of an existing process started from JVM.
+   * @return system process that represents the given input (see {@link Processes#newStandardProcess(Process)}).
+   * @throws IllegalStateException if this scope is already closed.
+   */
+  public SystemProcess register(Process process) {
+    return register(Processes.newStandardProcess(process));
+  }
+
+  /**
+   * @return the processes registered and not destroyed yet.
+   */
+  public synchronized List<SystemProcess> getProcesses() {
+    return new ArrayList<SystemProcess>(processes);
+  }
+
+  /**
+   * Destroys all registered processes that are still alive and waits until they finish or the timeout is reached.
+   * Closing the scope again has no effect.
+   * If the current thread is interrupted it stops waiting and keeps the interrupted status.
+   *
+   * @throws IllegalStateException if some processes did not finish before the timeout.
+   */
+  @Override
+  public void close() {
+    Deadline deadline = Deadline.after(timeout, TimeUnit.MILLISECONDS);
+    List<SystemProcess> targets;
+    synchronized (this) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      targets = new ArrayList<SystemProcess>(processes.size());
+      for (SystemProcess process : processes) {
+        targets.add(includeDescendants ? withDescendants(process) : process);
+      }
+      processes.clear();
+    }
+    if (targets.isEmpty()) {
+      return;
+    }
+    DestroyResult result;
+    try {
+      result = ProcessUtil.destroyEachGracefullyOrForcefullyAndWait(new AndProcess(targets), deadline, gracefulRatio);
+    }
+    catch (InterruptedException e) {
+      log.warn("Interrupted while destroying {}", targets);
+      Thread.currentThread().interrupt();
+      return;
+    }
+    if (!result.isAllFinished()) {
+      throw new IllegalStateException("Could not destroy " + result.getSurvived() + " in " + timeout + " ms");
+    }
+  }
+
+  private static SystemProcess withDescendants(SystemProcess process) {
+    int pid = PidUtil.findPid(process);
+    if (pid <= 0 || !LinuxProcFs.isSupported(LinuxProcFs.DEFAULT_ROOT)) {
+      log.debug("Descendants of {} are not destroyed", process);
+      return process;
+    }
+    return new UnixProcessTree(pid);
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + processes;
+  }
+
+}
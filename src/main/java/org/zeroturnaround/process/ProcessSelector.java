@@ -0,0 +1,298 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.zeroturnaround.process.unix.LibC;
+
+import com.sun.jna.Memory;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
+
+/**
+ * Selects Linux processes by regular expressions, e.g. all Java processes started with <code>-Drole=indexer</code>:
+ * <pre>
+ * ProcessSelector.all().withName("java").withCommand("-Drole=indexer( |$)")
+ * </pre>
+ * <p>
+ * All processes are read in a single scan of <code>/proc</code> (see {@link ProcFs}).
+ * The cheapest criteria are checked first, so more expensive fields are not read once a process is ruled out:
+ * the parent PID and the name from the <code>stat</code> file,
+ * then the user from the <code>status</code> file, then the executable path and the parent command line
+ * and finally the command line.
+ * A pattern matches if it's found anywhere in the value (use <code>^</code> and <code>$</code> for matching the whole value).
+ * Command lines longer than {@link ProcessInfo#MAX_COMMAND_LENGTH} are read again in full for matching,
+ * so e.g. a system property after a long class path is still found.
+ * The current JVM is never selected.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see Processes#newProcessForMatching(ProcessSelector)
+ */
+public class ProcessSelector {
+
+  private static final ProcessSelector ALL = new ProcessSelector(null, null, null, null, -1, null, LinuxProcFs.DEFAULT_ROOT);
+
+  private final Pattern name;
+
+  private final Pattern command;
+
+  private final Pattern executable;
+
+  private final Pattern user;
+
+  private final int parentPid;
+
+  private final Pattern parentCommand;
+
+  private final File procRoot;
+
+  private ProcessSelector(Pattern name, Pattern command, Pattern executable, Pattern user, int parentPid, Pattern parentCommand, File procRoot) {
+    this.name = name;
+    this.command = command;
+    this.executable = executable;
+    this.user = user;
+    this.parentPid = parentPid;
+    this.parentCommand = parentCommand;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * @return selector of all processes.
+   */
+  public static ProcessSelector all() {
+    return ALL;
+  }
+
+  /**
+   * @param regex pattern of the process name (the executable file name, at most 15 characters on Linux).
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withName(String regex) {
+    return new ProcessSelector(Pattern.compile(regex), command, executable, user, parentPid, parentCommand, procRoot);
+  }
+
+  /**
+   * @param pattern pattern of the command line (arguments separated by spaces).
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withCommand(Pattern pattern) {
+    return new ProcessSelector(name, pattern, executable, user, parentPid, parentCommand, procRoot);
+  }
+
+  /**
+   * @param regex pattern of the command line (arguments separated by spaces).
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withCommand(String regex) {
+    return withCommand(Pattern.compile(regex));
+  }
+
+  /**
+   * @param regex pattern of the absolute path of the executable (only readable for processes of the same user unless running as root).
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withExecutable(String regex) {
+    return new ProcessSelector(name, command, Pattern.compile(regex), user, parentPid, parentCommand, procRoot);
+  }
+
+  /**
+   * @param regex pattern of the name of the real user (or the numeric user ID if it has no name).
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withUser(String regex) {
+    return new ProcessSelector(name, command, executable, Pattern.compile(regex), parentPid, parentCommand, procRoot);
+  }
+
+  /**
+   * @param pid the parent process ID.
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withParentPid(int pid) {
+    return new ProcessSelector(name, command, executable, user, pid, parentCommand, procRoot);
+  }
+
+  /**
+   * @param regex pattern of the command line of the parent process.
+   * @return copy of this object with the given criterion.
+   */
+  public ProcessSelector withParentCommand(String regex) {
+    return new ProcessSelector(name, command, executable, user, parentPid, Pattern.compile(regex), procRoot);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   * @return copy of this object with the given proc file system root.
+   */
+  public ProcessSelector withProcRoot(File procRoot) {
+    return new ProcessSelector(name, command, executable, user, parentPid, parentCommand, procRoot);
+  }
+
+  /**
+   * Finds the matching processes.
+   *
+   * @return information about the matching processes in ascending order of the PIDs.
+   * @throws IOException on IO error.
+   */
+  public List<ProcessInfo> find() throws IOException {
+    final ProcFs procFs = new ProcFs(procRoot);
+    final int myPid = procRoot.equals(LinuxProcFs.DEFAULT_ROOT) ? PidUtil.getMyPid() : -1;
+    final List<ProcessInfo> result = new ArrayList<ProcessInfo>();
+    final Matcher[] matchers = new Matcher[4];
+    final Map<Integer, String> userNames = new HashMap<Integer, String>();
+    final Map<Integer, Boolean> parents = new HashMap<Integer, Boolean>();
+    // The visited process info is reused, so the parents are read separately
+    final ProcFs parentProcFs = parentCommand == null ? null : new ProcFs(procRoot);
+    procFs.forEach(ProcessInfo.STAT, new ProcFs.Visitor() {
+      @Override
+      public boolean visit(ProcessInfo info) throws IOException {
+        int pid = info.getPid();
+        if (pid == myPid || parentPid >= 0 && info.getParentPid() != parentPid) {
+          return true;
+        }
+        if (!find(matchers, 0, name, info.getName())) {
+          return true;
+        }
+        if (user != null) {
+          if (!procFs.readMore(pid, ProcessInfo.STATUS, info) || !find(matchers, 1, user, getUserName(userNames, info.getUid()))) {
+            return true;
+          }
+        }
+        if (executable != null) {
+          String path = readExecutable(pid);
+          if (path == null || !find(matchers, 2, executable, path)) {
+            return true;
+          }
+        }
+        if (parentCommand != null && !isParentMatching(parentProcFs, parents, info.getParentPid())) {
+          return true;
+        }
+        // The command line is read last and only for the processes not ruled out yet
+        if (!procFs.readMore(pid, ProcessInfo.CMDLINE, info) || !find(matchers, 3, command, getCommand(procFs, info))) {
+          return true;
+        }
+        result.add(info.copy());
+        return true;
+      }
+    });
+    return result;
+  }
+
+  private static boolean find(Matcher[] matchers, int index, Pattern pattern, CharSequence value) {
+    if (pattern == null) {
+      return true;
+    }
+    if (matchers[index] == null) {
+      matchers[index] = pattern.matcher(value);
+    }
+    else {
+      matchers[index].reset(value);
+    }
+    return matchers[index].find();
+  }
+
+  /**
+   * @return the whole command line of the given process (empty if it has finished meanwhile).
+   */
+  private static CharSequence getCommand(ProcFs procFs, ProcessInfo info) throws IOException {
+    if (!info.isCommandTruncated()) {
+      return info.getCommand();
+    }
+    CharSequence result = procFs.readWholeCommand(info.getPid());
+    return result == null ? "" : result;
+  }
+
+  private boolean isParentMatching(ProcFs procFs, Map<Integer, Boolean> cache, int pid) throws IOException {
+    Boolean result = cache.get(pid);
+    if (result == null) {
+      ProcessInfo info = new ProcessInfo();
+      result = procFs.read(pid, ProcessInfo.CMDLINE, info) && parentCommand.matcher(getCommand(procFs, info)).find();
+      cache.put(pid, result);
+    }
+    return result;
+  }
+
+  private String readExecutable(int pid) {
+    try {
+      return Files.readSymbolicLink(new File(procRoot, pid + "/exe").toPath()).toString();
+    }
+    catch (Exception e) {
+      // Finished, a kernel thread or no permission
+      return null;
+    }
+  }
+
+  private static String getUserName(Map<Integer, String> cache, int uid) {
+    String result = cache.get(uid);
+    if (result == null) {
+      String name = null;
+      try {
+        name = findUserName(uid);
+      }
+      catch (Throwable e) {
+        // Use the numeric ID
+      }
+      result = name == null ? String.valueOf(uid) : name;
+      cache.put(uid, result);
+    }
+    return result;
+  }
+
+  /**
+   * Finds the user name with the reentrant <code>getpwuid_r</code>, as selectors may be used by multiple threads at once.
+   *
+   * @return the user name, <code>null</code> if the user was not found.
+   */
+  private static String findUserName(int uid) {
+    // Larger than struct passwd on all platforms
+    Memory passwd = new Memory(256);
+    PointerByReference found = new PointerByReference();
+    for (int size = 1024; size <= 1 << 20; size *= 2) {
+      Memory buffer = new Memory(size);
+      int error = LibC.INSTANCE.getpwuid_r(uid, passwd, buffer, new NativeLong(size), found);
+      if (error == LibC.ERANGE) {
+        continue;
+      }
+      if (error != 0 || found.getValue() == null) {
+        return null;
+      }
+      // pw_name is the first field of struct passwd
+      return passwd.getPointer(0).getString(0);
+    }
+    return null;
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder("ProcessSelector(");
+    append(sb, "name", name);
+    append(sb, "user", user);
+    append(sb, "executable", executable);
+    append(sb, "parentCommand", parentCommand);
+    append(sb, "command", command);
+    if (parentPid >= 0) {
+      sb.append("parentPid=").append(parentPid).append(", ");
+    }
+    if (sb.charAt(sb.length() - 1) == ' ') {
+      sb.setLength(sb.length() - 2);
+    }
+    return sb.append(')').toString();
+  }
+
+  private static void append(StringBuilder sb, String field, Pattern pattern) {
+    if (pattern != null) {
+      sb.append(field).append("=/").append(pattern).append("/, ");
+    }
+  }
+
+}
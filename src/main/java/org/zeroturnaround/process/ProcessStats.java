@@ -0,0 +1,364 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps recent resource usage samples of Linux processes: CPU time, resident set size,
+ * voluntary and involuntary context switches and the number of threads.
+ * <p>
+ * Each process has a ring buffer of the last samples stored in primitive arrays,
+ * so sampling does not create objects per sample (apart from the streams for reading the files).
+ * Rates such as the CPU usage are calculated between the samples within the requested window.
+ * Samples are read from <code>/proc/&lt;pid&gt;/stat</code> and <code>status</code>,
+ * the proc file system root can be replaced e.g. in tests.
+ * </p>
+ * <p>
+ * Samples are taken by {@link #sample()} or periodically by a background thread (see {@link #start(long, TimeUnit)}).
+ * Finished processes are removed automatically.
+ * </p>
+ */
+public class ProcessStats {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessStats.class);
+
+  private final int capacity;
+
+  private final File procRoot;
+
+  private final Map<PidProcess, Series> series = new ConcurrentHashMap<PidProcess, Series>();
+
+  private final byte[] buffer = new byte[4096];
+
+  private ScheduledExecutorService executor;
+
+  /**
+   * @param capacity number of samples kept per process.
+   */
+  public ProcessStats(int capacity) {
+    this(capacity, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param capacity number of samples kept per process (at least <code>2</code>).
+   * @param procRoot the proc file system root.
+   */
+  public ProcessStats(int capacity, File procRoot) {
+    if (capacity < 2) {
+      throw new IllegalArgumentException("Capacity must be at least 2: " + capacity);
+    }
+    this.capacity = capacity;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * Starts sampling a process.
+   *
+   * @param process the process.
+   * @return the same process.
+   */
+  public <T extends PidProcess> T add(T process) {
+    if (!series.containsKey(process)) {
+      series.put(process, new Series(process.getPid()));
+    }
+    return process;
+  }
+
+  /**
+   * @param process the process that should not be sampled any more.
+   */
+  public void remove(PidProcess process) {
+    series.remove(process);
+  }
+
+  /**
+   * @return the processes currently sampled.
+   */
+  public List<PidProcess> getProcesses() {
+    return new ArrayList<PidProcess>(series.keySet());
+  }
+
+  /**
+   * Starts sampling all processes in a background thread.
+   *
+   * @param interval time between the samples.
+   * @param unit the time unit of the interval argument.
+   */
+  public synchronized void start(long interval, TimeUnit unit) {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "process-stats");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleAtFixedRate(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          sample();
+        }
+        catch (Exception e) {
+          log.error("Failed to sample the processes", e);
+        }
+      }
+    }, 0, interval, unit);
+  }
+
+  /**
+   * Stops the background thread started by {@link #start(long, TimeUnit)}.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Takes a sample of each process. Finished processes are removed.
+   *
+   * @throws IOException on IO error.
+   */
+  public void sample() throws IOException {
+    synchronized (buffer) {
+      for (Map.Entry<PidProcess, Series> entry : series.entrySet()) {
+        if (!entry.getValue().sample()) {
+          log.debug("Removing finished {}", entry.getKey());
+          series.remove(entry.getKey());
+        }
+      }
+    }
+  }
+
+  /**
+   * @return current time in nanoseconds (can be overridden in tests).
+   */
+  protected long nanoTime() {
+    return System.nanoTime();
+  }
+
+  /**
+   * @param process the process.
+   * @return number of samples of the process available, <code>0</code> if it's not sampled.
+   */
+  public int getSampleCount(PidProcess process) {
+    Series s = series.get(process);
+    if (s == null) {
+      return 0;
+    }
+    synchronized (s) {
+      return s.count;
+    }
+  }
+
+  /**
+   * @param process the process.
+   * @param window how far back to look.
+   * @param unit the time unit of the window argument.
+   * @return CPU usage in percent of one core over the window (above <code>100</code> for multiple cores),
+   *    <code>NaN</code> if there are fewer than two samples.
+   */
+  public double getCpuPercent(PidProcess process, long window, TimeUnit unit) {
+    return getRate(process, window, unit, CPU) * 100 / LinuxProcFs.getClockTicks();
+  }
+
+  /**
+   * @param process the process.
+   * @param window how far back to look.
+   * @param unit the time unit of the window argument.
+   * @return voluntary context switches per second over the window, <code>NaN</code> if there are fewer than two samples.
+   */
+  public double getVoluntaryContextSwitchRate(PidProcess process, long window, TimeUnit unit) {
+    return getRate(process, window, unit, VOLUNTARY);
+  }
+
+  /**
+   * @param process the process.
+   * @param window how far back to look.
+   * @param unit the time unit of the window argument.
+   * @return involuntary context switches per second over the window, <code>NaN</code> if there are fewer than two samples.
+   */
+  public double getInvoluntaryContextSwitchRate(PidProcess process, long window, TimeUnit unit) {
+    return getRate(process, window, unit, INVOLUNTARY);
+  }
+
+  /**
+   * @param process the process.
+   * @return resident set size in bytes of the latest sample, <code>-1</code> if there's none.
+   */
+  public long getRss(PidProcess process) {
+    long pages = getLatest(process, RSS);
+    return pages < 0 ? -1 : pages * LinuxProcFs.getPageSize();
+  }
+
+  /**
+   * @param process the process.
+   * @return total number of voluntary context switches of the latest sample, <code>-1</code> if there's none.
+   */
+  public long getVoluntaryContextSwitches(PidProcess process) {
+    return getLatest(process, VOLUNTARY);
+  }
+
+  /**
+   * @param process the process.
+   * @return total number of involuntary context switches of the latest sample, <code>-1</code> if there's none.
+   */
+  public long getInvoluntaryContextSwitches(PidProcess process) {
+    return getLatest(process, INVOLUNTARY);
+  }
+
+  /**
+   * @param process the process.
+   * @return number of threads of the latest sample, <code>-1</code> if there's none.
+   */
+  public int getThreadCount(PidProcess process) {
+    return (int) getLatest(process, THREADS);
+  }
+
+  private long getLatest(PidProcess process, int field) {
+    Series s = series.get(process);
+    if (s == null) {
+      return -1;
+    }
+    synchronized (s) {
+      return s.count == 0 ? -1 : s.values[field][s.index(0)];
+    }
+  }
+
+  private double getRate(PidProcess process, long window, TimeUnit unit, int field) {
+    Series s = series.get(process);
+    if (s == null) {
+      return Double.NaN;
+    }
+    long windowNanos = unit.toNanos(window);
+    synchronized (s) {
+      if (s.count < 2) {
+        return Double.NaN;
+      }
+      int latest = s.index(0);
+      long time = s.values[TIME][latest];
+      // The oldest sample within the window, but at least the previous one
+      int oldest = s.index(1);
+      for (int age = 2; age < s.count; age++) {
+        int i = s.index(age);
+        if (time - s.values[TIME][i] > windowNanos) {
+          break;
+        }
+        oldest = i;
+      }
+      long elapsed = time - s.values[TIME][oldest];
+      if (elapsed <= 0) {
+        return Double.NaN;
+      }
+      return (s.values[field][latest] - s.values[field][oldest]) * 1e9 / elapsed;
+    }
+  }
+
+  /*
+   * Fields of a sample
+   */
+  private static final int TIME = 0;
+  private static final int CPU = 1;
+  private static final int RSS = 2;
+  private static final int VOLUNTARY = 3;
+  private static final int INVOLUNTARY = 4;
+  private static final int THREADS = 5;
+  private static final int FIELDS = 6;
+
+  /**
+   * Ring buffer of the samples of a single process.
+   */
+  private class Series {
+
+    private final int pid;
+
+    private final File statFile;
+
+    private final File statusFile;
+
+    /**
+     * Values by field and sample index.
+     */
+    private final long[][] values = new long[FIELDS][capacity];
+
+    /**
+     * Index of the next sample.
+     */
+    private int next;
+
+    private int count;
+
+    Series(int pid) {
+      this.pid = pid;
+      this.statFile = new File(procRoot, pid + "/stat");
+      this.statusFile = new File(procRoot, pid + "/status");
+    }
+
+    /**
+     * @return index of the sample taken the given number of samples before the latest one.
+     */
+    int index(int age) {
+      return (next - 1 - age + 2 * capacity) % capacity;
+    }
+
+    /**
+     * @return <code>false</code> if the process has finished.
+     */
+    boolean sample() throws IOException {
+      int size = LinuxProcFs.read(statFile, buffer);
+      if (size < 0) {
+        return false;
+      }
+      int utime = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_UTIME);
+      int stime = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STIME);
+      int threads = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_NUM_THREADS);
+      int rss = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_RSS);
+      if (utime < 0 || stime < 0 || threads < 0 || rss < 0) {
+        throw new IOException("Invalid stat file of process " + pid);
+      }
+      long time = nanoTime();
+      long cpuValue = LinuxProcFs.parseLong(buffer, size, utime) + LinuxProcFs.parseLong(buffer, size, stime);
+      long threadsValue = LinuxProcFs.parseLong(buffer, size, threads);
+      long rssValue = LinuxProcFs.parseLong(buffer, size, rss);
+
+      size = LinuxProcFs.read(statusFile, buffer);
+      if (size < 0) {
+        return false;
+      }
+      int voluntary = LinuxProcFs.statusField(buffer, size, "voluntary_ctxt_switches:");
+      int involuntary = LinuxProcFs.statusField(buffer, size, "nonvoluntary_ctxt_switches:");
+
+      synchronized (this) {
+        values[TIME][next] = time;
+        values[CPU][next] = cpuValue;
+        values[RSS][next] = rssValue;
+        values[THREADS][next] = threadsValue;
+        values[VOLUNTARY][next] = voluntary < 0 ? 0 : LinuxProcFs.parseLong(buffer, size, voluntary);
+        values[INVOLUNTARY][next] = involuntary < 0 ? 0 : LinuxProcFs.parseLong(buffer, size, involuntary);
+        next = (next + 1) % capacity;
+        if (count < capacity) {
+          count++;
+        }
+      }
+      return true;
+    }
+
+  }
+
+}
@@ -0,0 +1,446 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Keeps a snapshot of all Linux processes and reports what has changed since the previous scan.
+ * <p>
+ * Each scan reads all processes in parallel using fork/join over ranges of PIDs (see {@link ProcFs}).
+ * A process is matched with the previous snapshot by its PID and start time,
+ * so a reused PID is reported as one process exiting and another one starting.
+ * Processes that have not changed keep their previous {@link ProcessInfo}, so a scan only copies what's new.
+ * A process has changed if its parent, process group, session, user or command has changed or it has become a zombie.
+ * Other state changes (e.g. from running to sleeping) and the RSS are not compared, as they change all the time,
+ * so they're only up to date for processes that have just started or changed.
+ * </p>
+ * <p>
+ * Consumers subscribe to the differences ({@link #subscribe(Listener)}) instead of scanning the processes themselves.
+ * Scans are made by {@link #scan()} or periodically by a background thread (see {@link #start(long, TimeUnit)}).
+ * The first scan reports all processes as started.
+ * </p>
+ */
+public class ProcessTable {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessTable.class);
+
+  /**
+   * Number of PIDs read by a single fork/join task.
+   */
+  private static final int BATCH_SIZE = 256;
+
+  private final File procRoot;
+
+  private final ThreadLocal<ProcFs> procFs;
+
+  private final List<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+  private volatile ForkJoinPool pool = ForkJoinPool.commonPool();
+
+  private volatile int fields = ProcessInfo.ALL;
+
+  private volatile Snapshot snapshot = new Snapshot(new int[0], new ProcessInfo[0]);
+
+  private ScheduledExecutorService executor;
+
+  public ProcessTable() {
+    this(LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   */
+  public ProcessTable(final File procRoot) {
+    this.procRoot = procRoot;
+    this.procFs = new ThreadLocal<ProcFs>() {
+      @Override
+      protected ProcFs initialValue() {
+        return new ProcFs(procRoot);
+      }
+    };
+  }
+
+  /**
+   * @param pool the pool for reading the processes in parallel ({@link ForkJoinPool#commonPool()} by default).
+   */
+  public void setPool(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  /**
+   * @param fields which fields to read, a combination of {@link ProcessInfo#STAT}, {@link ProcessInfo#STATUS} and {@link ProcessInfo#CMDLINE}
+   *    ({@link ProcessInfo#ALL} by default). {@link ProcessInfo#STAT} is always read for the start times.
+   */
+  public void setFields(int fields) {
+    this.fields = fields | ProcessInfo.STAT;
+  }
+
+  /**
+   * @param listener listener notified after each scan.
+   */
+  public void subscribe(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * @param listener listener that should not be notified any more.
+   */
+  public void unsubscribe(Listener listener) {
+    listeners.remove(listener);
+  }
+
+  /**
+   * @return the processes of the latest scan by PID in ascending order.
+   */
+  public List<ProcessInfo> getProcesses() {
+    return Collections.unmodifiableList(Arrays.asList(snapshot.infos));
+  }
+
+  /**
+   * @param pid the process ID.
+   * @return the process with the given ID from the latest scan, <code>null</code> if there's none.
+   */
+  public ProcessInfo getProcess(int pid) {
+    return snapshot.get(pid);
+  }
+
+  /**
+   * @param pid the process ID.
+   * @return IDs of the descendants of the given process in the latest scan (children before grandchildren).
+   */
+  public int[] getDescendants(int pid) {
+    Snapshot s = snapshot;
+    // (parent PID, PID) pairs sorted by the parent PID
+    long[] pairs = new long[s.pids.length];
+    for (int i = 0; i < pairs.length; i++) {
+      pairs[i] = ((long) s.infos[i].parentPid << 32) | s.pids[i];
+    }
+    Arrays.sort(pairs);
+    int[] result = new int[16];
+    int count = 0;
+    int next = -1;
+    int parent = pid;
+    while (true) {
+      int i = Arrays.binarySearch(pairs, (long) parent << 32);
+      if (i < 0) {
+        i = -i - 1;
+      }
+      for (; i < pairs.length && (int) (pairs[i] >>> 32) == parent; i++) {
+        if (count == result.length) {
+          result = Arrays.copyOf(result, count * 2);
+        }
+        result[count++] = (int) pairs[i];
+      }
+      if (++next >= count) {
+        break;
+      }
+      parent = result[next];
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * Starts scanning the processes in a background thread.
+   *
+   * @param interval time between the scans.
+   * @param unit the time unit of the interval argument.
+   */
+  public synchronized void start(long interval, TimeUnit unit) {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "process-table");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          scan();
+        }
+        catch (Exception e) {
+          log.error("Failed to scan the processes", e);
+        }
+      }
+    }, 0, interval, unit);
+  }
+
+  /**
+   * Stops the background thread started by {@link #start(long, TimeUnit)}.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Scans all processes, replaces the snapshot and notifies the listeners.
+   *
+   * @return the differences from the previous scan.
+   * @throws IOException on IO error.
+   */
+  public Diff scan() throws IOException {
+    Diff result;
+    synchronized (this) {
+      Snapshot previous = snapshot;
+      int[] pids = procFs.get().getPids();
+      ProcessInfo[] infos = new ProcessInfo[pids.length];
+      byte[] kinds = new byte[pids.length];
+      Stopwatch sw = Stopwatch.createStarted();
+      ScanTask task = new ScanTask(previous, pids, infos, kinds, 0, pids.length, fields);
+      pool.invoke(task);
+      if (task.error != null) {
+        throw task.error;
+      }
+
+      List<ProcessInfo> started = new ArrayList<ProcessInfo>();
+      List<ProcessInfo> changed = new ArrayList<ProcessInfo>();
+      int count = 0;
+      for (int i = 0; i < pids.length; i++) {
+        if (infos[i] == null) {
+          // Finished during the scan
+          continue;
+        }
+        if (kinds[i] == STARTED) {
+          started.add(infos[i]);
+        }
+        else if (kinds[i] == CHANGED) {
+          changed.add(infos[i]);
+        }
+        pids[count] = pids[i];
+        infos[count] = infos[i];
+        count++;
+      }
+      Snapshot current = new Snapshot(Arrays.copyOf(pids, count), Arrays.copyOf(infos, count));
+      List<ProcessInfo> exited = new ArrayList<ProcessInfo>();
+      for (ProcessInfo info : previous.infos) {
+        ProcessInfo now = current.get(info.pid);
+        if (now == null || now.startTime != info.startTime) {
+          exited.add(info);
+        }
+      }
+      snapshot = current;
+      result = new Diff(started, exited, changed);
+      log.trace("Scanned {} processes in {} ms: {}", count, sw.stop().elapsed(TimeUnit.MILLISECONDS), result);
+    }
+    for (Listener listener : listeners) {
+      try {
+        listener.processesChanged(result);
+      }
+      catch (RuntimeException e) {
+        log.error("Listener {} failed", listener, e);
+      }
+    }
+    return result;
+  }
+
+  /*
+   * Kinds of the processes read by a scan
+   */
+  private static final byte UNCHANGED = 0;
+  private static final byte STARTED = 1;
+  private static final byte CHANGED = 2;
+
+  /**
+   * Reads a range of PIDs, splitting it in halves until it's small enough.
+   */
+  private class ScanTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private final Snapshot previous;
+
+    private final int[] pids;
+
+    private final ProcessInfo[] infos;
+
+    private final byte[] kinds;
+
+    private final int from;
+
+    private final int to;
+
+    private final int fields;
+
+    private IOException error;
+
+    ScanTask(Snapshot previous, int[] pids, ProcessInfo[] infos, byte[] kinds, int from, int to, int fields) {
+      this.previous = previous;
+      this.pids = pids;
+      this.infos = infos;
+      this.kinds = kinds;
+      this.from = from;
+      this.to = to;
+      this.fields = fields;
+    }
+
+    @Override
+    protected void compute() {
+      if (to - from > BATCH_SIZE) {
+        int middle = (from + to) >>> 1;
+        ScanTask left = new ScanTask(previous, pids, infos, kinds, from, middle, fields);
+        ScanTask right = new ScanTask(previous, pids, infos, kinds, middle, to, fields);
+        invokeAll(left, right);
+        error = left.error != null ? left.error : right.error;
+        return;
+      }
+      ProcFs reader = procFs.get();
+      ProcessInfo info = new ProcessInfo();
+      try {
+        for (int i = from; i < to; i++) {
+          if (!reader.read(pids[i], fields, info)) {
+            continue;
+          }
+          ProcessInfo old = previous.get(pids[i]);
+          if (old == null || old.startTime != info.startTime) {
+            infos[i] = info.copy();
+            kinds[i] = STARTED;
+          }
+          else if (isChanged(old, info)) {
+            infos[i] = info.copy();
+            kinds[i] = CHANGED;
+          }
+          else {
+            infos[i] = old;
+            kinds[i] = UNCHANGED;
+          }
+        }
+      }
+      catch (IOException e) {
+        error = e;
+      }
+    }
+
+  }
+
+  private static boolean isChanged(ProcessInfo old, ProcessInfo info) {
+    return old.state != 'Z' && info.state == 'Z' || old.parentPid != info.parentPid || old.processGroupId != info.processGroupId
+        || old.sessionId != info.sessionId || old.uid != info.uid || !contentEquals(old.command, info.command);
+  }
+
+  private static boolean contentEquals(ProcessInfo.Chars a, ProcessInfo.Chars b) {
+    if (a.length != b.length) {
+      return false;
+    }
+    for (int i = 0; i < a.length; i++) {
+      if (a.bytes[i] != b.bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + procRoot + ", " + snapshot.pids.length + " processes)";
+  }
+
+  /**
+   * Processes by PID in ascending order.
+   */
+  private static class Snapshot {
+
+    private final int[] pids;
+
+    private final ProcessInfo[] infos;
+
+    Snapshot(int[] pids, ProcessInfo[] infos) {
+      this.pids = pids;
+      this.infos = infos;
+    }
+
+    ProcessInfo get(int pid) {
+      int i = Arrays.binarySearch(pids, pid);
+      return i < 0 ? null : infos[i];
+    }
+
+  }
+
+  /**
+   * Listener of the differences between the scans.
+   */
+  public interface Listener {
+
+    /**
+     * Called after each scan (also if nothing has changed) in the thread that made the scan.
+     *
+     * @param diff the differences from the previous scan.
+     */
+    void processesChanged(Diff diff);
+
+  }
+
+  /**
+   * Differences between two scans of a {@link ProcessTable}.
+   */
+  public static class Diff {
+
+    private final List<ProcessInfo> started;
+
+    private final List<ProcessInfo> exited;
+
+    private final List<ProcessInfo> changed;
+
+    Diff(List<ProcessInfo> started, List<ProcessInfo> exited, List<ProcessInfo> changed) {
+      this.started = Collections.unmodifiableList(started);
+      this.exited = Collections.unmodifiableList(exited);
+      this.changed = Collections.unmodifiableList(changed);
+    }
+
+    /**
+     * @return processes that were not in the previous scan (including the ones with a reused PID).
+     */
+    public List<ProcessInfo> getStarted() {
+      return started;
+    }
+
+    /**
+     * @return processes of the previous scan that are gone (including the ones whose PID was reused).
+     */
+    public List<ProcessInfo> getExited() {
+      return exited;
+    }
+
+    /**
+     * @return processes whose parent, process group, session, user or command has changed or that have become zombies (their new information).
+     */
+    public List<ProcessInfo> getChanged() {
+      return changed;
+    }
+
+    /**
+     * @return <code>true</code> if nothing has changed.
+     */
+    public boolean isEmpty() {
+      return started.isEmpty() && exited.isEmpty() && changed.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+      return "started " + started.size() + ", exited " + exited.size() + ", changed " + changed.size();
+    }
+
+  }
+
+}
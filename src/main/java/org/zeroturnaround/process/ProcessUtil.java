@@ -1,6 +1,8 @@
 package org.zeroturnaround.process;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 
@@ -53,6 +55,19 @@ public class ProcessUtil {
     waitFor(process, Stopwatch.createStarted(), timeout, unit, "{} finished", "%s did not finish");
   }
 
+  /**
+   * Waits until the given process finishes, a deadline is reached or the current thread is interrupted.
+   *
+   * @param process the target process.
+   * @param deadline the time by which the process must finish.
+   *
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if the deadline was reached before the process finished.
+   */
+  public static void waitFor(SystemProcess process, Deadline deadline) throws InterruptedException, TimeoutException {
+    waitFor(process, deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+  }
+
   /**
    * Destroys the given process gracefully and waits until it finishes or the current thread is interrupted.
    *
@@ -84,6 +99,52 @@ public class ProcessUtil {
     waitFor(process, sw, timeout, unit, "Destroyed {} gracefully", "Could not destroy %s gracefully");
   }
 
+  /**
+   * Destroys the given process gracefully and waits until it finishes, a deadline is reached or the current thread is interrupted.
+   * Unlike with a timeout the time spent on sending the destroy signal is included.
+   *
+   * @param process the target process.
+   * @param deadline the time by which the process must finish.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if the deadline was reached before the process finished.
+   */
+  public static void destroyGracefullyAndWait(SystemProcess process, Deadline deadline) throws IOException, InterruptedException, TimeoutException {
+    Stopwatch sw = Stopwatch.createStarted();
+    process.destroyGracefully();
+    waitFor(process, sw, deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS, "Destroyed {} gracefully", "Could not destroy %s gracefully");
+  }
+
+  /**
+   * Lowers the CPU and I/O priorities of the given process, destroys it gracefully and waits until it finishes, a timeout occurs or the current thread is interrupted.
+   * If the timeout is reached the original priorities are restored if the given <code>priority</code> says so.
+   *
+   * @param process the target process.
+   * @param timeout the maximum time to wait until the process finishes.
+   * @param unit the time unit of the timeout argument.
+   * @param priority the priorities applied before the graceful destroy operation.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished.
+   */
+  public static void destroyGracefullyAndWait(SystemProcess process, long timeout, TimeUnit unit, ShutdownPriority priority) throws IOException, InterruptedException, TimeoutException {
+    Stopwatch sw = Stopwatch.createStarted();
+    ShutdownPriority.Saved saved = priority.apply(process);
+    process.destroyGracefully();
+    try {
+      waitFor(process, sw, timeout, unit, "Destroyed {} gracefully", "Could not destroy %s gracefully");
+    }
+    catch (TimeoutException e) {
+      if (priority.isRestoreIfSurvived()) {
+        log.debug("Restoring priorities of {}", process);
+        saved.restore();
+      }
+      throw e;
+    }
+  }
+
   /**
    * Destroys the given process forcefully and waits until it finishes or the current thread is interrupted.
    *
@@ -115,6 +176,127 @@ public class ProcessUtil {
     waitFor(process, sw, timeout, unit, "Destroyed {} forcefully", "Could not destroy %s forcefully");
   }
 
+  /**
+   * Destroys the given process forcefully and waits until it finishes, a deadline is reached or the current thread is interrupted.
+   * Unlike with a timeout the time spent on sending the destroy signal is included.
+   *
+   * @param process the target process.
+   * @param deadline the time by which the process must finish.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if the deadline was reached before the process finished.
+   */
+  public static void destroyForcefullyAndWait(SystemProcess process, Deadline deadline) throws IOException, InterruptedException, TimeoutException {
+    Stopwatch sw = Stopwatch.createStarted();
+    process.destroyForcefully();
+    waitFor(process, sw, deadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS, "Destroyed {} forcefully", "Could not destroy %s forcefully");
+  }
+
+  /**
+   * Destroys the given process forcefully and waits until it finishes or the current thread is interrupted.
+   * Optionally the memory of the killed process is reclaimed right away (see {@link UnixProcess#killAndReleaseMemory()}).
+   * It applies to {@link UnixProcess} instances, also as alternatives of the given process or as its parts.
+   * Other processes are destroyed forcefully as usual.
+   *
+   * @param process the target process.
+   * @param releaseMemory <code>true</code> if the memory of the process should be released after killing it.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public static void destroyForcefullyAndWait(SystemProcess process, boolean releaseMemory) throws IOException, InterruptedException {
+    Stopwatch sw = Stopwatch.createStarted();
+    destroyForcefully(process, releaseMemory);
+    waitFor(process, sw, "Destroyed {} forcefully");
+  }
+
+  /**
+   * Destroys the given process forcefully and waits until it finishes, a timeout occurs or the current thread is interrupted.
+   * Optionally the memory of the killed process is reclaimed right away (see {@link UnixProcess#killAndReleaseMemory()}).
+   * It applies to {@link UnixProcess} instances, also as alternatives of the given process or as its parts.
+   * Other processes are destroyed forcefully as usual.
+   *
+   * @param process the target process.
+   * @param timeout the maximum time to wait until the process finishes.
+   * @param unit the time unit of the timeout argument.
+   * @param releaseMemory <code>true</code> if the memory of the process should be released after killing it.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished.
+   */
+  public static void destroyForcefullyAndWait(SystemProcess process, long timeout, TimeUnit unit, boolean releaseMemory) throws IOException, InterruptedException, TimeoutException {
+    Stopwatch sw = Stopwatch.createStarted();
+    destroyForcefully(process, releaseMemory);
+    waitFor(process, sw, timeout, unit, "Destroyed {} forcefully", "Could not destroy %s forcefully");
+  }
+
+  private static void destroyForcefully(SystemProcess process, boolean releaseMemory) throws IOException, InterruptedException {
+    if (!releaseMemory) {
+      process.destroyForcefully();
+      return;
+    }
+    long duration = destroyForcefullyAndReleaseMemory(process);
+    if (duration >= 0) {
+      log.info("Released memory of {} in {} ms.", process, TimeUnit.NANOSECONDS.toMillis(duration));
+    }
+  }
+
+  /**
+   * Kills all processes first and only then releases their memory one by one,
+   * so killing a process does not wait for releasing the memory of the previous ones.
+   *
+   * @return total time it took to release the memory in nanoseconds, <code>-1</code> if no memory was released.
+   */
+  private static long destroyForcefullyAndReleaseMemory(SystemProcess process) throws IOException, InterruptedException {
+    List<UnixProcess> killed = new ArrayList<UnixProcess>();
+    List<Integer> pidfds = new ArrayList<Integer>();
+    long result = -1;
+    try {
+      killForMemoryRelease(process, killed, pidfds);
+    }
+    finally {
+      for (int i = 0; i < killed.size(); i++) {
+        long duration = killed.get(i).releaseMemory(pidfds.get(i));
+        if (duration >= 0) {
+          result = Math.max(result, 0) + duration;
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Kills the given process and adds the ones whose memory can be released to the given lists.
+   */
+  private static void killForMemoryRelease(SystemProcess process, List<UnixProcess> killed, List<Integer> pidfds) throws IOException, InterruptedException {
+    if (process instanceof UnixProcess) {
+      UnixProcess unix = (UnixProcess) process;
+      int pidfd = unix.killForMemoryRelease();
+      if (pidfd >= 0) {
+        killed.add(unix);
+        pidfds.add(pidfd);
+      }
+      return;
+    }
+    if (process instanceof OrProcess) {
+      for (SystemProcess child : ((OrProcess) process).children) {
+        if (child instanceof UnixProcess) {
+          killForMemoryRelease(child, killed, pidfds);
+          return;
+        }
+      }
+    }
+    else if (process instanceof AndProcess) {
+      for (SystemProcess child : ((AndProcess) process).children) {
+        killForMemoryRelease(child, killed, pidfds);
+      }
+      return;
+    }
+    process.destroyForcefully();
+  }
+
   /**
    * Destroys the given process gracefully and waits until it finishes or the current thread is interrupted.
    * If the graceful destroy operation throws an exception (e.g. it's unsupported)
@@ -162,6 +344,10 @@ public class ProcessUtil {
    * Destroys the given process gracefully and waits until it finishes, first timeout occurs or the current thread is interrupted.
    * If the graceful destroy operation throws an exception (e.g. it's unsupported) or a timeout is reached
    * it destroys the process forcefully and waits until it finishes, second timeout occurs or the current thread is interrupted.
+   * <p>
+   * An {@link AndProcess} is handled child by child
+   * (see {@link #destroyEachGracefullyOrForcefullyAndWait(AndProcess, long, TimeUnit, long, TimeUnit)}).
+   * </p>
    *
    * @param process the target process.
    * @param gracefulTimeout the maximum time to wait until the process finishes after the graceful destroy operation.
@@ -174,15 +360,400 @@ public class ProcessUtil {
    * @throws TimeoutException if timeout was reached before the process finished (after the forceful destroy operation).
    */
   public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, long forcefulTimeout, TimeUnit forcefulTimeoutUnit) throws IOException, InterruptedException, TimeoutException {
+    if (process instanceof AndProcess) {
+      DestroyResult result = destroyEachGracefullyOrForcefullyAndWait((AndProcess) process, gracefulTimeout, gracefulTimeoutUnit, forcefulTimeout, forcefulTimeoutUnit);
+      if (!result.isAllFinished()) {
+        throw new TimeoutException(String.format("%s did not finish in %d %s",
+            result.getSurvived(), forcefulTimeout, forcefulTimeoutUnit.toString().toLowerCase()));
+      }
+      return;
+    }
     if (tryDestroyGracefully(process, gracefulTimeout, gracefulTimeoutUnit)) {
       return;
     }
     destroyForcefullyAndWait(process, forcefulTimeout, forcefulTimeoutUnit);
   }
 
+  /**
+   * Destroys the given process gracefully and waits until it finishes, the graceful stage of a deadline is reached or the current thread is interrupted.
+   * If the graceful destroy operation throws an exception (e.g. it's unsupported) or the graceful stage is over
+   * it destroys the process forcefully and waits until it finishes, the deadline is reached or the current thread is interrupted.
+   * <p>
+   * The whole operation including sending the destroy signals stays within the deadline.
+   * An {@link AndProcess} is handled child by child
+   * (see {@link #destroyEachGracefullyOrForcefullyAndWait(AndProcess, Deadline, double)}).
+   * </p>
+   *
+   * @param process the target process.
+   * @param deadline the time by which the process must finish.
+   * @param gracefulRatio share of the time left that is used for the graceful stage (from <code>0</code> to <code>1</code>).
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if the deadline was reached before the process finished.
+   */
+  public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, Deadline deadline, double gracefulRatio) throws IOException, InterruptedException, TimeoutException {
+    Deadline gracefulDeadline = gracefulStage(deadline, gracefulRatio);
+    if (process instanceof AndProcess) {
+      DestroyResult result = destroyEach((AndProcess) process, gracefulDeadline, Long.MAX_VALUE, TimeUnit.NANOSECONDS, deadline);
+      if (!result.isAllFinished()) {
+        throw new TimeoutException(String.format("%s did not finish before the deadline", result.getSurvived()));
+      }
+      return;
+    }
+    if (!gracefulDeadline.isExpired() && tryDestroyGracefully(process, gracefulDeadline.remaining(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS)) {
+      return;
+    }
+    destroyForcefullyAndWait(process, deadline);
+  }
+
+  private static Deadline gracefulStage(Deadline deadline, double gracefulRatio) {
+    if (!(gracefulRatio >= 0 && gracefulRatio <= 1)) {
+      throw new IllegalArgumentException("Graceful ratio must be between 0 and 1: " + gracefulRatio);
+    }
+    return deadline.split(gracefulRatio, 1 - gracefulRatio)[0];
+  }
+
+  /**
+   * Destroys the given process gracefully and waits until it finishes, a learned timeout occurs or the current thread is interrupted.
+   * If the graceful destroy operation throws an exception (e.g. it's unsupported) or the timeout is reached
+   * it destroys the process forcefully and waits until it finishes, second timeout occurs or the current thread is interrupted.
+   * <p>
+   * The graceful timeout is taken from the history of the given label and the duration of this shutdown is recorded there
+   * (the timeout itself if the process did not finish).
+   * </p>
+   *
+   * @param process the target process.
+   * @param timeouts the history of graceful shutdowns.
+   * @param label the kind of the process.
+   * @param forcefulTimeout the maximum time to wait until the process finishes after the forceful destroy operation.
+   * @param forcefulTimeoutUnit the time unit of the forcefulTimeout argument.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished (after the forceful destroy operation).
+   */
+  public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, AdaptiveTimeout timeouts, String label, long forcefulTimeout, TimeUnit forcefulTimeoutUnit) throws IOException, InterruptedException, TimeoutException {
+    long gracefulTimeout = timeouts.getGracefulTimeout(label, TimeUnit.MILLISECONDS);
+    Stopwatch sw = Stopwatch.createStarted();
+    try {
+      destroyGracefullyAndWait(process, gracefulTimeout, TimeUnit.MILLISECONDS);
+      timeouts.record(label, sw.stop().elapsed(TimeUnit.MILLISECONDS), TimeUnit.MILLISECONDS);
+      return;
+    }
+    catch (UnsupportedOperationException e) {
+      log.trace("Destroying {} gracefully is unsupported, trying forcefully:", process);
+    }
+    catch (TimeoutException e) {
+      timeouts.record(label, gracefulTimeout, TimeUnit.MILLISECONDS);
+      log.info(e.getMessage() + ", trying forcefully.");
+    }
+    catch (InterruptedException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      log.error("Could not destroy {} gracefully, trying forcefully.", process, e);
+    }
+    destroyForcefullyAndWait(process, forcefulTimeout, forcefulTimeoutUnit);
+  }
+
+  /**
+   * Destroys all children of the given process gracefully and waits until they finish, first timeout occurs or the current thread is interrupted.
+   * Only the children that are still alive then (or whose graceful destroy operation threw an exception) are destroyed forcefully.
+   * After that it waits until they finish, second timeout occurs or the current thread is interrupted.
+   * <p>
+   * Both timeouts are shared by all children.
+   * Unlike the other methods here it does not throw {@link TimeoutException}, the children that did not finish are reported in the result instead.
+   * </p>
+   *
+   * @param process the target process.
+   * @param gracefulTimeout the maximum time to wait until the children finish after the graceful destroy operation.
+   * @param gracefulTimeoutUnit the time unit of the gracefulTimeout argument.
+   * @param forcefulTimeout the maximum time to wait until the children finish after the forceful destroy operation.
+   * @param forcefulTimeoutUnit the time unit of the forcefulTimeout argument.
+   * @return which children exited after the graceful destroy operation, which were killed and which did not finish.
+   *
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public static DestroyResult destroyEachGracefullyOrForcefullyAndWait(AndProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, long forcefulTimeout, TimeUnit forcefulTimeoutUnit) throws InterruptedException {
+    return destroyEach(process, Deadline.after(gracefulTimeout, gracefulTimeoutUnit), forcefulTimeout, forcefulTimeoutUnit, null);
+  }
+
+  /**
+   * Destroys all children of the given process gracefully and waits until they finish, the graceful stage of a deadline is reached or the current thread is interrupted.
+   * Only the children that are still alive then (or whose graceful destroy operation threw an exception) are destroyed forcefully.
+   * After that it waits until they finish, the deadline is reached or the current thread is interrupted.
+   * <p>
+   * Unlike the other methods here it does not throw {@link TimeoutException}, the children that did not finish are reported in the result instead.
+   * </p>
+   *
+   * @param process the target process.
+   * @param deadline the time by which all children must finish.
+   * @param gracefulRatio share of the time left that is used for the graceful stage (from <code>0</code> to <code>1</code>).
+   * @return which children exited after the graceful destroy operation, which were killed and which did not finish.
+   *
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public static DestroyResult destroyEachGracefullyOrForcefullyAndWait(AndProcess process, Deadline deadline, double gracefulRatio) throws InterruptedException {
+    return destroyEach(process, gracefulStage(deadline, gracefulRatio), Long.MAX_VALUE, TimeUnit.NANOSECONDS, deadline);
+  }
+
+  /**
+   * @param forcefulTimeout the maximum time to wait after the forceful destroy operation (counting from the start of the forceful stage).
+   * @param deadline the overall deadline, <code>null</code> if there's none.
+   */
+  private static DestroyResult destroyEach(AndProcess process, Deadline gracefulDeadline, long forcefulTimeout, TimeUnit forcefulTimeoutUnit, Deadline deadline) throws InterruptedException {
+    Stopwatch sw = Stopwatch.createStarted();
+    List<SystemProcess> pending = new ArrayList<SystemProcess>();
+    List<SystemProcess> stragglers = new ArrayList<SystemProcess>();
+    for (SystemProcess child : process.children) {
+      try {
+        child.destroyGracefully();
+        pending.add(child);
+      }
+      catch (UnsupportedOperationException e) {
+        log.trace("Destroying {} gracefully is unsupported, trying forcefully:", child);
+        stragglers.add(child);
+      }
+      catch (InterruptedException e) {
+        throw e;
+      }
+      catch (Exception e) {
+        log.error("Could not destroy {} gracefully, trying forcefully.", child, e);
+        stragglers.add(child);
+      }
+    }
+    List<SystemProcess> exited = new ArrayList<SystemProcess>();
+    waitForEach(pending, gracefulDeadline, exited, stragglers);
+
+    List<SystemProcess> killed = new ArrayList<SystemProcess>();
+    List<SystemProcess> survived = new ArrayList<SystemProcess>();
+    if (!stragglers.isEmpty()) {
+      log.info("Could not destroy {} gracefully, trying forcefully.", stragglers);
+      Deadline forcefulDeadline = Deadline.after(forcefulTimeout, forcefulTimeoutUnit);
+      if (deadline != null) {
+        forcefulDeadline = forcefulDeadline.min(deadline);
+      }
+      pending.clear();
+      for (SystemProcess child : stragglers) {
+        try {
+          child.destroyForcefully();
+          pending.add(child);
+        }
+        catch (InterruptedException e) {
+          throw e;
+        }
+        catch (Exception e) {
+          log.error("Could not destroy {} forcefully.", child, e);
+          survived.add(child);
+        }
+      }
+      waitForEach(pending, forcefulDeadline, killed, survived);
+    }
+    long duration = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+    DestroyResult result = new DestroyResult(exited, killed, survived);
+    log.info("Destroyed {} in {} ms: {} exited, {} killed, {} survived.", process, duration, exited.size(), killed.size(), survived.size());
+    return result;
+  }
+
+  /**
+   * Waits for each process against a deadline shared by all of them.
+   * <p>
+   * A process that is waited for after the deadline was used up by the previous ones is still checked once,
+   * so it's not reported alive (and killed later) if it has already finished.
+   * </p>
+   *
+   * @param processes the target processes.
+   * @param deadline the time by which the processes must finish.
+   * @param finished list where the processes that finished are added.
+   * @param alive list where the processes that are still alive are added.
+   *
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  private static void waitForEach(List<SystemProcess> processes, Deadline deadline, List<SystemProcess> finished, List<SystemProcess> alive) throws InterruptedException {
+    for (SystemProcess process : processes) {
+      if (process.waitFor(deadline.remaining(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS) || !isAlive(process)) {
+        finished.add(process);
+      }
+      else {
+        alive.add(process);
+      }
+    }
+  }
+
+  /**
+   * @return <code>false</code> only if the given process is known to have finished.
+   */
+  private static boolean isAlive(SystemProcess process) throws InterruptedException {
+    try {
+      return process.isAlive();
+    }
+    catch (InterruptedException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      log.error("Could not check whether {} is alive.", process, e);
+      return true;
+    }
+  }
+
+  /**
+   * Lowers the CPU and I/O priorities of the given process, destroys it gracefully and waits until it finishes, first timeout occurs or the current thread is interrupted.
+   * If the graceful destroy operation throws an exception (e.g. it's unsupported) or a timeout is reached
+   * it destroys the process forcefully and waits until it finishes, second timeout occurs or the current thread is interrupted.
+   *
+   * @param process the target process.
+   * @param gracefulTimeout the maximum time to wait until the process finishes after the graceful destroy operation.
+   * @param gracefulTimeoutUnit the time unit of the gracefulTimeout argument.
+   * @param forcefulTimeout the maximum time to wait until the process finishes after the forceful destroy operation.
+   * @param forcefulTimeoutUnit the time unit of the forcefulTimeout argument.
+   * @param priority the priorities applied before the graceful destroy operation.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished (after the forceful destroy operation).
+   */
+  public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, long forcefulTimeout, TimeUnit forcefulTimeoutUnit, ShutdownPriority priority) throws IOException, InterruptedException, TimeoutException {
+    if (tryDestroyGracefully(process, gracefulTimeout, gracefulTimeoutUnit, priority)) {
+      return;
+    }
+    destroyForcefullyAndWait(process, forcefulTimeout, forcefulTimeoutUnit);
+  }
+
+  /**
+   * Destroys the given process gracefully and waits until it finishes, first timeout occurs, it's detected to be hung or the current thread is interrupted.
+   * If the graceful destroy operation throws an exception (e.g. it's unsupported), a timeout is reached or the process is hung
+   * it destroys the process forcefully and waits until it finishes, second timeout occurs or the current thread is interrupted.
+   * <p>
+   * While waiting after the graceful destroy operation the process is sampled according to the given heuristics,
+   * so a process that is not making any progress is destroyed forcefully without waiting for the whole graceful timeout.
+   * </p>
+   *
+   * @param process the target process.
+   * @param gracefulTimeout the maximum time to wait until the process finishes after the graceful destroy operation.
+   * @param gracefulTimeoutUnit the time unit of the gracefulTimeout argument.
+   * @param forcefulTimeout the maximum time to wait until the process finishes after the forceful destroy operation.
+   * @param forcefulTimeoutUnit the time unit of the forcefulTimeout argument.
+   * @param hangDetection heuristics for detecting that the process is hung.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished (after the forceful destroy operation).
+   */
+  public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, long forcefulTimeout, TimeUnit forcefulTimeoutUnit, HangDetection hangDetection) throws IOException, InterruptedException, TimeoutException {
+    if (tryDestroyGracefullyUnlessHung(process, gracefulTimeout, gracefulTimeoutUnit, hangDetection)) {
+      return;
+    }
+    destroyForcefullyAndWait(process, forcefulTimeout, forcefulTimeoutUnit);
+  }
+
+  /**
+   * Destroys the given process gracefully and waits until it finishes, first timeout occurs or the current thread is interrupted.
+   * If the graceful destroy operation throws an exception (e.g. it's unsupported) or a timeout is reached
+   * it destroys the process forcefully and waits until it finishes, second timeout occurs or the current thread is interrupted.
+   * After the process has finished it waits until the given resources are released as well.
+   *
+   * @param process the target process.
+   * @param gracefulTimeout the maximum time to wait until the process finishes after the graceful destroy operation.
+   * @param gracefulTimeoutUnit the time unit of the gracefulTimeout argument.
+   * @param forcefulTimeout the maximum time to wait until the process finishes after the forceful destroy operation.
+   * @param forcefulTimeoutUnit the time unit of the forcefulTimeout argument.
+   * @param release the resources to wait for after the process has finished.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the process finished (after the forceful destroy operation)
+   *    or before the resources were released.
+   */
+  public static void destroyGracefullyOrForcefullyAndWait(SystemProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, long forcefulTimeout, TimeUnit forcefulTimeoutUnit, ResourceRelease release) throws IOException, InterruptedException, TimeoutException {
+    destroyGracefullyOrForcefullyAndWait(process, gracefulTimeout, gracefulTimeoutUnit, forcefulTimeout, forcefulTimeoutUnit);
+    waitForRelease(release);
+  }
+
+  /**
+   * Waits until the given resources are released, the timeout of the resources is reached or the current thread is interrupted.
+   * The resources are checked right away and then with an exponentially growing delay.
+   *
+   * @param release the resources to wait for.
+   *
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws TimeoutException if timeout was reached before the resources were released.
+   */
+  public static void waitForRelease(ResourceRelease release) throws IOException, InterruptedException, TimeoutException {
+    Stopwatch sw = Stopwatch.createStarted();
+    ResourceRelease.Poller poller = release.poller();
+    String held = poller.poll();
+    if (held == null) {
+      return;
+    }
+    log.info("Waiting for {} to be released ({}).", release, held);
+    long timeout = release.getTimeout(TimeUnit.MILLISECONDS);
+    Deadline deadline = Deadline.after(timeout, TimeUnit.MILLISECONDS);
+    long backoff = release.getMinBackoff();
+    while (held != null) {
+      long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+      if (remaining <= 0) {
+        throw new TimeoutException(String.format("%s was not released (%s) in %d milliseconds", release, held, timeout));
+      }
+      Thread.sleep(Math.min(backoff, remaining));
+      backoff = Math.min(backoff * 2, release.getMaxBackoff());
+      held = poller.poll();
+    }
+    long duration = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+    log.info("{} released in {} ms.", release, duration);
+  }
+
+  private static boolean tryDestroyGracefullyUnlessHung(SystemProcess process, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, HangDetection hangDetection) throws InterruptedException {
+    try {
+      Stopwatch sw = Stopwatch.createStarted();
+      HangDetection.Monitor monitor = hangDetection.monitor(process);
+      process.destroyGracefully();
+      long deadline = System.nanoTime() + gracefulTimeoutUnit.toNanos(gracefulTimeout);
+      long interval = hangDetection.getSampleInterval(TimeUnit.NANOSECONDS);
+      while (true) {
+        long remaining = deadline - System.nanoTime();
+        if (process.waitFor(Math.min(interval, Math.max(0, remaining)), TimeUnit.NANOSECONDS)) {
+          long duration = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+          log.info("Destroyed {} gracefully in {} ms.", process, duration);
+          return true;
+        }
+        if (remaining <= interval) {
+          log.info("Could not destroy {} gracefully in {} {}, trying forcefully.", process, gracefulTimeout, gracefulTimeoutUnit.toString().toLowerCase());
+          return false;
+        }
+        String reason = monitor.sample();
+        if (reason != null) {
+          log.info("{} is hung ({}), trying forcefully.", process, reason);
+          return false;
+        }
+      }
+    }
+    catch (UnsupportedOperationException e) {
+      log.trace("Destroying {} gracefully is unsupported, trying forcefully:", process);
+    }
+    catch (InterruptedException e) {
+      throw e;
+    }
+    catch (Exception e) {
+      log.error("Could not destroy {} gracefully, trying forcefully.", process, e);
+    }
+    return false;
+  }
+
   private static boolean tryDestroyGracefully(SystemProcess killer, long gracefulTimeout, TimeUnit gracefulTimeoutUnit) {
+    return tryDestroyGracefully(killer, gracefulTimeout, gracefulTimeoutUnit, null);
+  }
+
+  private static boolean tryDestroyGracefully(SystemProcess killer, long gracefulTimeout, TimeUnit gracefulTimeoutUnit, ShutdownPriority priority) {
     try {
-      destroyGracefullyAndWait(killer, gracefulTimeout, gracefulTimeoutUnit);
+      if (priority == null) {
+        destroyGracefullyAndWait(killer, gracefulTimeout, gracefulTimeoutUnit);
+      }
+      else {
+        // The process is destroyed forcefully next, so there's nothing to restore
+        destroyGracefullyAndWait(killer, gracefulTimeout, gracefulTimeoutUnit, priority.withRestoreIfSurvived(false));
+      }
       return true;
     }
     catch (UnsupportedOperationException e) {
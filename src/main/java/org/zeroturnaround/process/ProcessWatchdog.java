@@ -0,0 +1,483 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys Linux processes that exceed their resource limits: resident set size, CPU time, age or number of open files.
+ * <p>
+ * All processes are sampled by a single background thread from <code>/proc/&lt;pid&gt;/stat</code>, <code>statm</code> and <code>fd</code>
+ * reusing the same buffer. Only the files needed for the limits of a process are read besides <code>stat</code>,
+ * which is always read to tell whether the process is still the same one.
+ * The start time of a process is recorded when it's registered and the process is unregistered as finished
+ * once its PID has a different start time (the PID was reused) or the process has become a zombie.
+ * A process that exceeds a limit is unregistered and destroyed using
+ * {@link ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, long, TimeUnit, long, TimeUnit)} in another thread,
+ * so the sampling continues meanwhile.
+ * </p>
+ * <p>
+ * The sampling interval adapts to the cost of the samples:
+ * the CPU time the sampling thread spends per round is kept within the CPU budget (1% of one core by default),
+ * so the more processes are watched, the less often they are sampled (within the minimum and maximum interval).
+ * </p>
+ */
+public class ProcessWatchdog {
+
+  private static final Logger log = LoggerFactory.getLogger(ProcessWatchdog.class);
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private final File procRoot;
+
+  private final Map<PidProcess, Watched> watched = new ConcurrentHashMap<PidProcess, Watched>();
+
+  private final byte[] buffer = new byte[512];
+
+  private volatile double cpuBudget = 0.01;
+
+  private volatile long minInterval = 100;
+
+  private volatile long maxInterval = 10000;
+
+  private volatile long interval = minInterval;
+
+  private volatile long gracefulTimeout = 5000;
+
+  private volatile long forcefulTimeout = 5000;
+
+  /**
+   * Average cost of a sampling round in nanoseconds, <code>-1</code> if there's none yet.
+   */
+  private long averageCost = -1;
+
+  private ScheduledExecutorService executor;
+
+  private ExecutorService destroyer;
+
+  public ProcessWatchdog() {
+    this(LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   */
+  public ProcessWatchdog(File procRoot) {
+    this.procRoot = procRoot;
+  }
+
+  public double getCpuBudget() {
+    return cpuBudget;
+  }
+
+  /**
+   * @param cpuBudget share of one CPU core the sampling may use (e.g. <code>0.01</code> for 1%).
+   */
+  public void setCpuBudget(double cpuBudget) {
+    if (!(cpuBudget > 0 && cpuBudget <= 1)) {
+      throw new IllegalArgumentException("CPU budget must be above 0 and at most 1: " + cpuBudget);
+    }
+    this.cpuBudget = cpuBudget;
+  }
+
+  /**
+   * @param minInterval the shortest sampling interval in milliseconds.
+   * @param maxInterval the longest sampling interval in milliseconds.
+   */
+  public void setIntervalBounds(long minInterval, long maxInterval) {
+    if (minInterval <= 0 || maxInterval < minInterval) {
+      throw new IllegalArgumentException("Invalid interval bounds: " + minInterval + ", " + maxInterval);
+    }
+    this.minInterval = minInterval;
+    this.maxInterval = maxInterval;
+  }
+
+  /**
+   * @return the current sampling interval in milliseconds.
+   */
+  public long getInterval() {
+    return interval;
+  }
+
+  /**
+   * @param timeout the maximum time to wait until a process finishes after the graceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setGracefulTimeout(long timeout, TimeUnit unit) {
+    this.gracefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * @param timeout the maximum time to wait until a process finishes after the forceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setForcefulTimeout(long timeout, TimeUnit unit) {
+    this.forcefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * Starts watching a process.
+   * Watching the same process again replaces its limits.
+   * The start time of the process is recorded now, so a process that has already finished is unregistered on the next sample.
+   *
+   * @param process the process.
+   * @param limits the limits of the process.
+   * @return the same process.
+   * @throws IOException on IO error.
+   */
+  public <T extends PidProcess> T watch(T process, Limits limits) throws IOException {
+    long startTime = LinuxProcFs.readStartTime(procRoot, process.getPid(), new byte[buffer.length]);
+    watched.put(process, new Watched(limits, startTime));
+    return process;
+  }
+
+  /**
+   * @param process the process that should not be watched any more.
+   */
+  public void unwatch(PidProcess process) {
+    watched.remove(process);
+  }
+
+  /**
+   * @return the processes currently watched.
+   */
+  public List<PidProcess> getProcesses() {
+    return new ArrayList<PidProcess>(watched.keySet());
+  }
+
+  /**
+   * Starts sampling the processes in a background thread.
+   */
+  public synchronized void start() {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "process-watchdog");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    destroyer = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "process-watchdog-destroy-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    schedule(executor, 0);
+  }
+
+  private void schedule(final ScheduledExecutorService executor, long delay) {
+    executor.schedule(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          for (PidProcess process : sample()) {
+            destroy(process);
+          }
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+        catch (Exception e) {
+          log.error("Failed to sample the processes", e);
+        }
+        synchronized (ProcessWatchdog.this) {
+          if (ProcessWatchdog.this.executor == executor) {
+            schedule(executor, interval);
+          }
+        }
+      }
+    }, delay, TimeUnit.MILLISECONDS);
+  }
+
+  private synchronized void destroy(final PidProcess process) {
+    if (destroyer == null) {
+      return;
+    }
+    destroyer.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          ProcessUtil.destroyGracefullyOrForcefullyAndWait(process, gracefulTimeout, TimeUnit.MILLISECONDS, forcefulTimeout, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+          log.error("Failed to destroy {}", process, e);
+        }
+      }
+    });
+  }
+
+  /**
+   * Stops the background thread started by {@link #start()}.
+   * Processes being destroyed at the moment are not waited for.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+      destroyer.shutdown();
+      destroyer = null;
+    }
+  }
+
+  /**
+   * Samples all processes once and updates the sampling interval.
+   * Finished processes (including zombies and reused PIDs) and the ones exceeding a limit are unregistered.
+   *
+   * @return the processes that exceeded a limit (they are not destroyed by this method).
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public List<PidProcess> sample() throws IOException, InterruptedException {
+    List<PidProcess> result = new ArrayList<PidProcess>();
+    synchronized (buffer) {
+      long startCpu = currentThreadCpuTime();
+      long uptime = -1;
+      for (Map.Entry<PidProcess, Watched> entry : watched.entrySet()) {
+        PidProcess process = entry.getKey();
+        Watched watch = entry.getValue();
+        if (watch.limits.maxAge > 0 && uptime < 0) {
+          uptime = LinuxProcFs.readUptime(procRoot, buffer);
+        }
+        String breach = check(process.getPid(), watch, uptime);
+        if (breach == null) {
+          continue;
+        }
+        watched.remove(process);
+        if (breach.isEmpty()) {
+          log.debug("Unregistering finished {}", process);
+        }
+        else {
+          log.warn("{} exceeded its limit: {}, destroying it", process, breach);
+          result.add(process);
+        }
+      }
+      updateInterval(currentThreadCpuTime() - startCpu);
+    }
+    return result;
+  }
+
+  /**
+   * @return description of the limit exceeded, an empty string if the process has finished, <code>null</code> if it's within its limits.
+   */
+  private String check(int pid, Watched watch, long uptime) throws IOException {
+    Limits limit = watch.limits;
+    int size = LinuxProcFs.readStat(procRoot, pid, buffer);
+    if (size < 0) {
+      return "";
+    }
+    int state = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STATE);
+    int start = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STARTTIME);
+    if (state < 0 || start < 0) {
+      throw new IOException("Invalid stat file of process " + pid);
+    }
+    long startTime = LinuxProcFs.parseLong(buffer, size, start);
+    if (startTime != watch.startTime) {
+      log.debug("Process {} has a different start time {} instead of {}, its PID was reused", pid, startTime, watch.startTime);
+      return "";
+    }
+    if (buffer[state] == 'Z' || buffer[state] == 'X') {
+      // Finished but not reaped yet, its statm and fd are still there
+      return "";
+    }
+    if (limit.maxCpuTime > 0) {
+      int i = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_UTIME);
+      int j = LinuxProcFs.statField(buffer, size, LinuxProcFs.STAT_STIME);
+      if (i < 0 || j < 0) {
+        throw new IOException("Invalid stat file of process " + pid);
+      }
+      long cpuTime = toMillis(LinuxProcFs.parseLong(buffer, size, i) + LinuxProcFs.parseLong(buffer, size, j));
+      if (cpuTime > limit.maxCpuTime) {
+        return "CPU time " + cpuTime + " ms > " + limit.maxCpuTime + " ms";
+      }
+    }
+    if (limit.maxAge > 0) {
+      long age = uptime - toMillis(startTime);
+      if (age > limit.maxAge) {
+        return "age " + age + " ms > " + limit.maxAge + " ms";
+      }
+    }
+    if (limit.maxRss > 0) {
+      long rss = LinuxProcFs.readRss(procRoot, pid, buffer);
+      if (rss < 0) {
+        return "";
+      }
+      if (rss > limit.maxRss) {
+        return "RSS " + rss + " bytes > " + limit.maxRss + " bytes";
+      }
+    }
+    if (limit.maxOpenFiles > 0) {
+      int files = LinuxProcFs.countOpenFiles(procRoot, pid);
+      if (files < 0) {
+        return "";
+      }
+      if (files > limit.maxOpenFiles) {
+        return "open files " + files + " > " + limit.maxOpenFiles;
+      }
+    }
+    return null;
+  }
+
+  private static long toMillis(long ticks) {
+    return ticks * 1000 / LinuxProcFs.getClockTicks();
+  }
+
+  /**
+   * Sets the interval so the given cost of a sampling round (averaged with the previous ones) stays within the CPU budget.
+   */
+  private void updateInterval(long cost) {
+    averageCost = averageCost < 0 ? cost : (averageCost * 3 + cost) / 4;
+    long millis = (long) (averageCost / cpuBudget / 1000000);
+    interval = Math.max(minInterval, Math.min(maxInterval, millis));
+    log.trace("Sampling {} processes took {} us, next sample in {} ms", watched.size(), cost / 1000, interval);
+  }
+
+  /**
+   * @return CPU time of the current thread in nanoseconds, or the wall-clock time if the CPU time is unsupported.
+   */
+  private static long currentThreadCpuTime() {
+    ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    if (bean.isCurrentThreadCpuTimeSupported()) {
+      long result = bean.getCurrentThreadCpuTime();
+      if (result >= 0) {
+        return result;
+      }
+    }
+    return System.nanoTime();
+  }
+
+  /**
+   * Limits of a watched process with its start time in clock ticks after the boot (<code>-1</code> if it was not found).
+   */
+  private static class Watched {
+
+    private final Limits limits;
+
+    private final long startTime;
+
+    Watched(Limits limits, long startTime) {
+      this.limits = limits;
+      this.startTime = startTime;
+    }
+
+  }
+
+  /**
+   * Resource limits of a watched process. A limit of <code>0</code> is disabled.
+   * <p>
+   * Instances are immutable.
+   * </p>
+   */
+  public static class Limits {
+
+    private static final Limits NONE = new Limits(0, 0, 0, 0);
+
+    private final long maxRss;
+
+    private final long maxCpuTime;
+
+    private final long maxAge;
+
+    private final int maxOpenFiles;
+
+    private Limits(long maxRss, long maxCpuTime, long maxAge, int maxOpenFiles) {
+      this.maxRss = maxRss;
+      this.maxCpuTime = maxCpuTime;
+      this.maxAge = maxAge;
+      this.maxOpenFiles = maxOpenFiles;
+    }
+
+    /**
+     * @return limits with all of them disabled.
+     */
+    public static Limits none() {
+      return NONE;
+    }
+
+    /**
+     * @param bytes the maximum resident set size in bytes, <code>0</code> for no limit.
+     * @return copy of this object with the given limit.
+     */
+    public Limits withMaxRss(long bytes) {
+      return new Limits(bytes, maxCpuTime, maxAge, maxOpenFiles);
+    }
+
+    /**
+     * @param time the maximum CPU time (user and system time of all threads), <code>0</code> for no limit.
+     * @param unit the time unit of the time argument.
+     * @return copy of this object with the given limit.
+     */
+    public Limits withMaxCpuTime(long time, TimeUnit unit) {
+      return new Limits(maxRss, unit.toMillis(time), maxAge, maxOpenFiles);
+    }
+
+    /**
+     * @param time the maximum wall-clock time since the process was started, <code>0</code> for no limit.
+     * @param unit the time unit of the time argument.
+     * @return copy of this object with the given limit.
+     */
+    public Limits withMaxAge(long time, TimeUnit unit) {
+      return new Limits(maxRss, maxCpuTime, unit.toMillis(time), maxOpenFiles);
+    }
+
+    /**
+     * @param count the maximum number of open file descriptors, <code>0</code> for no limit.
+     * @return copy of this object with the given limit.
+     */
+    public Limits withMaxOpenFiles(int count) {
+      return new Limits(maxRss, maxCpuTime, maxAge, count);
+    }
+
+    public long getMaxRss() {
+      return maxRss;
+    }
+
+    /**
+     * @return the maximum CPU time in milliseconds.
+     */
+    public long getMaxCpuTime() {
+      return maxCpuTime;
+    }
+
+    /**
+     * @return the maximum age in milliseconds.
+     */
+    public long getMaxAge() {
+      return maxAge;
+    }
+
+    public int getMaxOpenFiles() {
+      return maxOpenFiles;
+    }
+
+    @Override
+    public String toString() {
+      return "Limits(rss=" + maxRss + ", cpuTime=" + maxCpuTime + ", age=" + maxAge + ", openFiles=" + maxOpenFiles + ")";
+    }
+
+  }
+
+}
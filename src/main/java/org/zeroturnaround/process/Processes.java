@@ -1,6 +1,11 @@
 package org.zeroturnaround.process;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
 
 import org.apache.commons.lang3.SystemUtils;
 
@@ -71,6 +76,127 @@ public class Processes {
     return new UnixProcess(pid);
   }
 
+  /**
+   * Creates an instance that represents the given UNIX PID values as a single compact set.
+   * Prefer it over {@link #newProcessForMultiple(SystemProcess...)} for a large number of processes.
+   *
+   * @param pids PIDs of external processes (running or not).
+   * @return system process that represents the given input as described above.
+   * @throws UnsupportedOperationException on Windows.
+   */
+  public static PidSet newPidSet(int... pids) {
+    if (SystemUtils.IS_OS_WINDOWS) {
+      throw new UnsupportedOperationException("PID sets are not supported on Windows.");
+    }
+    return new PidSet(pids);
+  }
+
+  /**
+   * Creates an instance that represents the given Linux process and all its descendants.
+   * Destroying it forcefully freezes the whole tree before killing it.
+   *
+   * @param pid PID of the root process.
+   * @return system process that represents the given input as described above.
+   */
+  public static UnixProcessTree newProcessTree(int pid) {
+    return new UnixProcessTree(pid);
+  }
+
+  /**
+   * Creates an instance that represents all processes of the given Linux cgroup v2 control group.
+   *
+   * @param path path of the control group relative to <code>/sys/fs/cgroup</code>, e.g. <code>system.slice/my.service</code>.
+   * @return system process that represents the given input as described above.
+   */
+  public static CgroupProcess newCgroupProcess(String path) {
+    return new CgroupProcess(path);
+  }
+
+  /**
+   * Creates an instance that represents all Linux processes currently matching the given selector,
+   * e.g. for destroying every process started with a certain argument.
+   * The processes are selected once, processes started later are not included.
+   * Each process keeps its start time, so a PID reused by another process after the selection is not destroyed.
+   *
+   * @param selector the criteria of the processes.
+   * @return system process that represents the matching processes (it has no children if none match).
+   * @throws IOException if the processes could not be read.
+   */
+  public static AndProcess newProcessForMatching(ProcessSelector selector) throws IOException {
+    List<SystemProcess> result = new ArrayList<SystemProcess>();
+    for (ProcessInfo info : selector.find()) {
+      result.add(new UnixProcess(info.getPid(), info.getStartTime()));
+    }
+    return new AndProcess(result);
+  }
+
+  /**
+   * Creates an instance that represents the Linux processes currently listening on the given TCP port or bound to the given UDP port,
+   * e.g. for destroying a stale server that keeps the port in use.
+   * The sockets are read from <code>/proc/net</code> and mapped to processes through their file descriptors,
+   * which requires root for processes of other users.
+   *
+   * @param port the local port.
+   * @return system process that represents the processes owning the port (it has no children if there are none).
+   * @throws IOException if the sockets or processes could not be read.
+   */
+  public static AndProcess newProcessForListeningPort(int port) throws IOException {
+    List<SystemProcess> result = new ArrayList<SystemProcess>();
+    int[] pids = LinuxSockets.findPidsBySocketInodes(LinuxProcFs.DEFAULT_ROOT, LinuxSockets.findListeningInodes(LinuxProcFs.DEFAULT_ROOT, port));
+    for (int pid : pids) {
+      result.add(newPidProcess(pid));
+    }
+    return new AndProcess(result);
+  }
+
+  /**
+   * Creates an instance that represents the Linux processes currently using the given file or anything under the given directory,
+   * e.g. for cleaning up a workspace or a volume before deleting or unmounting it.
+   * A process uses the path if its current directory, root directory, executable, any open file or any memory-mapped file is there.
+   * All processes are checked in parallel in a dedicated pool (not the {@link ForkJoinPool#commonPool()}, as the checks block on IO),
+   * which requires root for processes of other users.
+   * The current JVM is never included.
+   *
+   * @param path the file or directory.
+   * @return system process that represents the processes using the path (it has no children if there are none).
+   * @throws IOException if the processes could not be read.
+   */
+  public static AndProcess newProcessForPath(File path) throws IOException {
+    return newProcessForPath(path, LinuxPathHolders.getDefaultPool());
+  }
+
+  /**
+   * Creates an instance that represents the Linux processes currently using the given file or anything under the given directory
+   * (see {@link #newProcessForPath(File)}), checking the processes in the given pool.
+   *
+   * @param path the file or directory.
+   * @param pool the pool for checking the processes in parallel.
+   * @return system process that represents the processes using the path (it has no children if there are none).
+   * @throws IOException if the processes could not be read.
+   */
+  public static AndProcess newProcessForPath(File path, ForkJoinPool pool) throws IOException {
+    List<SystemProcess> result = new ArrayList<SystemProcess>();
+    for (int pid : LinuxPathHolders.find(LinuxProcFs.DEFAULT_ROOT, path.getCanonicalPath(), pool)) {
+      result.add(newPidProcess(pid));
+    }
+    return new AndProcess(result);
+  }
+
+  /**
+   * Wraps an existing {@link SystemProcess} and adjusts the Linux OOM killer score of it right away according to the given policy.
+   * Depending on the policy the score is also adjusted when the process is being destroyed gracefully.
+   *
+   * @param process the process (or multiple processes).
+   * @param policy the score policy.
+   * @param role the process role passed to the policy (may be <code>null</code>).
+   * @return system process that represents the given input as described above.
+   */
+  public static OomScoreProcess newProcessWithOomScore(SystemProcess process, OomScorePolicy policy, String role) {
+    OomScoreProcess result = new OomScoreProcess(process, policy, role);
+    result.apply();
+    return result;
+  }
+
   /**
    * Combines existing {@link SystemProcess} objects as alternative implementations for a single process.
    *
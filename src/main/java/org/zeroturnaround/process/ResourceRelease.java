@@ -0,0 +1,216 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resources of a Linux process that must be released before it's considered terminated,
+ * e.g. the ports and files a restarted process needs again.
+ * <p>
+ * A process may finish before the resources are actually free: a grandchild may still hold the port or the file
+ * or the kernel may not have closed the socket yet.
+ * A port is released once no TCP or UDP socket uses it as the local port
+ * (read from <code>/proc/net/tcp</code>, <code>tcp6</code>, <code>udp</code> and <code>udp6</code>),
+ * connections in the <code>TIME_WAIT</code> state are ignored unless enabled.
+ * A file is released once it's not open by any process (read from <code>/proc/&lt;pid&gt;/fd</code>,
+ * which requires root for processes of other users).
+ * Without a proc file system (e.g. not on Linux) the resources are considered released.
+ * </p>
+ * <p>
+ * The resources are polled with an exponential backoff, so a release is noticed quickly without polling too often for long.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see ProcessUtil#waitForRelease(ResourceRelease)
+ * @see ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, long, TimeUnit, long, TimeUnit, ResourceRelease)
+ */
+public class ResourceRelease {
+
+  private static final long DEFAULT_TIMEOUT = 10000;
+
+  private static final long DEFAULT_MIN_BACKOFF = 10;
+
+  private static final long DEFAULT_MAX_BACKOFF = 500;
+
+  private static final int BUFFER_SIZE = 8192;
+
+  private static final ResourceRelease NONE = new ResourceRelease(new int[0], new File[0], false,
+      DEFAULT_TIMEOUT, DEFAULT_MIN_BACKOFF, DEFAULT_MAX_BACKOFF, LinuxProcFs.DEFAULT_ROOT);
+
+  /**
+   * Local ports in ascending order.
+   */
+  private final int[] ports;
+
+  private final File[] files;
+
+  private final boolean includeTimeWait;
+
+  private final long timeout;
+
+  private final long minBackoff;
+
+  private final long maxBackoff;
+
+  private final File procRoot;
+
+  private ResourceRelease(int[] ports, File[] files, boolean includeTimeWait, long timeout, long minBackoff, long maxBackoff, File procRoot) {
+    this.ports = ports;
+    this.files = files;
+    this.includeTimeWait = includeTimeWait;
+    this.timeout = timeout;
+    this.minBackoff = minBackoff;
+    this.maxBackoff = maxBackoff;
+    this.procRoot = procRoot;
+  }
+
+  /**
+   * @return no resources with a timeout of 10 seconds and a backoff from 10 to 500 ms.
+   */
+  public static ResourceRelease none() {
+    return NONE;
+  }
+
+  /**
+   * @param ports the local TCP or UDP ports.
+   * @return copy of this object waiting for the given ports instead of the current ones.
+   */
+  public ResourceRelease withPorts(int... ports) {
+    int[] sorted = ports.clone();
+    Arrays.sort(sorted);
+    return new ResourceRelease(sorted, files, includeTimeWait, timeout, minBackoff, maxBackoff, procRoot);
+  }
+
+  /**
+   * @param files the files.
+   * @return copy of this object waiting for the given files instead of the current ones.
+   */
+  public ResourceRelease withFiles(File... files) {
+    return new ResourceRelease(ports, files.clone(), includeTimeWait, timeout, minBackoff, maxBackoff, procRoot);
+  }
+
+  /**
+   * @param includeTimeWait <code>true</code> if a port is not released until its TCP connections in the <code>TIME_WAIT</code> state are gone.
+   * @return copy of this object with the given option.
+   */
+  public ResourceRelease withTimeWait(boolean includeTimeWait) {
+    return new ResourceRelease(ports, files, includeTimeWait, timeout, minBackoff, maxBackoff, procRoot);
+  }
+
+  /**
+   * @param timeout the maximum time to wait until the resources are released.
+   * @param unit the time unit of the timeout argument.
+   * @return copy of this object with the given timeout.
+   */
+  public ResourceRelease withTimeout(long timeout, TimeUnit unit) {
+    return new ResourceRelease(ports, files, includeTimeWait, unit.toMillis(timeout), minBackoff, maxBackoff, procRoot);
+  }
+
+  /**
+   * @param min the first delay between the checks, it's doubled after each check.
+   * @param max the maximum delay between the checks.
+   * @param unit the time unit of the min and max arguments.
+   * @return copy of this object with the given backoff.
+   */
+  public ResourceRelease withBackoff(long min, long max, TimeUnit unit) {
+    long minMillis = unit.toMillis(min);
+    long maxMillis = unit.toMillis(max);
+    if (minMillis <= 0 || maxMillis < minMillis) {
+      throw new IllegalArgumentException("Invalid backoff: " + min + " to " + max + " " + unit);
+    }
+    return new ResourceRelease(ports, files, includeTimeWait, timeout, minMillis, maxMillis, procRoot);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   * @return copy of this object reading the given proc file system.
+   */
+  public ResourceRelease withProcRoot(File procRoot) {
+    return new ResourceRelease(ports, files, includeTimeWait, timeout, minBackoff, maxBackoff, procRoot);
+  }
+
+  public long getTimeout(TimeUnit unit) {
+    return unit.convert(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  long getMinBackoff() {
+    return minBackoff;
+  }
+
+  long getMaxBackoff() {
+    return maxBackoff;
+  }
+
+  /**
+   * Checks the resources once.
+   *
+   * @return <code>true</code> if all resources are released.
+   * @throws IOException on IO error.
+   */
+  public boolean isReleased() throws IOException {
+    return poller().poll() == null;
+  }
+
+  /**
+   * @return new poller that keeps its buffers between the checks.
+   */
+  Poller poller() throws IOException {
+    return new Poller();
+  }
+
+  /**
+   * Checks the resources repeatedly.
+   */
+  class Poller {
+
+    private final byte[] buffer = ports.length == 0 ? null : new byte[BUFFER_SIZE];
+
+    private final Set<String> paths = new HashSet<String>();
+
+    /**
+     * Process found holding a file on the previous check, it's checked first next time.
+     */
+    private int holder = -1;
+
+    Poller() throws IOException {
+      for (File file : files) {
+        paths.add(file.getCanonicalPath());
+      }
+    }
+
+    /**
+     * @return description of a resource that is not released yet, <code>null</code> if all of them are released.
+     */
+    String poll() throws IOException {
+      if (!LinuxProcFs.isSupported(procRoot)) {
+        return null;
+      }
+      if (buffer != null) {
+        String socket = LinuxSockets.findBoundPort(procRoot, ports, includeTimeWait, buffer);
+        if (socket != null) {
+          return socket;
+        }
+      }
+      if (!paths.isEmpty()) {
+        holder = LinuxProcFs.findFileHolder(procRoot, paths, holder);
+        if (holder > 0) {
+          return "file open by process " + holder;
+        }
+      }
+      return null;
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return "ResourceRelease(ports=" + Arrays.toString(ports) + ", files=" + Arrays.toString(files) + ")";
+  }
+
+}
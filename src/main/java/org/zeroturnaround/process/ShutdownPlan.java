@@ -0,0 +1,314 @@
+package org.zeroturnaround.process;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destroys processes that depend on each other in the right order.
+ * <p>
+ * Each process is added with the names of the processes it depends on.
+ * A process is destroyed only after all processes that depend on it have finished (reverse topological order),
+ * independent processes are destroyed in parallel.
+ * E.g. if workers depend on a broker that depends on a storage, the workers are stopped first, then the broker and then the storage.
+ * A process is started as soon as its own dependents are done, it does not wait for other unrelated processes.
+ * </p>
+ * <p>
+ * Each process is destroyed using {@link ProcessUtil#destroyGracefullyOrForcefullyAndWait(SystemProcess, long, TimeUnit, long, TimeUnit)}
+ * with the timeouts of its node (or the defaults of the plan).
+ * If a process could not be destroyed the error is recorded and the shutdown still continues with its dependencies.
+ * </p>
+ */
+public class ShutdownPlan {
+
+  private static final Logger log = LoggerFactory.getLogger(ShutdownPlan.class);
+
+  private static final AtomicInteger threadCount = new AtomicInteger();
+
+  private final Map<String, Node> nodes = new LinkedHashMap<String, Node>();
+
+  private volatile long gracefulTimeout = 10000;
+
+  private volatile long forcefulTimeout = 10000;
+
+  /**
+   * @param timeout the default maximum time to wait until a process finishes after the graceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setGracefulTimeout(long timeout, TimeUnit unit) {
+    this.gracefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * @param timeout the default maximum time to wait until a process finishes after the forceful destroy operation.
+   * @param unit the time unit of the timeout argument.
+   */
+  public void setForcefulTimeout(long timeout, TimeUnit unit) {
+    this.forcefulTimeout = unit.toMillis(timeout);
+  }
+
+  /**
+   * Adds a process to this plan.
+   * The dependencies may be added later but must all exist by the time the plan is executed.
+   *
+   * @param name unique name of the process.
+   * @param process the process.
+   * @param dependencies names of the processes this one depends on (they are destroyed after this one).
+   * @return the new node, e.g. for setting its own timeouts.
+   */
+  public synchronized Node add(String name, SystemProcess process, String... dependencies) {
+    if (nodes.containsKey(name)) {
+      throw new IllegalArgumentException("Duplicate process name: " + name);
+    }
+    Node result = new Node(name, process, Arrays.asList(dependencies.clone()));
+    nodes.put(name, result);
+    return result;
+  }
+
+  /**
+   * @return the nodes of this plan in the order they were added.
+   */
+  public synchronized List<Node> getNodes() {
+    return new ArrayList<Node>(nodes.values());
+  }
+
+  /**
+   * Destroys all processes using a new thread for each process being destroyed at the same time.
+   *
+   * @return errors by the names of the processes that could not be destroyed, empty if all processes finished.
+   * @throws InterruptedException if the current thread was interrupted (the processes being destroyed at the moment are interrupted as well).
+   * @throws IllegalStateException if a dependency is missing or the dependencies contain a cycle.
+   */
+  public Map<String, Exception> execute() throws InterruptedException {
+    ExecutorService executor = Executors.newCachedThreadPool(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "shutdown-plan-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    try {
+      return execute(executor);
+    }
+    finally {
+      executor.shutdownNow();
+    }
+  }
+
+  /**
+   * Destroys all processes using the given executor.
+   * The executor must be able to run as many tasks in parallel as there are independent processes, otherwise they are destroyed one after another.
+   *
+   * @param executor the executor for destroying the processes.
+   * @return errors by the names of the processes that could not be destroyed, empty if all processes finished.
+   * @throws InterruptedException if the current thread was interrupted.
+   * @throws IllegalStateException if a dependency is missing or the dependencies contain a cycle.
+   */
+  public Map<String, Exception> execute(Executor executor) throws InterruptedException {
+    List<Node> order;
+    Map<String, Node> byName;
+    synchronized (this) {
+      order = new ArrayList<Node>(nodes.values());
+      byName = new HashMap<String, Node>(nodes);
+    }
+    // Number of processes that must finish before each process is destroyed
+    Map<String, Integer> dependents = countDependents(order);
+
+    final BlockingQueue<Node> finished = new LinkedBlockingQueue<Node>();
+    final Map<String, Exception> errors = Collections.synchronizedMap(new HashMap<String, Exception>());
+    Stopwatch sw = Stopwatch.createStarted();
+    for (Node node : order) {
+      if (dependents.get(node.name) == 0) {
+        submit(executor, node, finished, errors);
+      }
+    }
+    for (int done = 0; done < order.size(); done++) {
+      Node node = finished.take();
+      for (String dependency : node.dependencies) {
+        int count = dependents.get(dependency) - 1;
+        dependents.put(dependency, count);
+        if (count == 0) {
+          submit(executor, byName.get(dependency), finished, errors);
+        }
+      }
+    }
+    long duration = sw.stop().elapsed(TimeUnit.MILLISECONDS);
+
+    Map<String, Exception> result = new LinkedHashMap<String, Exception>();
+    for (Node node : order) {
+      Exception e = errors.get(node.name);
+      if (e != null) {
+        result.put(node.name, e);
+      }
+    }
+    if (result.isEmpty()) {
+      log.info("Destroyed {} processes in {} ms.", order.size(), duration);
+    }
+    else {
+      log.warn("Destroyed {} processes in {} ms, failed to destroy {}.", order.size() - result.size(), duration, result.keySet());
+    }
+    return result;
+  }
+
+  /**
+   * Checks the dependencies and counts the dependents of each node.
+   */
+  private static Map<String, Integer> countDependents(List<Node> order) {
+    Map<String, Integer> result = new HashMap<String, Integer>();
+    for (Node node : order) {
+      result.put(node.name, 0);
+    }
+    for (Node node : order) {
+      for (String dependency : node.dependencies) {
+        Integer count = result.get(dependency);
+        if (count == null) {
+          throw new IllegalStateException("Process '" + node.name + "' depends on unknown process '" + dependency + "'");
+        }
+        result.put(dependency, count + 1);
+      }
+    }
+    // Simulate the shutdown to find out whether all nodes are reached
+    Map<String, Integer> remaining = new HashMap<String, Integer>(result);
+    Map<String, Node> byName = new HashMap<String, Node>();
+    List<Node> ready = new ArrayList<Node>();
+    for (Node node : order) {
+      byName.put(node.name, node);
+      if (remaining.get(node.name) == 0) {
+        ready.add(node);
+      }
+    }
+    int reached = 0;
+    while (!ready.isEmpty()) {
+      Node node = ready.remove(ready.size() - 1);
+      reached++;
+      for (String dependency : node.dependencies) {
+        int count = remaining.get(dependency) - 1;
+        remaining.put(dependency, count);
+        if (count == 0) {
+          ready.add(byName.get(dependency));
+        }
+      }
+    }
+    if (reached < order.size()) {
+      List<String> cycle = new ArrayList<String>();
+      for (Node node : order) {
+        if (remaining.get(node.name) > 0) {
+          cycle.add(node.name);
+        }
+      }
+      throw new IllegalStateException("Dependencies contain a cycle: " + cycle);
+    }
+    return result;
+  }
+
+  private void submit(Executor executor, final Node node, final BlockingQueue<Node> finished, final Map<String, Exception> errors) {
+    final long graceful = node.gracefulTimeout < 0 ? gracefulTimeout : node.gracefulTimeout;
+    final long forceful = node.forcefulTimeout < 0 ? forcefulTimeout : node.forcefulTimeout;
+    executor.execute(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          log.debug("Destroying '{}' {}", node.name, node.process);
+          ProcessUtil.destroyGracefullyOrForcefullyAndWait(node.process, graceful, TimeUnit.MILLISECONDS, forceful, TimeUnit.MILLISECONDS);
+        }
+        catch (InterruptedException e) {
+          errors.put(node.name, e);
+          Thread.currentThread().interrupt();
+        }
+        catch (Exception e) {
+          log.error("Failed to destroy '{}' {}", node.name, node.process, e);
+          errors.put(node.name, e);
+        }
+        finally {
+          finished.add(node);
+        }
+      }
+    });
+  }
+
+  @Override
+  public synchronized String toString() {
+    return getClass().getSimpleName() + nodes.values();
+  }
+
+  /**
+   * Process in a {@link ShutdownPlan}.
+   */
+  public static class Node {
+
+    private final String name;
+
+    private final SystemProcess process;
+
+    private final List<String> dependencies;
+
+    private volatile long gracefulTimeout = -1;
+
+    private volatile long forcefulTimeout = -1;
+
+    private Node(String name, SystemProcess process, List<String> dependencies) {
+      this.name = name;
+      this.process = process;
+      this.dependencies = Collections.unmodifiableList(dependencies);
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public SystemProcess getProcess() {
+      return process;
+    }
+
+    /**
+     * @return names of the processes this one depends on.
+     */
+    public List<String> getDependencies() {
+      return dependencies;
+    }
+
+    /**
+     * @param timeout the maximum time to wait until this process finishes after the graceful destroy operation
+     *    (<code>0</code> for escalating to the forceful destroy operation right away).
+     * @param unit the time unit of the timeout argument.
+     * @return this node.
+     */
+    public Node setGracefulTimeout(long timeout, TimeUnit unit) {
+      this.gracefulTimeout = unit.toMillis(timeout);
+      return this;
+    }
+
+    /**
+     * @param timeout the maximum time to wait until this process finishes after the forceful destroy operation.
+     * @param unit the time unit of the timeout argument.
+     * @return this node.
+     */
+    public Node setForcefulTimeout(long timeout, TimeUnit unit) {
+      this.forcefulTimeout = unit.toMillis(timeout);
+      return this;
+    }
+
+    @Override
+    public String toString() {
+      return name + (dependencies.isEmpty() ? "" : "->" + dependencies);
+    }
+
+  }
+
+}
@@ -0,0 +1,208 @@
+package org.zeroturnaround.process;
+
+import java.io.IOException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * CPU and I/O scheduling priorities applied to a process when it's being destroyed gracefully,
+ * so a slow shutdown does not compete with the other processes on the same host.
+ * <p>
+ * The priorities are applied to all processes with a known PID (see {@link UnixProcess#setNiceness(int)} and {@link UnixProcess#setIoPriority(int)}).
+ * If a process survives the graceful destroy operation its original priorities can be restored.
+ * Failing to change a priority is logged and does not prevent destroying the process.
+ * </p>
+ * <p>
+ * Instances are immutable.
+ * </p>
+ *
+ * @see ProcessUtil#destroyGracefullyAndWait(SystemProcess, long, java.util.concurrent.TimeUnit, ShutdownPriority)
+ */
+public class ShutdownPriority {
+
+  private static final Logger log = LoggerFactory.getLogger(ShutdownPriority.class);
+
+  /**
+   * Real-time I/O scheduling class.
+   */
+  public static final int IOPRIO_CLASS_RT = 1;
+
+  /**
+   * Best-effort I/O scheduling class (the default one).
+   */
+  public static final int IOPRIO_CLASS_BE = 2;
+
+  /**
+   * Idle I/O scheduling class (I/O only when no other process needs the disk).
+   */
+  public static final int IOPRIO_CLASS_IDLE = 3;
+
+  private static final int IOPRIO_CLASS_SHIFT = 13;
+
+  private static final int LOWEST_NICENESS = 19;
+
+  private final Integer niceness;
+
+  private final Integer ioPriority;
+
+  private final boolean restoreIfSurvived;
+
+  private ShutdownPriority(Integer niceness, Integer ioPriority, boolean restoreIfSurvived) {
+    this.niceness = niceness;
+    this.ioPriority = ioPriority;
+    this.restoreIfSurvived = restoreIfSurvived;
+  }
+
+  /**
+   * @return the lowest CPU priority (nice value <code>19</code>) and the idle I/O scheduling class.
+   */
+  public static ShutdownPriority lowest() {
+    return new ShutdownPriority(LOWEST_NICENESS, ioPriority(IOPRIO_CLASS_IDLE, 0), false);
+  }
+
+  /**
+   * @param ioClass the I/O scheduling class, e.g. {@link #IOPRIO_CLASS_BE}.
+   * @param level the priority level within the class (from <code>0</code> for the highest to <code>7</code> for the lowest).
+   * @return the raw I/O priority value.
+   */
+  public static int ioPriority(int ioClass, int level) {
+    if (ioClass < IOPRIO_CLASS_RT || ioClass > IOPRIO_CLASS_IDLE) {
+      throw new IllegalArgumentException("Invalid I/O scheduling class: " + ioClass);
+    }
+    if (level < 0 || level > 7) {
+      throw new IllegalArgumentException("Invalid I/O priority level: " + level);
+    }
+    return (ioClass << IOPRIO_CLASS_SHIFT) | level;
+  }
+
+  /**
+   * @param niceness the nice value (from <code>-20</code> to <code>19</code>), <code>null</code> for leaving it unchanged.
+   * @return copy of this object with the given nice value.
+   */
+  public ShutdownPriority withNiceness(Integer niceness) {
+    if (niceness != null && (niceness < -20 || niceness > LOWEST_NICENESS)) {
+      throw new IllegalArgumentException("Invalid nice value: " + niceness);
+    }
+    return new ShutdownPriority(niceness, ioPriority, restoreIfSurvived);
+  }
+
+  /**
+   * @param ioPriority the raw I/O priority value (see {@link #ioPriority(int, int)}), <code>null</code> for leaving it unchanged.
+   * @return copy of this object with the given I/O priority.
+   */
+  public ShutdownPriority withIoPriority(Integer ioPriority) {
+    return new ShutdownPriority(niceness, ioPriority, restoreIfSurvived);
+  }
+
+  /**
+   * @param restoreIfSurvived <code>true</code> if the original priorities are restored when a process does not finish after the graceful destroy operation.
+   *    Raising the CPU priority back requires the <code>CAP_SYS_NICE</code> capability (unless <code>RLIMIT_NICE</code> allows it).
+   * @return copy of this object with the given option.
+   */
+  public ShutdownPriority withRestoreIfSurvived(boolean restoreIfSurvived) {
+    return new ShutdownPriority(niceness, ioPriority, restoreIfSurvived);
+  }
+
+  public Integer getNiceness() {
+    return niceness;
+  }
+
+  public Integer getIoPriority() {
+    return ioPriority;
+  }
+
+  public boolean isRestoreIfSurvived() {
+    return restoreIfSurvived;
+  }
+
+  /**
+   * Lowers the priorities of the given process.
+   *
+   * @param process the target process.
+   * @return the original priorities.
+   */
+  Saved apply(SystemProcess process) {
+    if (SystemUtils.IS_OS_WINDOWS) {
+      log.debug("Priorities of {} are not changed on Windows", process);
+      return new Saved(new int[0]);
+    }
+    int[] pids = PidUtil.findPids(process);
+    Saved result = new Saved(pids);
+    for (int i = 0; i < pids.length; i++) {
+      UnixProcess target = new UnixProcess(pids[i]);
+      if (niceness != null) {
+        try {
+          result.niceness[i] = target.getNiceness();
+          target.setNiceness(niceness);
+        }
+        catch (IOException e) {
+          log.warn("Could not lower CPU priority of {}", pids[i], e);
+        }
+      }
+      if (ioPriority != null) {
+        try {
+          result.ioPriority[i] = target.getIoPriority();
+          target.setIoPriority(ioPriority);
+        }
+        catch (UnsupportedOperationException e) {
+          log.debug("Could not lower I/O priority of {}", pids[i], e);
+        }
+        catch (IOException e) {
+          log.warn("Could not lower I/O priority of {}", pids[i], e);
+        }
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Original priorities of processes.
+   */
+  static class Saved {
+
+    private final int[] pids;
+    private final Integer[] niceness;
+    private final Integer[] ioPriority;
+
+    private Saved(int[] pids) {
+      this.pids = pids;
+      this.niceness = new Integer[pids.length];
+      this.ioPriority = new Integer[pids.length];
+    }
+
+    /**
+     * Restores the original priorities of the processes that are still alive.
+     * The I/O priority is restored even if the niceness can't be (raising the priority again requires privileges).
+     */
+    void restore() {
+      for (int i = 0; i < pids.length; i++) {
+        UnixProcess target = new UnixProcess(pids[i]);
+        if (niceness[i] != null) {
+          try {
+            target.setNiceness(niceness[i]);
+          }
+          catch (IOException e) {
+            log.warn("Could not restore niceness of {}", pids[i], e);
+          }
+        }
+        if (ioPriority[i] != null) {
+          try {
+            target.setIoPriority(ioPriority[i]);
+          }
+          catch (IOException e) {
+            log.warn("Could not restore I/O priority of {}", pids[i], e);
+          }
+        }
+      }
+    }
+
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(niceness=" + niceness + ", ioPriority=" + ioPriority + ", restoreIfSurvived=" + restoreIfSurvived + ")";
+  }
+
+}
@@ -3,7 +3,7 @@ package org.zeroturnaround.process;
 import java.util.concurrent.TimeUnit;
 
 /**
- * Simple stopwatch implementation.
+ * Simple stopwatch implementation based on the monotonic {@link System#nanoTime()} clock.
  */
 class Stopwatch {
 
@@ -15,16 +15,16 @@ class Stopwatch {
   }
 
   public static Stopwatch createStarted() {
-    return new Stopwatch(System.currentTimeMillis());
+    return new Stopwatch(System.nanoTime());
   }
 
   public Stopwatch stop() {
-    stop = System.currentTimeMillis();
+    stop = System.nanoTime();
     return this;
   }
 
   public long elapsed(TimeUnit desiredUnit) {
-    return desiredUnit.convert(stop - start, TimeUnit.MILLISECONDS);
+    return desiredUnit.convert(stop - start, TimeUnit.NANOSECONDS);
   }
 
 }
\ No newline at end of file
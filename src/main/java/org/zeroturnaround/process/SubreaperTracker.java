@@ -0,0 +1,307 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.zeroturnaround.process.unix.LibC;
+
+import com.sun.jna.Native;
+
+/**
+ * Keeps track of all descendants of the current JVM on Linux, including the ones whose parent has exited.
+ * <p>
+ * Normally a process whose parent exits is reparented to <code>init</code> and can't be found by walking the process tree any more,
+ * e.g. the children of a shell started by the JVM.
+ * After {@link #enableSubreaper()} the JVM is a child subreaper (<code>prctl(PR_SET_CHILD_SUBREAPER)</code>),
+ * so such orphans are reparented to the JVM instead and stay its descendants.
+ * All of them are then found by following the <code>children</code> files of the JVM and its descendants
+ * without scanning the whole process table.
+ * </p>
+ * <p>
+ * Orphans adopted by the JVM become its zombies when they finish and nothing else reaps them.
+ * {@link #reap()} reaps zombie children that were already zombies on its previous call,
+ * {@link #start(long, TimeUnit)} does it periodically in a background thread.
+ * Processes started by the JVM itself are reaped right away by the JVM, so they are left alone.
+ * While the JVM is a child subreaper zombies are not considered alive by {@link UnixProcess} and {@link PidSet} either,
+ * so waiting for an orphan does not depend on reaping it.
+ * </p>
+ */
+public class SubreaperTracker {
+
+  private static final Logger log = LoggerFactory.getLogger(SubreaperTracker.class);
+
+  private final File procRoot;
+
+  private final int myPid;
+
+  /**
+   * Zombie children seen by the previous {@link #reap()}.
+   */
+  private final Set<Integer> zombies = new HashSet<Integer>();
+
+  private volatile long intervalForCheckingFinished = 100;
+
+  private ScheduledExecutorService executor;
+
+  public SubreaperTracker() {
+    this(LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param procRoot the proc file system root.
+   */
+  public SubreaperTracker(File procRoot) {
+    this.procRoot = procRoot;
+    this.myPid = PidUtil.getMyPid();
+  }
+
+  /**
+   * Makes the current JVM a child subreaper, so its orphaned descendants are reparented to it.
+   * The setting is not inherited by the child processes and stays until the JVM exits.
+   *
+   * @throws UnsupportedOperationException if it's not Linux.
+   * @throws IOException if the system call fails.
+   */
+  public static void enableSubreaper() throws IOException {
+    if (!SystemUtils.IS_OS_LINUX) {
+      throw new UnsupportedOperationException("Child subreapers are supported on Linux only.");
+    }
+    if (LibC.INSTANCE.prctl(LibC.PR_SET_CHILD_SUBREAPER, 1, 0, 0, 0) != 0) {
+      throw new IOException("prctl(PR_SET_CHILD_SUBREAPER) failed with errno " + Native.getLastError());
+    }
+    UnixProcess.checkZombies = true;
+    log.info("The JVM is now a child subreaper.");
+  }
+
+  /**
+   * Stops the current JVM from being a child subreaper, so orphans are reparented to <code>init</code> again.
+   * Orphans adopted already stay children of the JVM.
+   *
+   * @throws IOException if the system call fails.
+   */
+  public static void disableSubreaper() throws IOException {
+    if (!SystemUtils.IS_OS_LINUX) {
+      return;
+    }
+    if (LibC.INSTANCE.prctl(LibC.PR_SET_CHILD_SUBREAPER, 0, 0, 0, 0) != 0) {
+      throw new IOException("prctl(PR_SET_CHILD_SUBREAPER) failed with errno " + Native.getLastError());
+    }
+    UnixProcess.checkZombies = false;
+    log.info("The JVM is no longer a child subreaper.");
+  }
+
+  /**
+   * @return <code>true</code> if the current JVM is a child subreaper.
+   * @throws IOException if the system call fails.
+   */
+  public static boolean isSubreaper() throws IOException {
+    if (!SystemUtils.IS_OS_LINUX) {
+      return false;
+    }
+    int[] result = new int[1];
+    if (LibC.INSTANCE.prctl(LibC.PR_GET_CHILD_SUBREAPER, result, 0, 0, 0) != 0) {
+      throw new IOException("prctl(PR_GET_CHILD_SUBREAPER) failed with errno " + Native.getLastError());
+    }
+    return result[0] != 0;
+  }
+
+  public void setIntervalForCheckingFinished(long intervalForCheckingFinished) {
+    this.intervalForCheckingFinished = intervalForCheckingFinished;
+  }
+
+  /**
+   * @return PIDs of all descendants of the JVM (children before grandchildren).
+   * @throws IOException on IO error.
+   */
+  public int[] getDescendants() throws IOException {
+    int[] result = new int[16];
+    int count = 0;
+    int next = -1;
+    int parent = myPid;
+    while (true) {
+      int[] children = LinuxProcFs.listChildren(procRoot, parent);
+      if (children == null) {
+        // The kernel has no children files, fall back to scanning all processes
+        return LinuxProcFs.findDescendants(procRoot, myPid);
+      }
+      if (count + children.length > result.length) {
+        result = Arrays.copyOf(result, Math.max(count * 2, count + children.length));
+      }
+      System.arraycopy(children, 0, result, count, children.length);
+      count += children.length;
+      if (++next >= count) {
+        break;
+      }
+      parent = result[next];
+    }
+    return Arrays.copyOf(result, count);
+  }
+
+  /**
+   * @return PIDs of the descendants that have not finished yet (zombies are excluded).
+   * @throws IOException on IO error.
+   */
+  public int[] getAliveDescendants() throws IOException {
+    int[] descendants = getDescendants();
+    byte[] buffer = new byte[512];
+    int count = 0;
+    for (int pid : descendants) {
+      if (isRunning(pid, buffer)) {
+        descendants[count++] = pid;
+      }
+    }
+    return Arrays.copyOf(descendants, count);
+  }
+
+  private boolean isRunning(int pid, byte[] buffer) throws IOException {
+    return LinuxProcFs.readStat(procRoot, pid, buffer) >= 0 && !LinuxProcFs.isZombie(procRoot, pid, buffer);
+  }
+
+  /**
+   * Sends a signal to all descendants of the JVM that have not finished yet.
+   *
+   * @param signal the signal number.
+   * @return number of processes that received the signal.
+   * @throws IOException on IO error.
+   */
+  public int kill(int signal) throws IOException {
+    int result = 0;
+    for (int pid : getAliveDescendants()) {
+      if (UnixProcess.kill(pid, signal)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reaps the zombie children of the JVM that were zombies already on the previous call.
+   *
+   * @return number of processes reaped.
+   * @throws IOException on IO error.
+   */
+  public synchronized int reap() throws IOException {
+    int[] children = LinuxProcFs.listChildren(procRoot, myPid);
+    if (children == null) {
+      return 0;
+    }
+    byte[] buffer = new byte[512];
+    Set<Integer> current = new HashSet<Integer>();
+    int result = 0;
+    for (int pid : children) {
+      if (isRunning(pid, buffer)) {
+        continue;
+      }
+      if (zombies.contains(pid)) {
+        if (LibC.INSTANCE.waitpid(pid, new int[1], LibC.WNOHANG) == pid) {
+          log.debug("Reaped orphan {}", pid);
+          result++;
+          continue;
+        }
+      }
+      current.add(pid);
+    }
+    zombies.clear();
+    zombies.addAll(current);
+    return result;
+  }
+
+  /**
+   * Starts reaping the adopted orphans in a background thread.
+   *
+   * @param interval time between the calls of {@link #reap()}, a zombie is reaped within two intervals.
+   * @param unit the time unit of the interval argument.
+   */
+  public synchronized void start(long interval, TimeUnit unit) {
+    if (executor != null) {
+      throw new IllegalStateException("Already started");
+    }
+    executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+      @Override
+      public Thread newThread(Runnable r) {
+        Thread thread = new Thread(r, "subreaper-tracker");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    executor.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          reap();
+        }
+        catch (Exception e) {
+          log.error("Failed to reap the orphans", e);
+        }
+      }
+    }, 0, interval, unit);
+  }
+
+  /**
+   * Stops the background thread started by {@link #start(long, TimeUnit)}.
+   */
+  public synchronized void stop() {
+    if (executor != null) {
+      executor.shutdownNow();
+      executor = null;
+    }
+  }
+
+  /**
+   * Destroys all descendants of the JVM gracefully and the remaining ones forcefully,
+   * waiting until they finish or the timeout is reached (half of it is used for the graceful step).
+   * Adopted orphans are reaped.
+   * <p>
+   * Notice that this destroys every descendant, not only the adopted orphans:
+   * also the processes started by the JVM itself and their children.
+   * </p>
+   *
+   * @param timeout the maximum time to wait.
+   * @param unit the time unit of the timeout argument.
+   * @return <code>true</code> if all descendants have finished.
+   * @throws IOException on IO error.
+   * @throws InterruptedException if the current thread was interrupted.
+   */
+  public boolean destroyAll(long timeout, TimeUnit unit) throws IOException, InterruptedException {
+    Deadline deadline = Deadline.after(timeout, unit);
+    Deadline gracefulDeadline = deadline.split(1, 1)[0];
+    int count = kill(LibC.SIGTERM);
+    log.info("Destroying {} descendants gracefully.", count);
+    if (waitFor(gracefulDeadline)) {
+      return true;
+    }
+    count = kill(LibC.SIGKILL);
+    log.info("Could not destroy {} descendants gracefully, trying forcefully.", count);
+    return waitFor(deadline);
+  }
+
+  private boolean waitFor(Deadline deadline) throws IOException, InterruptedException {
+    while (true) {
+      reap();
+      if (getAliveDescendants().length == 0) {
+        reap();
+        return true;
+      }
+      if (deadline.isExpired()) {
+        return false;
+      }
+      Thread.sleep(Math.min(intervalForCheckingFinished, Math.max(1, deadline.remaining(TimeUnit.MILLISECONDS))));
+    }
+  }
+
+  @Override
+  public String toString() {
+    return getClass().getSimpleName() + "(" + myPid + ")";
+  }
+
+}
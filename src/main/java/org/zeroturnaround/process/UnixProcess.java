@@ -2,7 +2,10 @@ package org.zeroturnaround.process;
 
 import java.io.IOException;
 
+import org.apache.commons.lang3.SystemUtils;
+
 import com.sun.jna.Native;
+import com.sun.jna.Platform;
 import org.zeroturnaround.process.unix.LibC;
 
 /**
@@ -10,28 +13,335 @@ import org.zeroturnaround.process.unix.LibC;
  * <p>
  * It uses the <code>getpgid</code> system call for checking the status and the <code>kill</code> one for
  * destroying the process.
+ * While the JVM is a child subreaper (see {@link SubreaperTracker#enableSubreaper()}) a zombie on Linux
+ * (a process that has finished but has not been reaped by its parent yet) is not considered alive.
+ * </p>
+ * <p>
+ * On Linux 5.15 or later destroying forcefully can also reclaim the memory of the killed process right away
+ * using the <code>process_mrelease</code> system call instead of leaving it to the exiting process itself.
+ * Enable it with {@link #setReleaseMemoryOnKill(boolean)}.
  * </p>
  */
 public class UnixProcess extends PidProcess {
 
+  /**
+   * <code>false</code> once the system call is found to be unavailable.
+   */
+  private static volatile boolean memoryReleaseSupported = SystemUtils.IS_OS_LINUX;
+
+  /**
+   * <code>true</code> while the JVM is a child subreaper, so finished orphans may stay its zombies until they are reaped.
+   */
+  static volatile boolean checkZombies;
+
+  /**
+   * <code>true</code> if destroying forcefully also releases the memory of the process.
+   */
+  private volatile boolean releaseMemoryOnKill;
+
+  /**
+   * Start time of the process in clock ticks after the boot, <code>-1</code> if it's not checked.
+   */
+  private final long startTime;
+
   public UnixProcess(int pid) {
+    this(pid, -1);
+  }
+
+  /**
+   * Creates an instance that checks the start time of the process (Linux only, see {@link ProcessInfo#getStartTime()}).
+   * Once the PID has a different start time, its process has finished and the PID has been reused by another process,
+   * so this process is not alive and no signals are sent to the PID any more.
+   *
+   * @param pid the process ID.
+   * @param startTime start time in clock ticks after the system boot, <code>-1</code> for not checking it.
+   */
+  public UnixProcess(int pid, long startTime) {
     super(pid);
+    this.startTime = startTime;
+  }
+
+  public boolean isReleaseMemoryOnKill() {
+    return releaseMemoryOnKill;
+  }
+
+  /**
+   * @param releaseMemoryOnKill <code>true</code> if destroying forcefully should also release the memory of the process
+   *    (see {@link #killAndReleaseMemory()}).
+   */
+  public void setReleaseMemoryOnKill(boolean releaseMemoryOnKill) {
+    this.releaseMemoryOnKill = releaseMemoryOnKill;
   }
 
   public boolean isAlive() throws IOException {
-    if (LibC.INSTANCE.getpgid(pid) != -1) {
-      return true;
-    }
-    int errno = Native.getLastError();
-    if (errno == LibC.ESRCH) {
+    return isAlive(pid) && !isReplaced();
+  }
+
+  /**
+   * @return <code>true</code> if the start time is checked and the PID now belongs to another process.
+   */
+  private boolean isReplaced() throws IOException {
+    if (startTime < 0) {
       return false;
     }
-    throw new IOException("Error getting target process group - errno = " + errno);
+    long current = LinuxProcFs.readStartTime(LinuxProcFs.DEFAULT_ROOT, pid, new byte[512]);
+    if (current >= 0 && current != startTime) {
+      log.debug("Process {} has a different start time {} instead of {}, its PID was reused", pid, current, startTime);
+      return true;
+    }
+    return false;
   }
 
   @Override
   public void destroy(boolean forceful) throws IOException {
-    kill(forceful ? LibC.SIGKILL : LibC.SIGTERM);
+    if (forceful && releaseMemoryOnKill) {
+      killAndReleaseMemory();
+    }
+    else {
+      kill(forceful ? LibC.SIGKILL : LibC.SIGTERM);
+    }
+  }
+
+  /**
+   * Kills this process forcefully and reclaims its memory using the <code>process_mrelease</code> system call.
+   * <p>
+   * This returns after the address space of the process has been torn down, so a large process no longer keeps
+   * the host under memory pressure while it's exiting.
+   * If the system call is not supported (other systems than Linux 5.15 or later) the process is just killed.
+   * </p>
+   *
+   * @return time it took to release the memory in nanoseconds,
+   *    <code>-1</code> if it's not supported or this process was not found (any more).
+   *
+   * @throws IOException on system call error while killing the process.
+   */
+  public long killAndReleaseMemory() throws IOException {
+    return releaseMemory(killForMemoryRelease());
+  }
+
+  /**
+   * Kills this process forcefully, through a pidfd if possible,
+   * so the signal can't reach another process that has reused the PID since the pidfd was opened.
+   * The memory is released by {@link #releaseMemory(int)} afterwards,
+   * so multiple processes can be killed first and released then.
+   *
+   * @return the pidfd for releasing the memory,
+   *    <code>-1</code> if the memory can't be released (it's not supported or this process was not found any more).
+   *
+   * @throws IOException on system call error while killing the process.
+   */
+  int killForMemoryRelease() throws IOException {
+    if (!memoryReleaseSupported) {
+      kill(LibC.SIGKILL);
+      return -1;
+    }
+    int pidfd = (int) LibC.INSTANCE.syscall(LibC.SYS_PIDFD_OPEN, pid, 0);
+    if (pidfd == -1) {
+      int errno = Native.getLastError();
+      if (errno == LibC.ESRCH) {
+        return -1;
+      }
+      if (errno == LibC.ENOSYS) {
+        unsupportedMemoryRelease();
+      }
+      else {
+        log.debug("Could not open pidfd of {} - errno = {}", pid, errno);
+      }
+      kill(LibC.SIGKILL);
+      return -1;
+    }
+    // The pidfd refers to the process that had the PID when it was opened, so it can be checked without a race
+    if (isReplaced()) {
+      LibC.INSTANCE.close(pidfd);
+      return -1;
+    }
+    if (LibC.INSTANCE.syscall(LibC.SYS_PIDFD_SEND_SIGNAL, pidfd, LibC.SIGKILL, null, 0) == -1) {
+      int errno = Native.getLastError();
+      LibC.INSTANCE.close(pidfd);
+      if (errno == LibC.ESRCH) {
+        return -1;
+      }
+      throw new IOException("Error killing target process with pidfd - errno = " + errno);
+    }
+    return pidfd;
+  }
+
+  /**
+   * Releases the memory of this process killed by {@link #killForMemoryRelease()} and closes the pidfd.
+   *
+   * @param pidfd the pidfd, <code>-1</code> if there's none.
+   * @return time it took to release the memory in nanoseconds, <code>-1</code> if no memory was released.
+   */
+  long releaseMemory(int pidfd) {
+    if (pidfd < 0) {
+      return -1;
+    }
+    try {
+      long start = System.nanoTime();
+      if (LibC.INSTANCE.syscall(LibC.SYS_PROCESS_MRELEASE, pidfd, 0) == -1) {
+        int errno = Native.getLastError();
+        if (errno == LibC.ENOSYS) {
+          unsupportedMemoryRelease();
+        }
+        else if (errno != LibC.ESRCH) {
+          // The process was killed anyway, so this is not an error
+          log.debug("Could not release memory of {} - errno = {}", pid, errno);
+        }
+        return -1;
+      }
+      long result = System.nanoTime() - start;
+      log.debug("Released memory of {} in {} ms", pid, result / 1000000);
+      return result;
+    }
+    finally {
+      LibC.INSTANCE.close(pidfd);
+    }
+  }
+
+  private void unsupportedMemoryRelease() {
+    log.debug("process_mrelease is not supported, killing without releasing memory");
+    memoryReleaseSupported = false;
+  }
+
+  /**
+   * Reads the Linux OOM killer score adjustment of this process.
+   *
+   * @return the score adjustment (from <code>-1000</code> to <code>1000</code>).
+   * @throws IOException on IO error or if this process was not found.
+   */
+  public int getOomScoreAdj() throws IOException {
+    return LinuxProcFs.readOomScoreAdj(LinuxProcFs.DEFAULT_ROOT, pid);
+  }
+
+  /**
+   * Changes the Linux OOM killer score adjustment of this process.
+   * Processes with higher values are killed first when the system runs out of memory.
+   * Lowering the value requires the <code>CAP_SYS_RESOURCE</code> capability.
+   *
+   * @param score the score adjustment (from <code>-1000</code> to <code>1000</code>).
+   * @return <code>true</code> if the score was changed, <code>false</code> if this process was not found (any more).
+   * @throws IOException on IO error.
+   */
+  public boolean setOomScoreAdj(int score) throws IOException {
+    return LinuxProcFs.writeOomScoreAdj(LinuxProcFs.DEFAULT_ROOT, pid, OomScorePolicy.checkScore(score));
+  }
+
+  /**
+   * Reads the scheduling priority (nice value) of this process.
+   *
+   * @return the nice value (from <code>-20</code> to <code>19</code>).
+   * @throws IOException on system call error or if this process was not found.
+   */
+  public int getNiceness() throws IOException {
+    Native.setLastError(0);
+    int result = LibC.INSTANCE.getpriority(LibC.PRIO_PROCESS, pid);
+    if (result == -1) {
+      int errno = Native.getLastError();
+      if (errno != 0) {
+        throw new IOException("Error getting priority of target process - errno = " + errno);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Changes the scheduling priority (nice value) of this process.
+   * On Linux it applies to all threads of the process.
+   * Lowering the value requires the <code>CAP_SYS_NICE</code> capability.
+   *
+   * @param niceness the nice value (from <code>-20</code> to <code>19</code>).
+   * @return <code>true</code> if the priority was changed, <code>false</code> if this process was not found (any more).
+   * @throws IOException on system call error.
+   */
+  public boolean setNiceness(int niceness) throws IOException {
+    boolean result = false;
+    for (int tid : threads()) {
+      if (LibC.INSTANCE.setpriority(LibC.PRIO_PROCESS, tid, niceness) != -1) {
+        result = true;
+        continue;
+      }
+      int errno = Native.getLastError();
+      if (errno != LibC.ESRCH) {
+        throw new IOException("Error setting priority of target process to " + niceness + " - errno = " + errno);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Reads the Linux I/O scheduling priority of this process.
+   *
+   * @return the raw I/O priority value (see {@link ShutdownPriority#ioPriority(int, int)}).
+   * @throws IOException on system call error or if this process was not found.
+   * @throws UnsupportedOperationException if it's not supported on this system.
+   */
+  public int getIoPriority() throws IOException {
+    long result = LibC.INSTANCE.syscall(ioprioSyscall(false), LibC.IOPRIO_WHO_PROCESS, pid);
+    if (result == -1) {
+      throw new IOException("Error getting I/O priority of target process - errno = " + Native.getLastError());
+    }
+    return (int) result;
+  }
+
+  /**
+   * Changes the Linux I/O scheduling priority of all threads of this process.
+   * Raising the priority to the real-time class requires the <code>CAP_SYS_ADMIN</code> capability.
+   *
+   * @param ioPriority the raw I/O priority value (see {@link ShutdownPriority#ioPriority(int, int)}).
+   * @return <code>true</code> if the priority was changed, <code>false</code> if this process was not found (any more).
+   * @throws IOException on system call error.
+   * @throws UnsupportedOperationException if it's not supported on this system.
+   */
+  public boolean setIoPriority(int ioPriority) throws IOException {
+    long number = ioprioSyscall(true);
+    boolean result = false;
+    for (int tid : threads()) {
+      if (LibC.INSTANCE.syscall(number, LibC.IOPRIO_WHO_PROCESS, tid, ioPriority) != -1) {
+        result = true;
+        continue;
+      }
+      int errno = Native.getLastError();
+      if (errno != LibC.ESRCH) {
+        throw new IOException("Error setting I/O priority of target process to " + ioPriority + " - errno = " + errno);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Linux applies the nice value and I/O priority per thread.
+   *
+   * @return the threads of this process, only the process itself if they can't be listed.
+   */
+  private int[] threads() {
+    if (SystemUtils.IS_OS_LINUX) {
+      int[] result = LinuxProcFs.listThreads(LinuxProcFs.DEFAULT_ROOT, pid);
+      if (result.length > 0) {
+        return result;
+      }
+    }
+    return new int[] { pid };
+  }
+
+  /**
+   * Unlike newer system calls <code>ioprio_set</code> and <code>ioprio_get</code> have different numbers on each architecture.
+   */
+  private static long ioprioSyscall(boolean set) {
+    if (SystemUtils.IS_OS_LINUX) {
+      if (Platform.isIntel()) {
+        if (Platform.is64Bit()) {
+          return set ? 251 : 252;
+        }
+        return set ? 289 : 290;
+      }
+      if (Platform.isARM()) {
+        if (Platform.is64Bit()) {
+          return set ? 30 : 31;
+        }
+        return set ? 314 : 315;
+      }
+    }
+    throw new UnsupportedOperationException("I/O priorities are not supported on this system.");
   }
 
   /**
@@ -43,6 +353,60 @@ public class UnixProcess extends PidProcess {
    * @throws IOException on system call error.
    */
   public boolean kill(int signal) throws IOException {
+    if (isReplaced()) {
+      return false;
+    }
+    return kill(pid, signal);
+  }
+
+  /**
+   * Tests whether the given process is alive.
+   *
+   * @param pid the process ID.
+   * @return <code>true</code> if the process is alive, <code>false</code> if it was not found (any more)
+   *    or it's a zombie while the JVM is a child subreaper.
+   *
+   * @throws IOException on system call error.
+   */
+  static boolean isAlive(int pid) throws IOException {
+    return isAlive(pid, null);
+  }
+
+  /**
+   * Tests whether the given process is alive.
+   *
+   * @param pid the process ID.
+   * @param buffer buffer for reading the <code>stat</code> file when zombies are checked, <code>null</code> to allocate one if needed.
+   * @return <code>true</code> if the process is alive, <code>false</code> if it was not found (any more)
+   *    or it's a zombie while the JVM is a child subreaper.
+   *
+   * @throws IOException on system call error.
+   */
+  static boolean isAlive(int pid, byte[] buffer) throws IOException {
+    if (LibC.INSTANCE.getpgid(pid) != -1) {
+      if (!checkZombies) {
+        return true;
+      }
+      // A zombie has finished, it's only waiting to be reaped (e.g. an orphan adopted by the JVM)
+      return !LinuxProcFs.isZombie(LinuxProcFs.DEFAULT_ROOT, pid, buffer == null ? new byte[512] : buffer);
+    }
+    int errno = Native.getLastError();
+    if (errno == LibC.ESRCH) {
+      return false;
+    }
+    throw new IOException("Error getting target process group - errno = " + errno);
+  }
+
+  /**
+   * Sends a signal to the given process.
+   *
+   * @param pid the process ID.
+   * @param signal name of the signal.
+   * @return <code>true</code> if the process received the signal, <code>false</code> if the process was not found (any more).
+   *
+   * @throws IOException on system call error.
+   */
+  static boolean kill(int pid, int signal) throws IOException {
     if (LibC.INSTANCE.kill(pid, signal) != -1) {
       return true;
     }
@@ -0,0 +1,225 @@
+package org.zeroturnaround.process;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+
+import org.zeroturnaround.process.unix.LibC;
+
+/**
+ * Represents a Linux process together with all its descendants.
+ * <p>
+ * The descendants are found by scanning the <code>/proc</code> file system.
+ * They are signaled using {@link UnixProcess#kill(int)} system calls.
+ * </p>
+ * <p>
+ * Destroying the tree forcefully first freezes it, so it converges even if the processes keep forking:
+ * all members get <code>SIGSTOP</code> and the tree is scanned again until no new members appear
+ * (a stopped process can't fork any more).
+ * After that all frozen members get <code>SIGKILL</code> followed by <code>SIGCONT</code> in one sweep.
+ * The number of scans is limited by {@link #setMaxFreezeRounds(int)} so the time it takes is bounded.
+ * </p>
+ * <p>
+ * The tree is considered alive as long as the root process or any member found by the last destroy operation is alive.
+ * Processes orphaned before the tree is scanned are no longer found as they are reparented.
+ * If the root is the current JVM only its descendants are signaled.
+ * </p>
+ */
+public class UnixProcessTree extends PidProcess {
+
+  private static final int DEFAULT_MAX_FREEZE_ROUNDS = 50;
+
+  private final File procRoot;
+
+  private volatile int maxFreezeRounds = DEFAULT_MAX_FREEZE_ROUNDS;
+
+  private volatile boolean freezeBeforeKill = true;
+
+  /**
+   * Members found by the last destroy operation (not including the root process).
+   */
+  private volatile int[] members = new int[0];
+
+  public UnixProcessTree(int pid) {
+    this(pid, LinuxProcFs.DEFAULT_ROOT);
+  }
+
+  /**
+   * @param pid the root process ID.
+   * @param procRoot the proc file system root.
+   */
+  public UnixProcessTree(int pid, File procRoot) {
+    super(pid);
+    this.procRoot = procRoot;
+  }
+
+  public int getMaxFreezeRounds() {
+    return maxFreezeRounds;
+  }
+
+  /**
+   * @param maxFreezeRounds maximum number of scans for new members while freezing the tree before killing it.
+   */
+  public void setMaxFreezeRounds(int maxFreezeRounds) {
+    if (maxFreezeRounds < 1) {
+      throw new IllegalArgumentException("At least one round is required: " + maxFreezeRounds);
+    }
+    this.maxFreezeRounds = maxFreezeRounds;
+  }
+
+  public boolean isFreezeBeforeKill() {
+    return freezeBeforeKill;
+  }
+
+  /**
+   * @param freezeBeforeKill <code>false</code> if destroying forcefully should signal the members found by a single scan without freezing the tree first.
+   */
+  public void setFreezeBeforeKill(boolean freezeBeforeKill) {
+    this.freezeBeforeKill = freezeBeforeKill;
+  }
+
+  /**
+   * @return the current descendant process IDs (children before grandchildren), not including the root process.
+   * @throws IOException on IO error.
+   */
+  public int[] getDescendants() throws IOException {
+    if (!LinuxProcFs.isSupported(procRoot)) {
+      throw new UnsupportedOperationException(procRoot + " not found");
+    }
+    return LinuxProcFs.findDescendants(procRoot, pid);
+  }
+
+  @Override
+  public boolean isAlive() throws IOException {
+    if (!isMyPid(pid) && UnixProcess.isAlive(pid)) {
+      return true;
+    }
+    for (int member : members) {
+      if (UnixProcess.isAlive(member)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void destroy(boolean forceful) throws IOException {
+    if (forceful && freezeBeforeKill) {
+      freezeAndKill();
+    }
+    else {
+      kill(forceful ? LibC.SIGKILL : LibC.SIGTERM);
+    }
+  }
+
+  /**
+   * Sends a signal to the root process and all its current descendants.
+   * Processes forked after the scan do not receive the signal.
+   *
+   * @param signal name of the signal.
+   * @return number of processes that received the signal.
+   *
+   * @throws IOException on IO or system call error.
+   */
+  public int kill(int signal) throws IOException {
+    int[] descendants = withoutMyPid(getDescendants());
+    members = descendants;
+    int result = signalRoot(signal) ? 1 : 0;
+    for (int member : descendants) {
+      if (UnixProcess.kill(member, signal)) {
+        result++;
+      }
+    }
+    return result;
+  }
+
+  private void freezeAndKill() throws IOException {
+    // The root goes first so it can't fork while we scan
+    signalRoot(LibC.SIGSTOP);
+    int[] frozen = new int[0];
+    int rounds = 0;
+    while (true) {
+      rounds++;
+      int[] found = withoutMyPid(getDescendants());
+      int[] added = subtract(found, frozen);
+      for (int member : added) {
+        UnixProcess.kill(member, LibC.SIGSTOP);
+      }
+      frozen = union(frozen, added);
+      members = frozen;
+      if (added.length == 0) {
+        log.debug("Froze {} descendants of {} in {} rounds", frozen.length, pid, rounds);
+        break;
+      }
+      if (rounds >= maxFreezeRounds) {
+        log.warn("{} descendants of {} were still forking after {} rounds, killing them anyway", frozen.length, pid, rounds);
+        break;
+      }
+    }
+    signalRoot(LibC.SIGKILL);
+    for (int member : frozen) {
+      UnixProcess.kill(member, LibC.SIGKILL);
+    }
+    signalRoot(LibC.SIGCONT);
+    for (int member : frozen) {
+      UnixProcess.kill(member, LibC.SIGCONT);
+    }
+  }
+
+  /**
+   * Signals the root process unless it's our own JVM (in which case only the descendants are destroyed).
+   */
+  private boolean signalRoot(int signal) throws IOException {
+    return !isMyPid(pid) && UnixProcess.kill(pid, signal);
+  }
+
+  private static boolean isMyPid(int pid) {
+    return pid == PidUtil.getMyPid();
+  }
+
+  /**
+   * Our own JVM must never be stopped (e.g. if it's a descendant of the given root).
+   */
+  private static int[] withoutMyPid(int[] pids) {
+    for (int i = 0; i < pids.length; i++) {
+      if (isMyPid(pids[i])) {
+        int[] result = new int[pids.length - 1];
+        System.arraycopy(pids, 0, result, 0, i);
+        System.arraycopy(pids, i + 1, result, i, result.length - i);
+        return result;
+      }
+    }
+    return pids;
+  }
+
+  /**
+   * @param sorted values in ascending order.
+   * @return values from <code>values</code> that are not in <code>sorted</code>.
+   */
+  private static int[] subtract(int[] values, int[] sorted) {
+    int[] result = new int[values.length];
+    int size = 0;
+    for (int value : values) {
+      if (Arrays.binarySearch(sorted, value) < 0) {
+        result[size++] = value;
+      }
+    }
+    return Arrays.copyOf(result, size);
+  }
+
+  /**
+   * @return both arrays combined in ascending order.
+   */
+  private static int[] union(int[] sorted, int[] added) {
+    int[] result = Arrays.copyOf(sorted, sorted.length + added.length);
+    System.arraycopy(added, 0, result, sorted.length, added.length);
+    Arrays.sort(result);
+    return result;
+  }
+
+  @Override
+  public String getDescription() {
+    return pid + " and its descendants";
+  }
+
+}
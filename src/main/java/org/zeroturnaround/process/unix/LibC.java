@@ -2,6 +2,9 @@ package org.zeroturnaround.process.unix;
 
 import com.sun.jna.Library;
 import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import com.sun.jna.ptr.PointerByReference;
 
 public interface LibC extends Library {
 
@@ -9,12 +12,53 @@ public interface LibC extends Library {
 
   /* errnos */
   int ESRCH = 3; /* No such process */
+  int EINVAL = 22; /* Invalid argument */
+  int ERANGE = 34; /* Result too large */
+  int ENOSYS = 38; /* Function not implemented (Linux value) */
 
   /* signals */
   int SIGKILL = 9;
   int SIGTERM = 15;
+  /* Linux values, they differ on other UNIX systems */
+  int SIGCONT = 18;
+  int SIGSTOP = 19;
+
+  /* Linux system call numbers, shared by all architectures for system calls added since 5.1 */
+  int SYS_PIDFD_SEND_SIGNAL = 424;
+  int SYS_PIDFD_OPEN = 434;
+  int SYS_PROCESS_MRELEASE = 448;
+
+  /* setpriority/getpriority */
+  int PRIO_PROCESS = 0;
+
+  /* ioprio_set/ioprio_get */
+  int IOPRIO_WHO_PROCESS = 1;
+
+  /* prctl options (Linux) */
+  int PR_SET_CHILD_SUBREAPER = 36;
+  int PR_GET_CHILD_SUBREAPER = 37;
+
+  /* sysconf names (Linux) */
+  int _SC_CLK_TCK = 2;
+
+  /* waitpid options */
+  int WNOHANG = 1;
 
   int kill(int pid, int signal);
   int getpgid(int pid);
 
+  int getpriority(int which, int who);
+  int setpriority(int which, int who, int prio);
+
+  int getpagesize();
+  int getpwuid_r(int uid, Pointer pwd, Pointer buf, NativeLong buflen, PointerByReference result);
+  long sysconf(int name);
+
+  long syscall(long number, Object... args);
+  int close(int fd);
+
+  int prctl(int option, long arg2, long arg3, long arg4, long arg5);
+  int prctl(int option, int[] arg2, long arg3, long arg4, long arg5);
+  int waitpid(int pid, int[] status, int options);
+
 }
@@ -0,0 +1,136 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.AdaptiveTimeout;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+
+public class AdaptiveTimeoutTest extends Assert {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Process process;
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      Processes.newPidProcess(process).destroyForcefully();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testDefaultUntilEnoughSamples() throws Exception {
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    timeouts.setDefaultTimeout(7, TimeUnit.SECONDS);
+    timeouts.record("web", 100, TimeUnit.MILLISECONDS);
+    assertEquals(7, timeouts.getGracefulTimeout("web", TimeUnit.SECONDS));
+    assertEquals(7, timeouts.getGracefulTimeout("db", TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testPercentile() throws Exception {
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    timeouts.setPercentile(90);
+    timeouts.setMargin(500, TimeUnit.MILLISECONDS);
+    timeouts.setBounds(0, 1, TimeUnit.MINUTES);
+    for (int i = 1; i <= 100; i++) {
+      timeouts.record("web", i * 100, TimeUnit.MILLISECONDS);
+    }
+    long timeout = timeouts.getGracefulTimeout("web", TimeUnit.MILLISECONDS);
+    // 90th percentile is 9 seconds, overestimated by at most 10%
+    assertTrue("Timeout " + timeout, timeout >= 9500 && timeout <= 9900 + 500);
+  }
+
+  @Test
+  public void testBounds() throws Exception {
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    timeouts.setBounds(2, 10, TimeUnit.SECONDS);
+    for (int i = 0; i < 10; i++) {
+      timeouts.record("fast", 1, TimeUnit.MILLISECONDS);
+      timeouts.record("slow", 1, TimeUnit.HOURS);
+    }
+    assertEquals(2, timeouts.getGracefulTimeout("fast", TimeUnit.SECONDS));
+    assertEquals(10, timeouts.getGracefulTimeout("slow", TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testDecay() throws Exception {
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    for (int i = 0; i < AdaptiveTimeout.MAX_SAMPLES; i++) {
+      timeouts.record("web", 100, TimeUnit.MILLISECONDS);
+    }
+    assertEquals(AdaptiveTimeout.MAX_SAMPLES / 2, timeouts.getSampleCount("web"));
+  }
+
+  @Test
+  public void testDecayKeepsRareSlowSample() throws Exception {
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    timeouts.setPercentile(100);
+    timeouts.setMargin(0, TimeUnit.SECONDS);
+    timeouts.setBounds(0, 2, TimeUnit.MINUTES);
+    timeouts.record("web", 60, TimeUnit.SECONDS);
+    for (int i = 1; i < AdaptiveTimeout.MAX_SAMPLES; i++) {
+      timeouts.record("web", 100, TimeUnit.MILLISECONDS);
+    }
+    // The slow sample is halved but not dropped
+    assertTrue(timeouts.getGracefulTimeout("web", TimeUnit.SECONDS) >= 60);
+  }
+
+  @Test
+  public void testPersistence() throws Exception {
+    File file = new File(folder.getRoot(), "history.properties");
+    AdaptiveTimeout timeouts = new AdaptiveTimeout(file);
+    timeouts.setMargin(0, TimeUnit.SECONDS);
+    timeouts.setBounds(0, 1, TimeUnit.MINUTES);
+    for (int i = 0; i < 10; i++) {
+      timeouts.record("web service", 3, TimeUnit.SECONDS);
+    }
+    timeouts.save();
+    assertTrue(file.isFile());
+
+    AdaptiveTimeout restored = new AdaptiveTimeout(file);
+    restored.setMargin(0, TimeUnit.SECONDS);
+    restored.setBounds(0, 1, TimeUnit.MINUTES);
+    assertEquals(10, restored.getSampleCount("web service"));
+    assertEquals(timeouts.getGracefulTimeout("web service", TimeUnit.MILLISECONDS), restored.getGracefulTimeout("web service", TimeUnit.MILLISECONDS));
+  }
+
+  @Test(timeout = 15000)
+  public void testSavedInBackground() throws Exception {
+    File file = new File(folder.getRoot(), "history.properties");
+    AdaptiveTimeout timeouts = new AdaptiveTimeout(file);
+    timeouts.setSaveDelay(200, TimeUnit.MILLISECONDS);
+    for (int i = 0; i < 10; i++) {
+      timeouts.record("web", 3, TimeUnit.SECONDS);
+    }
+    // All samples recorded in a burst are saved at once
+    while (!file.isFile()) {
+      Thread.sleep(10);
+    }
+    assertEquals(10, new AdaptiveTimeout(file).getSampleCount("web"));
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyRecordsDuration() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    AdaptiveTimeout timeouts = new AdaptiveTimeout();
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(pidProcess, timeouts, "sleep", 10, TimeUnit.SECONDS);
+    assertFalse(pidProcess.isAlive());
+    assertEquals(1, timeouts.getSampleCount("sleep"));
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.CgroupProcess;
+
+/**
+ * Tests {@link CgroupProcess} against a temporary directory standing in for the cgroup file system.
+ */
+public class CgroupProcessTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Rule
+  public final TemporaryFolder root = new TemporaryFolder();
+
+  private File createGroup(String populated) throws Exception {
+    File dir = root.newFolder("system.slice", "test.service");
+    setPopulated(dir, populated);
+    FileUtils.writeStringToFile(new File(dir, "cgroup.procs"), "", ASCII);
+    return dir;
+  }
+
+  private static void setPopulated(File dir, String populated) throws Exception {
+    // Like the kernel, replace the content in a single write without truncating so a concurrent reader never sees an empty file
+    dir.mkdirs();
+    RandomAccessFile file = new RandomAccessFile(new File(dir, "cgroup.events"), "rw");
+    try {
+      file.write(("populated " + populated + "\nfrozen 0\n").getBytes(ASCII));
+    }
+    finally {
+      file.close();
+    }
+  }
+
+  @Test
+  public void testIsAlive() throws Exception {
+    File dir = createGroup("1");
+    CgroupProcess process = new CgroupProcess(root.getRoot(), "system.slice/test.service");
+    assertTrue(process.isAlive());
+    setPopulated(dir, "0");
+    assertFalse(process.isAlive());
+  }
+
+  @Test
+  public void testRemoved() throws Exception {
+    CgroupProcess process = new CgroupProcess(root.getRoot(), "missing");
+    assertFalse(process.isAlive());
+    assertEquals(0, process.getPids().length);
+    assertTrue(process.waitFor(0, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testGetPids() throws Exception {
+    File dir = createGroup("1");
+    FileUtils.writeStringToFile(new File(dir, "cgroup.procs"), "12\n345\n", ASCII);
+    assertArrayEquals(new int[] { 12, 345 }, new CgroupProcess(dir).getPids());
+  }
+
+  @Test
+  public void testGetPidsOfDescendantGroups() throws Exception {
+    createGroup("1");
+    File slice = new File(root.getRoot(), "system.slice");
+    // A non-leaf group has no members of its own
+    FileUtils.writeStringToFile(new File(slice, "cgroup.procs"), "", ASCII);
+    setPopulated(slice, "1");
+    FileUtils.writeStringToFile(new File(slice, "test.service/cgroup.procs"), "12\n", ASCII);
+    File other = new File(slice, "other.service");
+    setPopulated(other, "1");
+    FileUtils.writeStringToFile(new File(other, "cgroup.procs"), "345\n", ASCII);
+    int[] pids = new CgroupProcess(slice).getPids();
+    Arrays.sort(pids);
+    assertArrayEquals(new int[] { 12, 345 }, pids);
+  }
+
+  @Test
+  public void testDestroyForcefullyWritesKill() throws Exception {
+    File dir = createGroup("1");
+    File kill = new File(dir, "cgroup.kill");
+    FileUtils.writeStringToFile(kill, "", ASCII);
+    new CgroupProcess(dir).destroyForcefully();
+    assertEquals("1", FileUtils.readFileToString(kill, ASCII));
+  }
+
+  @Test
+  public void testWaitWithTimeoutExceeds() throws Exception {
+    File dir = createGroup("1");
+    CgroupProcess process = new CgroupProcess(dir);
+    assertFalse(process.waitFor(200, TimeUnit.MILLISECONDS));
+  }
+
+  @Test(timeout = 5000)
+  public void testWaitForEvent() throws Exception {
+    // Other platforms may implement the watch service by polling
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    final File dir = createGroup("1");
+    CgroupProcess process = new CgroupProcess(dir);
+    // Don't rely on polling
+    process.setIntervalForCheckingFinished(TimeUnit.MINUTES.toMillis(1));
+    Thread emptier = new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(500);
+          setPopulated(dir, "0");
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    };
+    emptier.start();
+    assertTrue(process.waitFor(4, TimeUnit.SECONDS));
+    emptier.join();
+  }
+
+}
@@ -0,0 +1,73 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.zeroturnaround.process.Deadline;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+
+public class DeadlineTest extends Assert {
+
+  private Process process;
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      Processes.newPidProcess(process).destroyForcefully();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testSplit() throws Exception {
+    Deadline deadline = Deadline.after(100, TimeUnit.SECONDS);
+    Deadline[] stages = deadline.split(3, 1);
+    assertEquals(2, stages.length);
+    long graceful = stages[0].remaining(TimeUnit.SECONDS);
+    assertTrue(graceful >= 74 && graceful <= 75);
+    assertSame(deadline, stages[1]);
+    assertSame(stages[0], deadline.min(stages[0]));
+    assertSame(stages[0], stages[0].min(deadline));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testSplitNegative() throws Exception {
+    Deadline.after(1, TimeUnit.SECONDS).split(1, -1);
+  }
+
+  @Test
+  public void testExpired() throws Exception {
+    Deadline deadline = Deadline.after(-1, TimeUnit.SECONDS);
+    assertTrue(deadline.isExpired());
+    assertEquals(0, deadline.remaining(TimeUnit.NANOSECONDS));
+    assertFalse(Deadline.after(1, TimeUnit.DAYS).isExpired());
+    assertFalse(Deadline.after(Long.MAX_VALUE, TimeUnit.DAYS).isExpired());
+  }
+
+  @Test(timeout = 15000)
+  public void testBudget() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    process = StubbornProcessFactory.createStubbornProcess();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    Deadline deadline = Deadline.after(5, TimeUnit.SECONDS);
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(pidProcess, deadline, 0.2);
+    assertFalse(pidProcess.isAlive());
+    long remaining = deadline.remaining(TimeUnit.MILLISECONDS);
+    assertTrue("Remaining " + remaining + " ms", remaining > 2000);
+  }
+
+  @Test(expected = TimeoutException.class)
+  public void testWaitForExpired() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    process = new ProcessBuilder("sleep", "30").start();
+    ProcessUtil.waitFor(Processes.newPidProcess(process), Deadline.after(100, TimeUnit.MILLISECONDS));
+  }
+
+}
@@ -0,0 +1,83 @@
+package org.zeroturnaround.process.test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.AndProcess;
+import org.zeroturnaround.process.DestroyResult;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+
+public class DestroyResultTest extends Assert {
+
+  private Process graceful;
+
+  private Process stubborn;
+
+  @Before
+  public void unixOnly() {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+  }
+
+  @After
+  public void after() throws Exception {
+    for (Process process : new Process[] { graceful, stubborn }) {
+      if (process != null) {
+        Processes.newPidProcess(process).destroyForcefully();
+        process.waitFor();
+      }
+    }
+  }
+
+  private AndProcess start() throws Exception {
+    return start(false);
+  }
+
+  private AndProcess start(boolean stubbornFirst) throws Exception {
+    graceful = new ProcessBuilder("sleep", "30").start();
+    stubborn = StubbornProcessFactory.createStubbornProcess();
+    PidProcess first = Processes.newPidProcess(graceful);
+    PidProcess second = Processes.newPidProcess(stubborn);
+    return new AndProcess(stubbornFirst ? Arrays.asList(second, first) : Arrays.asList(first, second));
+  }
+
+  @Test(timeout = 15000)
+  public void testOnlyStragglersKilled() throws Exception {
+    assertOnlyStragglersKilled(start());
+  }
+
+  @Test(timeout = 15000)
+  public void testOnlyStragglersKilledStubbornFirst() throws Exception {
+    // The stubborn child uses up the graceful timeout before the other one is checked
+    assertOnlyStragglersKilled(start(true));
+  }
+
+  private void assertOnlyStragglersKilled(AndProcess process) throws Exception {
+    DestroyResult result = ProcessUtil.destroyEachGracefullyOrForcefullyAndWait(process, 1, TimeUnit.SECONDS, 10, TimeUnit.SECONDS);
+    assertTrue(result.isAllFinished());
+    assertEquals(1, result.getExited().size());
+    assertEquals(PidUtil.getPid(graceful), ((PidProcess) result.getExited().get(0)).getPid());
+    assertEquals(1, result.getKilled().size());
+    assertEquals(PidUtil.getPid(stubborn), ((PidProcess) result.getKilled().get(0)).getPid());
+    assertEquals(Collections.<SystemProcess>emptyList(), result.getSurvived());
+    assertFalse(process.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyComposite() throws Exception {
+    AndProcess process = start();
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(process, 1, TimeUnit.SECONDS, 10, TimeUnit.SECONDS);
+    assertFalse(process.isAlive());
+  }
+
+}
@@ -0,0 +1,65 @@
+package org.zeroturnaround.process.test;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.zeroturnaround.process.DestroyResult;
+import org.zeroturnaround.process.ExitRegistry;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+
+public class ExitRegistryTest extends Assert {
+
+  @Test
+  public void testGlobalInstance() throws Exception {
+    assertSame(ExitRegistry.getInstance(), ExitRegistry.getInstance());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyAll() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    ExitRegistry registry = new ExitRegistry();
+    registry.setTimeout(5, TimeUnit.SECONDS);
+    SystemProcess sleep = registry.register(Processes.newStandardProcess(new ProcessBuilder("sleep", "30").start()));
+    SystemProcess stubborn = registry.register(Processes.newPidProcess(StubbornProcessFactory.createStubbornProcess()));
+
+    // The registry destroys the processes in no particular order
+    DestroyResult result = registry.destroyAll();
+    assertTrue(result.isAllFinished());
+    assertEquals(Collections.singletonList(sleep), result.getExited());
+    assertEquals(Collections.singletonList(stubborn), result.getKilled());
+    assertEquals(0, registry.size());
+  }
+
+  @Test(timeout = 30000)
+  public void testFinishedRemoved() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    Process process = new ProcessBuilder("true").start();
+    process.waitFor();
+    int pid = Processes.newPidProcess(process).getPid();
+    ExitRegistry registry = new ExitRegistry();
+    for (int i = 0; i < 1000; i++) {
+      registry.register(new PidProcess(pid) {
+        @Override
+        public boolean isAlive() {
+          return false;
+        }
+
+        @Override
+        public void destroy(boolean forceful) {
+          // nothing to do
+        }
+      });
+    }
+    // Finished processes are removed in the background, the ones registered while pruning are removed later
+    while (registry.size() >= 1000) {
+      Thread.sleep(10);
+    }
+  }
+
+}
@@ -0,0 +1,70 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.HangDetection;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+
+public class HangDetectionTest extends Assert {
+
+  private Process process;
+
+  @Before
+  public void linuxOnly() {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      Processes.newPidProcess(process).destroyForcefully();
+      process.waitFor();
+    }
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidSampleInterval() throws Exception {
+    HangDetection.defaults().withSampleInterval(0, TimeUnit.SECONDS);
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroy() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    SystemProcess standard = Processes.newStandardProcess(process);
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(standard, 10, TimeUnit.SECONDS, 10, TimeUnit.SECONDS, HangDetection.defaults());
+    assertFalse(standard.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testNoProgress() throws Exception {
+    process = StubbornProcessFactory.createStubbornProcess();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    HangDetection detection = HangDetection.defaults().withNoProgressLimit(500, TimeUnit.MILLISECONDS);
+    long start = System.nanoTime();
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(pidProcess, 30, TimeUnit.SECONDS, 10, TimeUnit.SECONDS, detection);
+    assertFalse(pidProcess.isAlive());
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+  }
+
+  @Test(timeout = 15000)
+  public void testStopped() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    new ProcessBuilder("kill", "-STOP", Integer.toString(pidProcess.getPid())).start().waitFor();
+    HangDetection detection = HangDetection.defaults().withNoProgressLimit(0, TimeUnit.SECONDS);
+    long start = System.nanoTime();
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(pidProcess, 30, TimeUnit.SECONDS, 10, TimeUnit.SECONDS, detection);
+    assertFalse(pidProcess.isAlive());
+    assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10);
+  }
+
+}
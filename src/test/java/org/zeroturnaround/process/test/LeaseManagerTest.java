@@ -0,0 +1,89 @@
+package org.zeroturnaround.process.test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.LeaseManager;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+
+public class LeaseManagerTest extends Assert {
+
+  private SystemProcess process;
+
+  @Before
+  public void before() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      process.destroyForcefully();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void testRenewed() throws Exception {
+    process = Processes.newPidProcess(new ProcessBuilder("sleep", "30").start());
+    LeaseManager manager = new LeaseManager(300, TimeUnit.MILLISECONDS);
+    LeaseManager.Lease lease = manager.acquire(process);
+    for (int i = 0; i < 10; i++) {
+      Thread.sleep(100);
+      assertTrue(lease.renew());
+      assertTrue(manager.sweep().isEmpty());
+    }
+    assertTrue(process.isAlive());
+    assertFalse(lease.isExpired());
+
+    assertTrue(lease.release());
+    Thread.sleep(400);
+    assertTrue(manager.sweep().isEmpty());
+    assertTrue(process.isAlive());
+    assertEquals(0, manager.size());
+  }
+
+  @Test(timeout = 15000)
+  public void testExpired() throws Exception {
+    process = Processes.newPidProcess(new ProcessBuilder("sleep", "30").start());
+    LeaseManager manager = new LeaseManager(100, TimeUnit.MILLISECONDS);
+    LeaseManager.Lease lease = manager.acquire(process);
+    Thread.sleep(200);
+
+    List<SystemProcess> destroyed = manager.sweep();
+    assertEquals(1, destroyed.size());
+    assertSame(process, destroyed.get(0));
+    assertTrue(lease.isExpired());
+    assertFalse(lease.renew());
+    assertFalse(lease.release());
+    assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+
+    manager.sweep();
+    assertEquals(0, manager.size());
+  }
+
+  @Test(timeout = 15000)
+  public void testEscalation() throws Exception {
+    process = Processes.newPidProcess(StubbornProcessFactory.createStubbornProcess());
+    LeaseManager manager = new LeaseManager(100, TimeUnit.MILLISECONDS);
+    manager.setGracefulTimeout(300, TimeUnit.MILLISECONDS);
+    manager.setInterval(50);
+    manager.acquire(process);
+    Thread.sleep(200);
+    manager.start();
+    try {
+      assertTrue(process.waitFor(5, TimeUnit.SECONDS));
+      assertFalse(process.isAlive());
+    }
+    finally {
+      manager.stop();
+    }
+  }
+
+}
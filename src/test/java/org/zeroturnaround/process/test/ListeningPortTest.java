@@ -0,0 +1,85 @@
+package org.zeroturnaround.process.test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.AndProcess;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.Processes;
+
+public class ListeningPortTest extends Assert {
+
+  private Process process;
+
+  @Before
+  public void before() {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testCurrentProcess() throws Exception {
+    ServerSocket tcp = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    DatagramSocket udp = new DatagramSocket(0, InetAddress.getLoopbackAddress());
+    try {
+      String myPid = String.valueOf(PidUtil.getMyPid());
+      assertTrue(Processes.newProcessForListeningPort(tcp.getLocalPort()).getDescription().contains(myPid));
+      assertTrue(Processes.newProcessForListeningPort(udp.getLocalPort()).getDescription().contains(myPid));
+    }
+    finally {
+      tcp.close();
+      udp.close();
+    }
+  }
+
+  @Test
+  public void testFreePort() throws Exception {
+    ServerSocket tcp = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    int port = tcp.getLocalPort();
+    tcp.close();
+    assertFalse(Processes.newProcessForListeningPort(port).isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyOwner() throws Exception {
+    try {
+      process = new ProcessBuilder("python3", "-c",
+          "import socket, time\n" +
+          "s = socket.socket()\n" +
+          "s.bind(('127.0.0.1', 0))\n" +
+          "s.listen(1)\n" +
+          "print(s.getsockname()[1], flush=True)\n" +
+          "time.sleep(30)\n").start();
+    }
+    catch (Exception e) {
+      Assume.assumeTrue("python3 is not available: " + e, false);
+    }
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    int port = Integer.parseInt(new BufferedReader(new InputStreamReader(process.getInputStream())).readLine().trim());
+
+    AndProcess owner = Processes.newProcessForListeningPort(port);
+    assertEquals("[" + pidProcess + "]", owner.getDescription());
+    owner.destroyForcefully();
+    assertTrue(owner.waitFor(10, TimeUnit.SECONDS));
+    assertFalse(pidProcess.isAlive());
+  }
+
+}
@@ -0,0 +1,119 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.MemoryPressureWatchdog;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.Processes;
+
+/**
+ * Tests {@link MemoryPressureWatchdog} against fake pressure and <code>statm</code> files.
+ */
+public class MemoryPressureWatchdogTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File pressure;
+
+  private File proc;
+
+  private MemoryPressureWatchdog watchdog;
+
+  private final Process[] processes = new Process[3];
+
+  @Before
+  public void init() throws Exception {
+    Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+    pressure = folder.newFile("memory");
+    proc = folder.newFolder("proc");
+    setStallTotal(0);
+    watchdog = new MemoryPressureWatchdog(pressure, proc);
+    watchdog.setGracefulTimeout(5, TimeUnit.SECONDS);
+  }
+
+  @After
+  public void after() throws Exception {
+    for (Process process : processes) {
+      if (process != null) {
+        process.destroy();
+        process.waitFor();
+      }
+    }
+  }
+
+  private void setStallTotal(long total) throws Exception {
+    FileUtils.writeStringToFile(pressure,
+        "some avg10=0.00 avg60=0.00 avg300=0.00 total=" + total + "\n"
+        + "full avg10=0.00 avg60=0.00 avg300=0.00 total=0\n", ASCII);
+  }
+
+  private PidProcess start(int index, long residentPages) throws Exception {
+    processes[index] = new ProcessBuilder("sleep", "30").start();
+    PidProcess result = Processes.newPidProcess(processes[index]);
+    File dir = new File(proc, String.valueOf(result.getPid()));
+    dir.mkdir();
+    FileUtils.writeStringToFile(new File(dir, "statm"), "100000 " + residentPages + " 100 10 0 1000 0\n", ASCII);
+    return result;
+  }
+
+  @Test
+  public void testNoPressure() throws Exception {
+    PidProcess process = start(0, 10);
+    watchdog.register(process, 0);
+    assertFalse(watchdog.check());
+    assertFalse(watchdog.check());
+    assertTrue(process.isAlive());
+  }
+
+  @Test(timeout = 20000)
+  public void testVictimSelection() throws Exception {
+    PidProcess small = start(0, 10);
+    PidProcess large = start(1, 1000);
+    PidProcess important = start(2, 100000);
+    watchdog.register(small, 0);
+    watchdog.register(large, 0);
+    watchdog.register(important, 1);
+
+    assertFalse(watchdog.check());
+    // 10 seconds of stall since the previous sample
+    setStallTotal(TimeUnit.SECONDS.toMicros(10));
+    assertTrue(watchdog.check());
+    processes[1].waitFor();
+    assertFalse(large.isAlive());
+    assertTrue(small.isAlive());
+    assertTrue(important.isAlive());
+    assertEquals(2, watchdog.getProcesses().size());
+
+    // The pressure is gone
+    assertFalse(watchdog.check());
+    assertTrue(small.isAlive());
+  }
+
+  @Test
+  public void testFinishedProcessesAreUnregistered() throws Exception {
+    PidProcess process = start(0, 10);
+    watchdog.register(process, 0);
+    processes[0].destroy();
+    processes[0].waitFor();
+
+    assertFalse(watchdog.check());
+    setStallTotal(TimeUnit.SECONDS.toMicros(10));
+    assertFalse(watchdog.check());
+    assertTrue(watchdog.getProcesses().isEmpty());
+  }
+
+}
@@ -0,0 +1,91 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.OomScorePolicy;
+import org.zeroturnaround.process.OomScoreProcess;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.UnixProcess;
+
+public class OomScoreProcessTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Process process;
+
+  @Before
+  public void unixOnly() throws Exception {
+    Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+    process = new ProcessBuilder("sleep", "30").start();
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testPolicy() throws Exception {
+    Map<String, Integer> scores = new HashMap<String, Integer>();
+    scores.put("worker", 800);
+    OomScorePolicy policy = OomScorePolicy.byRole(scores, null).withShutdownScore();
+    assertEquals(Integer.valueOf(800), policy.getScore("worker"));
+    assertNull(policy.getScore("broker"));
+    assertNull(policy.getScore(null));
+    assertEquals(Integer.valueOf(OomScorePolicy.MAX_SCORE), policy.getShutdownScore());
+    assertNull(OomScorePolicy.fixed(100).getShutdownScore());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidScore() throws Exception {
+    OomScorePolicy.fixed(1001);
+  }
+
+  @Test
+  public void testFakeProcFs() throws Exception {
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    File file = new File(folder.newFolder(String.valueOf(pidProcess.getPid())), "oom_score_adj");
+    FileUtils.writeStringToFile(file, "0\n", ASCII);
+
+    OomScoreProcess oom = new OomScoreProcess(pidProcess, OomScorePolicy.fixed(300).withShutdownScore(), null, folder.getRoot());
+    assertEquals(1, oom.apply());
+    assertEquals("300", FileUtils.readFileToString(file, ASCII));
+
+    oom.destroyGracefully();
+    assertEquals("1000", FileUtils.readFileToString(file, ASCII));
+    process.waitFor();
+    assertFalse(oom.isAlive());
+  }
+
+  @Test
+  public void testRealProcFs() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    UnixProcess unix = (UnixProcess) Processes.newPidProcess(process);
+    // Raising the score is allowed without extra privileges
+    assertTrue(unix.setOomScoreAdj(500));
+    assertEquals(500, unix.getOomScoreAdj());
+
+    Processes.newProcessWithOomScore(Processes.newStandardProcess(process), OomScorePolicy.fixed(600), null);
+    assertEquals(600, unix.getOomScoreAdj());
+  }
+
+}
@@ -0,0 +1,127 @@
+package org.zeroturnaround.process.test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.AndProcess;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.Processes;
+
+public class PathHoldersTest extends Assert {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  private final List<Process> processes = new ArrayList<Process>();
+
+  private File workspace;
+
+  @Before
+  public void before() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    workspace = tmp.newFolder("workspace");
+  }
+
+  @After
+  public void after() throws Exception {
+    for (Process process : processes) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  private PidProcess start(ProcessBuilder builder) throws Exception {
+    Process process = builder.start();
+    processes.add(process);
+    return Processes.newPidProcess(process);
+  }
+
+  @Test
+  public void testNoHolders() throws Exception {
+    // The current JVM is never included
+    FileInputStream in = new FileInputStream(tmp.newFile("workspace/own"));
+    try {
+      assertFalse(Processes.newProcessForPath(workspace).isAlive());
+    }
+    finally {
+      in.close();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyHolders() throws Exception {
+    File file = new File(workspace, "sub/data");
+    FileUtils.writeStringToFile(file, "data", "US-ASCII");
+    File sleep = new File(workspace, "sleep");
+    FileUtils.copyFile(new File("/bin/sleep"), sleep);
+    sleep.setExecutable(true);
+
+    PidProcess cwd = start(new ProcessBuilder("sleep", "37").directory(workspace));
+    PidProcess fd = start(new ProcessBuilder("sh", "-c", "exec sleep 37 3< '" + file + "'"));
+    PidProcess exe = start(new ProcessBuilder(sleep.getPath(), "37"));
+    PidProcess other = start(new ProcessBuilder("sleep", "37").directory(tmp.getRoot()));
+    // Let the shell open the file
+    Thread.sleep(500);
+
+    AndProcess holders = Processes.newProcessForPath(workspace);
+    String description = holders.getDescription();
+    assertTrue(description, description.contains(cwd.toString()));
+    assertTrue(description, description.contains(fd.toString()));
+    assertTrue(description, description.contains(exe.toString()));
+    assertFalse(description, description.contains(other.toString()));
+    assertEquals("[" + fd + "]", Processes.newProcessForPath(file).getDescription());
+
+    holders.destroyForcefully();
+    assertTrue(holders.waitFor(10, TimeUnit.SECONDS));
+    assertFalse(Processes.newProcessForPath(workspace).isAlive());
+    assertTrue(other.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testMemoryMappedOnly() throws Exception {
+    File file = new File(workspace, "mapped");
+    FileUtils.writeStringToFile(file, "data", "US-ASCII");
+    PidProcess mapped;
+    try {
+      // The descriptor is closed after mapping, so only the memory map refers to the file
+      mapped = start(new ProcessBuilder("python3", "-c",
+          "import mmap, sys, time\n" +
+          "f = open(sys.argv[1], 'rb')\n" +
+          "m = mmap.mmap(f.fileno(), 0, access=mmap.ACCESS_READ)\n" +
+          "f.close()\n" +
+          "print('mapped', flush=True)\n" +
+          "time.sleep(37)\n", file.getPath()).directory(tmp.getRoot()));
+    }
+    catch (Exception e) {
+      Assume.assumeTrue("python3 is not available: " + e, false);
+      return;
+    }
+    Process process = processes.get(processes.size() - 1);
+    assertEquals("mapped", new BufferedReader(new InputStreamReader(process.getInputStream())).readLine());
+
+    ForkJoinPool pool = new ForkJoinPool(2);
+    try {
+      assertEquals("[" + mapped + "]", Processes.newProcessForPath(workspace, pool).getDescription());
+      assertEquals("[" + mapped + "]", Processes.newProcessForPath(file, pool).getDescription());
+    }
+    finally {
+      pool.shutdown();
+    }
+  }
+
+}
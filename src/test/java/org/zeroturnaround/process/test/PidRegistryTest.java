@@ -0,0 +1,140 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.DestroyResult;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.PidRegistry;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.Processes;
+
+public class PidRegistryTest extends Assert {
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private Process process;
+
+  private File file;
+
+  @Before
+  public void before() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    file = new File(folder.getRoot(), "pids");
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      Processes.newPidProcess(process).destroyForcefully();
+      process.waitFor();
+    }
+  }
+
+  @Test(timeout = 15000)
+  public void testCleanUp() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    PidRegistry registry = new PidRegistry(file);
+    registry.register(pidProcess, "sleep 30");
+    // The JVM dies without unregistering
+    registry.close();
+
+    List<PidRegistry.Entry> entries = PidRegistry.read(file);
+    assertEquals(1, entries.size());
+    assertEquals(pidProcess.getPid(), entries.get(0).getPid());
+    assertEquals("sleep 30", entries.get(0).getLabel());
+    assertTrue(entries.get(0).getStartTime() > 0);
+
+    DestroyResult result = PidRegistry.cleanUp(file, 10, TimeUnit.SECONDS);
+    assertEquals(1, result.getExited().size());
+    assertFalse(pidProcess.isAlive());
+    assertFalse(file.exists());
+  }
+
+  @Test(timeout = 15000)
+  public void testUnregistered() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    PidRegistry registry = new PidRegistry(file);
+    registry.register(pidProcess, null);
+    registry.unregister(pidProcess.getPid());
+    registry.close();
+
+    assertTrue(PidRegistry.read(file).isEmpty());
+    assertTrue(PidRegistry.cleanUp(file, 10, TimeUnit.SECONDS).getExited().isEmpty());
+    assertTrue(pidProcess.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testReusedPid() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    FileOutputStream out = new FileOutputStream(file);
+    try {
+      // Current boot, but a wrong start time and an incomplete last line
+      String bootId = FileUtils.readFileToString(new File("/proc/sys/kernel/random/boot_id"), "US-ASCII").trim();
+      out.write(("# boot " + bootId + "\n+ " + pidProcess.getPid() + " 1 old process\n+ 12").getBytes("UTF-8"));
+    }
+    finally {
+      out.close();
+    }
+    DestroyResult result = PidRegistry.cleanUp(file, 10, TimeUnit.SECONDS);
+    assertTrue(result.getExited().isEmpty());
+    assertTrue(pidProcess.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testOtherBoot() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    PidRegistry registry = new PidRegistry(file);
+    registry.register(pidProcess, "sleep 30");
+    registry.close();
+    String bootId = PidRegistry.read(file).get(0).getBootId();
+    assertNotNull(bootId);
+
+    // Same PID and start time, but registered before a reboot
+    String content = FileUtils.readFileToString(file, "UTF-8");
+    FileUtils.writeStringToFile(file, content.replace(bootId, "00000000-0000-0000-0000-000000000000"), "UTF-8");
+    DestroyResult result = PidRegistry.cleanUp(file, 10, TimeUnit.SECONDS);
+    assertTrue(result.getExited().isEmpty());
+    assertTrue(pidProcess.isAlive());
+  }
+
+  @Test
+  public void testAlternativeAfterProcessTree() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = Processes.newPidProcess(process);
+    PidRegistry registry = new PidRegistry(file);
+    // The tree has no PID of its own, the next alternative has one
+    registry.register(Processes.newProcessWithAlternatives(Processes.newProcessTree(pidProcess.getPid()), pidProcess), "sleep 30");
+    registry.close();
+    assertEquals(pidProcess.getPid(), PidRegistry.read(file).get(0).getPid());
+  }
+
+  @Test
+  public void testCompaction() throws Exception {
+    PidRegistry registry = new PidRegistry(file);
+    int myPid = PidUtil.getMyPid();
+    for (int i = 0; i < 2000; i++) {
+      registry.register(myPid, "me");
+      registry.unregister(myPid);
+    }
+    registry.close();
+    assertTrue("File size " + file.length(), file.length() < 100 * 1024);
+  }
+
+}
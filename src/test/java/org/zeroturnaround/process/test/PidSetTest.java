@@ -0,0 +1,68 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.PidSet;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+
+public class PidSetTest extends Assert {
+
+  @Before
+  public void unixOnly() {
+    Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+  }
+
+  @Test
+  public void testSortedAndDistinct() throws Exception {
+    PidSet set = new PidSet(30, 10, 20, 10);
+    assertEquals(3, set.size());
+    assertArrayEquals(new int[] { 10, 20, 30 }, set.getPids());
+    assertTrue(set.contains(20));
+    assertFalse(set.contains(15));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidPid() throws Exception {
+    new PidSet(10, -1);
+  }
+
+  @Test
+  public void testEmpty() throws Exception {
+    PidSet set = Processes.newPidSet();
+    assertFalse(set.isAlive());
+    assertEquals(0, set.kill(0));
+    assertTrue(set.waitFor(1, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testAlive() throws Exception {
+    int myPid = PidUtil.getMyPid();
+    PidSet set = Processes.newPidSet(myPid);
+    assertTrue(set.isAlive());
+    assertArrayEquals(new int[] { myPid }, set.getAlivePids());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroy() throws Exception {
+    Process first = new ProcessBuilder("sleep", "30").start();
+    Process second = new ProcessBuilder("sleep", "30").start();
+    PidSet set = Processes.newPidSet(PidUtil.getPid(first), PidUtil.getPid(second));
+    set.setIntervalForCheckingFinished(100);
+    assertTrue(set.isAlive());
+    assertEquals(2, set.getAlivePids().length);
+
+    ProcessUtil.destroyGracefullyAndWait(set, 10, TimeUnit.SECONDS);
+    first.waitFor();
+    second.waitFor();
+    assertFalse(set.isAlive());
+    assertEquals(0, set.getAlivePids().length);
+  }
+
+}
@@ -0,0 +1,130 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.Charset;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcFs;
+import org.zeroturnaround.process.ProcessInfo;
+
+public class ProcFsTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void testFixture() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    File proc = folder.newFolder("proc");
+    File dir = new File(proc, "4242");
+    dir.mkdir();
+    new File(proc, "self").mkdir();
+    new File(proc, "uptime").createNewFile();
+    FileUtils.writeStringToFile(new File(dir, "stat"), "4242 (my (odd) app) S 1 4200 4100 0 -1 4194304 100 0 0 0 "
+        + "5 6 0 0 20 0 3 0 12345 1000000 10 0\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "status"), "Name:\tmy (odd) app\nUmask:\t0022\nState:\tS (sleeping)\n"
+        + "Uid:\t1001\t1001\t1001\t1001\nGid:\t100\t100\t100\t100\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "cmdline"), "/usr/bin/app\0--port\0" + "8080\0", ASCII);
+
+    ProcFs procFs = new ProcFs(proc);
+    assertArrayEquals(new int[] { 4242 }, procFs.getPids());
+    ProcessInfo info = new ProcessInfo();
+    assertTrue(procFs.read(4242, ProcessInfo.ALL, info));
+    assertEquals(4242, info.getPid());
+    assertEquals(1, info.getParentPid());
+    assertEquals(4200, info.getProcessGroupId());
+    assertEquals(4100, info.getSessionId());
+    assertEquals('S', info.getState());
+    assertEquals(12345, info.getStartTime());
+    assertEquals(1001, info.getUid());
+    assertTrue(info.getRss() >= 10 * 1024);
+    assertEquals("my (odd) app", info.getName().toString());
+    assertEquals("/usr/bin/app --port 8080", info.getCommand().toString());
+
+    ProcessInfo copy = info.copy();
+    assertFalse(procFs.read(4243, ProcessInfo.ALL, info));
+    assertEquals("/usr/bin/app --port 8080", copy.getCommand().toString());
+  }
+
+  @Test
+  public void testCurrentProcess() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    final int myPid = PidUtil.getMyPid();
+    final ProcessInfo[] found = new ProcessInfo[1];
+    ProcFs procFs = new ProcFs();
+    int count = procFs.forEach(ProcessInfo.ALL, new ProcFs.Visitor() {
+      @Override
+      public boolean visit(ProcessInfo info) {
+        if (info.getPid() == myPid) {
+          found[0] = info.copy();
+        }
+        return true;
+      }
+    });
+    assertTrue(count > 1);
+    assertNotNull(found[0]);
+    assertTrue(found[0].getParentPid() > 0);
+    assertTrue(found[0].getStartTime() > 0);
+    assertTrue(found[0].getRss() > 0);
+    assertTrue(found[0].getCommand().toString(), found[0].getCommand().toString().contains("java"));
+  }
+
+  @Test
+  public void testCopyRetainedSize() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    ProcessInfo info = new ProcessInfo();
+    assertTrue(new ProcFs().read(PidUtil.getMyPid(), ProcessInfo.STAT, info));
+    ProcessInfo[] copies = new ProcessInfo[1000];
+    // Warm up
+    copies[0] = info.copy();
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    for (int i = 0; i < copies.length; i++) {
+      copies[i] = info.copy();
+    }
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    // Far below the buffers of a reusable instance (more than 4 KB)
+    assertTrue(allocated + " bytes allocated for " + copies.length + " copies", allocated < 256 * copies.length);
+    assertEquals(info.getName().toString(), copies[copies.length - 1].getName().toString());
+  }
+
+  @Test
+  public void testSteadyStateAllocation() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+    Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+    ProcFs procFs = new ProcFs();
+    Assume.assumeTrue(procFs.isNative());
+    ProcFs.Visitor visitor = new ProcFs.Visitor() {
+      @Override
+      public boolean visit(ProcessInfo info) throws IOException {
+        return true;
+      }
+    };
+    // Warm up
+    for (int i = 0; i < 20; i++) {
+      procFs.forEach(ProcessInfo.ALL, visitor);
+    }
+    long threadId = Thread.currentThread().getId();
+    long before = threads.getThreadAllocatedBytes(threadId);
+    int count = procFs.forEach(ProcessInfo.ALL, visitor);
+    long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+    assertTrue(allocated + " bytes allocated for " + count + " processes", allocated < 64 * count + 4096);
+  }
+
+}
@@ -0,0 +1,67 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Test;
+import org.zeroturnaround.process.PidSet;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcessScope;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+import org.zeroturnaround.process.UnixProcessTree;
+
+public class ProcessScopeTest extends Assert {
+
+  @Test(timeout = 15000)
+  public void testClose() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_UNIX);
+    SystemProcess sleep;
+    SystemProcess stubborn;
+    ProcessScope scope = new ProcessScope();
+    try {
+      scope.setTimeout(5, TimeUnit.SECONDS);
+      sleep = scope.register(new ProcessBuilder("sleep", "30").start());
+      stubborn = scope.register(StubbornProcessFactory.createStubbornProcess());
+      assertEquals(2, scope.getProcesses().size());
+    }
+    finally {
+      scope.close();
+    }
+    assertFalse(sleep.isAlive());
+    assertFalse(stubborn.isAlive());
+    assertTrue(scope.getProcesses().isEmpty());
+    // Closing again has no effect
+    scope.close();
+  }
+
+  @Test(timeout = 15000)
+  public void testIncludeDescendants() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    Process process = new ProcessBuilder("sh", "-c", "sleep 30 & sleep 30 & wait").start();
+    UnixProcessTree tree = Processes.newProcessTree(PidUtil.getPid(process));
+    long deadline = System.currentTimeMillis() + 5000;
+    while (tree.getDescendants().length < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    PidSet descendants = Processes.newPidSet(tree.getDescendants());
+    assertEquals(2, descendants.size());
+
+    ProcessScope scope = new ProcessScope();
+    scope.setIncludeDescendants(true);
+    scope.register(process);
+    scope.close();
+    assertFalse(descendants.isAlive());
+    process.waitFor();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRegisterAfterClose() throws Exception {
+    ProcessScope scope = new ProcessScope();
+    scope.close();
+    scope.register(Processes.newPidProcess(PidUtil.getMyPid()));
+  }
+
+}
@@ -0,0 +1,110 @@
+package org.zeroturnaround.process.test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.AndProcess;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcessInfo;
+import org.zeroturnaround.process.ProcessSelector;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.UnixProcess;
+import org.zeroturnaround.process.unix.LibC;
+
+public class ProcessSelectorTest extends Assert {
+
+  private Process process;
+
+  private PidProcess pidProcess;
+
+  @Before
+  public void before() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    // A unique argument so no other process matches
+    process = new ProcessBuilder("sleep", "37.123").start();
+    pidProcess = Processes.newPidProcess(process);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testCommand() throws Exception {
+    List<ProcessInfo> found = ProcessSelector.all().withName("^sleep$").withCommand("37\\.123").find();
+    assertEquals(1, found.size());
+    assertEquals(pidProcess.getPid(), found.get(0).getPid());
+    assertEquals("sleep 37.123", found.get(0).getCommand().toString());
+
+    assertTrue(ProcessSelector.all().withName("^nosuchname$").withCommand("37\\.123").find().isEmpty());
+  }
+
+  @Test
+  public void testLongCommand() throws Exception {
+    // The marker comes after more than ProcessInfo.MAX_COMMAND_LENGTH bytes
+    String filler = StringUtils.repeat('x', 3 * ProcessInfo.MAX_COMMAND_LENGTH);
+    Process shell = new ProcessBuilder("sh", "-c", "sleep 30; true", "sh", filler, "-Dselector.test=long").start();
+    try {
+      List<ProcessInfo> found = ProcessSelector.all().withCommand("-Dselector\\.test=long$").find();
+      assertEquals(1, found.size());
+      assertEquals(Processes.newPidProcess(shell).getPid(), found.get(0).getPid());
+      assertTrue(found.get(0).isCommandTruncated());
+      assertEquals(ProcessInfo.MAX_COMMAND_LENGTH, found.get(0).getCommand().length());
+    }
+    finally {
+      shell.destroy();
+      shell.waitFor();
+    }
+  }
+
+  @Test
+  public void testUserExecutableAndParent() throws Exception {
+    ProcessSelector selector = ProcessSelector.all().withCommand("^sleep 37\\.123$");
+    assertEquals(1, selector.withUser("^" + System.getProperty("user.name") + "$").find().size());
+    assertEquals(1, selector.withExecutable("/sleep$").find().size());
+    assertEquals(1, selector.withParentPid(PidUtil.getMyPid()).find().size());
+    assertEquals(1, selector.withParentCommand("java").find().size());
+    assertTrue(selector.withParentPid(1).find().isEmpty());
+    assertTrue(selector.withExecutable("/nosuchexecutable$").find().isEmpty());
+  }
+
+  @Test
+  public void testCurrentProcessExcluded() throws Exception {
+    for (ProcessInfo info : ProcessSelector.all().withName("java").find()) {
+      assertTrue(info.getPid() != PidUtil.getMyPid());
+    }
+  }
+
+  @Test
+  public void testReusedPidNotDestroyed() throws Exception {
+    ProcessInfo info = ProcessSelector.all().withCommand("^sleep 37\\.123$").find().get(0);
+    // As if the selected process had finished and another one had got its PID
+    UnixProcess selected = new UnixProcess(info.getPid(), info.getStartTime() - 1);
+    assertFalse(selected.isAlive());
+    selected.destroyForcefully();
+    assertFalse(selected.kill(LibC.SIGKILL));
+    assertTrue(pidProcess.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyMatching() throws Exception {
+    AndProcess matching = Processes.newProcessForMatching(ProcessSelector.all().withCommand("^sleep 37\\.123$"));
+    assertTrue(matching.isAlive());
+    matching.destroyForcefully();
+    assertTrue(matching.waitFor(10, TimeUnit.SECONDS));
+    assertFalse(pidProcess.isAlive());
+  }
+
+}
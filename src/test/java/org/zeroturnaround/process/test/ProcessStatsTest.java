@@ -0,0 +1,120 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.ProcessStats;
+import org.zeroturnaround.process.Processes;
+
+/**
+ * Tests {@link ProcessStats} against fake <code>stat</code> and <code>status</code> files and a fake clock.
+ */
+public class ProcessStatsTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  private static final int PID = 4242;
+
+  /**
+   * Clock ticks per second of the times in a <code>stat</code> file on all common architectures.
+   */
+  private static final long USER_HZ = 100;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File dir;
+
+  private long time;
+
+  private ProcessStats stats;
+
+  private final PidProcess process = Processes.newPidProcess(PID);
+
+  @Before
+  public void init() throws Exception {
+    Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+    File proc = folder.newFolder("proc");
+    dir = new File(proc, String.valueOf(PID));
+    dir.mkdir();
+    stats = new ProcessStats(4, proc) {
+      @Override
+      protected long nanoTime() {
+        return time;
+      }
+    };
+    stats.add(process);
+  }
+
+  /**
+   * @param seconds the fake time.
+   * @param cpuSeconds user plus system time.
+   */
+  private void sampleAt(long seconds, long cpuSeconds, long residentPages, int threads, long voluntary, long involuntary) throws Exception {
+    long ticks = cpuSeconds * USER_HZ;
+    FileUtils.writeStringToFile(new File(dir, "stat"), PID + " (my app) S 1 1 1 0 -1 4194304 100 0 0 0 "
+        + ticks / 2 + " " + (ticks - ticks / 2) + " 0 0 20 0 " + threads + " 0 100 1000000 " + residentPages + " 0\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "status"), "Name:\tmy app\nState:\tS (sleeping)\nThreads:\t" + threads + "\n"
+        + "voluntary_ctxt_switches:\t" + voluntary + "\nnonvoluntary_ctxt_switches:\t" + involuntary + "\n", ASCII);
+    time = TimeUnit.SECONDS.toNanos(seconds);
+    stats.sample();
+  }
+
+  @Test
+  public void testSingleSample() throws Exception {
+    sampleAt(0, 0, 256, 3, 10, 1);
+    assertEquals(1, stats.getSampleCount(process));
+    assertTrue(Double.isNaN(stats.getCpuPercent(process, 10, TimeUnit.SECONDS)));
+    assertEquals(3, stats.getThreadCount(process));
+    assertEquals(10, stats.getVoluntaryContextSwitches(process));
+    assertEquals(1, stats.getInvoluntaryContextSwitches(process));
+    assertTrue(stats.getRss(process) >= 256 * 1024);
+  }
+
+  @Test
+  public void testRates() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    sampleAt(0, 0, 256, 1, 0, 0);
+    sampleAt(1, 1, 256, 1, 100, 10);
+    sampleAt(2, 1, 256, 1, 200, 20);
+    sampleAt(3, 3, 512, 2, 300, 30);
+    // Only the last two samples are within 1 second
+    assertEquals(200, stats.getCpuPercent(process, 1, TimeUnit.SECONDS), 1);
+    // All samples
+    assertEquals(100, stats.getCpuPercent(process, 10, TimeUnit.SECONDS), 1);
+    assertEquals(100, stats.getVoluntaryContextSwitchRate(process, 10, TimeUnit.SECONDS), 0.01);
+    assertEquals(10, stats.getInvoluntaryContextSwitchRate(process, 10, TimeUnit.SECONDS), 0.01);
+    assertEquals(2, stats.getThreadCount(process));
+  }
+
+  @Test
+  public void testRingBuffer() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    for (int i = 0; i < 10; i++) {
+      sampleAt(i, i < 6 ? 0 : i - 6, 256, 1, 0, 0);
+    }
+    assertEquals(4, stats.getSampleCount(process));
+    // The 4 samples kept are at 6-9 seconds with a constant 100% usage
+    assertEquals(100, stats.getCpuPercent(process, 1, TimeUnit.HOURS), 1);
+  }
+
+  @Test
+  public void testFinishedRemoved() throws Exception {
+    sampleAt(0, 0, 256, 1, 0, 0);
+    FileUtils.deleteDirectory(dir);
+    stats.sample();
+    assertTrue(stats.getProcesses().isEmpty());
+    assertEquals(-1, stats.getRss(process));
+  }
+
+}
@@ -0,0 +1,128 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.ProcessInfo;
+import org.zeroturnaround.process.ProcessTable;
+
+/**
+ * Tests {@link ProcessTable} against fake process directories.
+ */
+public class ProcessTableTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  /**
+   * More than a single fork/join batch.
+   */
+  private static final int COUNT = 600;
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File proc;
+
+  private ProcessTable table;
+
+  @Before
+  public void init() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    proc = folder.newFolder("proc");
+    for (int pid = 1; pid <= COUNT; pid++) {
+      write(pid, pid == 1 ? 0 : 1, 100 + pid, "worker " + pid);
+    }
+    table = new ProcessTable(proc);
+  }
+
+  private void write(int pid, int parentPid, long startTime, String command) throws Exception {
+    write(pid, parentPid, startTime, command, 'S');
+  }
+
+  private void write(int pid, int parentPid, long startTime, String command, char state) throws Exception {
+    File dir = new File(proc, String.valueOf(pid));
+    dir.mkdir();
+    FileUtils.writeStringToFile(new File(dir, "stat"), pid + " (worker) " + state + " " + parentPid + " " + pid + " 1 0 -1 4194304 100 0 0 0 "
+        + "5 6 0 0 20 0 1 0 " + startTime + " 1000000 10 0\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "status"), "Name:\tworker\nUid:\t1000\t1000\t1000\t1000\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "cmdline"), command.replace(' ', '\0') + "\0", ASCII);
+  }
+
+  @Test
+  public void testDiffs() throws Exception {
+    final List<ProcessTable.Diff> diffs = new ArrayList<ProcessTable.Diff>();
+    table.subscribe(new ProcessTable.Listener() {
+      @Override
+      public void processesChanged(ProcessTable.Diff diff) {
+        diffs.add(diff);
+      }
+    });
+
+    ProcessTable.Diff diff = table.scan();
+    assertEquals(COUNT, diff.getStarted().size());
+    assertTrue(diff.getExited().isEmpty());
+    assertEquals(COUNT, table.getProcesses().size());
+    assertEquals("worker 42", table.getProcess(42).getCommand().toString());
+
+    assertTrue(table.scan().isEmpty());
+
+    // 10 exits, 20 has a new command, 30 is reused by another process and 1000 starts
+    FileUtils.deleteDirectory(new File(proc, "10"));
+    write(20, 1, 120, "worker 20 --reloaded");
+    write(30, 1, 9999, "other");
+    write(1000, 20, 5000, "child");
+    diff = table.scan();
+    assertEquals(2, diff.getStarted().size());
+    assertEquals(30, diff.getStarted().get(0).getPid());
+    assertEquals(9999, diff.getStarted().get(0).getStartTime());
+    assertEquals(1000, diff.getStarted().get(1).getPid());
+    assertEquals(2, diff.getExited().size());
+    assertEquals(10, diff.getExited().get(0).getPid());
+    assertEquals(30, diff.getExited().get(1).getPid());
+    assertEquals("worker 30", diff.getExited().get(1).getCommand().toString());
+    assertEquals(1, diff.getChanged().size());
+    assertEquals("worker 20 --reloaded", diff.getChanged().get(0).getCommand().toString());
+    assertNull(table.getProcess(10));
+
+    assertEquals(3, diffs.size());
+    assertSame(diff, diffs.get(2));
+  }
+
+  @Test
+  public void testStateChanges() throws Exception {
+    table.scan();
+
+    // Running and sleeping come and go all the time
+    write(20, 1, 120, "worker 20", 'R');
+    write(30, 1, 130, "worker 30", 'D');
+    assertTrue(table.scan().isEmpty());
+
+    write(20, 1, 120, "worker 20", 'Z');
+    ProcessTable.Diff diff = table.scan();
+    assertEquals(1, diff.getChanged().size());
+    assertEquals(20, diff.getChanged().get(0).getPid());
+    assertEquals('Z', diff.getChanged().get(0).getState());
+
+    assertTrue(table.scan().isEmpty());
+  }
+
+  @Test
+  public void testDescendants() throws Exception {
+    write(1000, 2, 5000, "child");
+    write(1001, 1000, 5001, "grandchild");
+    table.scan();
+    assertArrayEquals(new int[] { 1000, 1001 }, table.getDescendants(2));
+    assertArrayEquals(new int[0], table.getDescendants(3));
+  }
+
+}
@@ -0,0 +1,168 @@
+package org.zeroturnaround.process.test;
+
+import java.io.File;
+import java.nio.charset.Charset;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.ProcessWatchdog;
+import org.zeroturnaround.process.ProcessWatchdog.Limits;
+import org.zeroturnaround.process.Processes;
+
+/**
+ * Tests {@link ProcessWatchdog} against fake <code>stat</code>, <code>statm</code> and <code>fd</code> entries.
+ */
+public class ProcessWatchdogTest extends Assert {
+
+  private static final Charset ASCII = Charset.forName("US-ASCII");
+
+  @Rule
+  public final TemporaryFolder folder = new TemporaryFolder();
+
+  private File proc;
+
+  private ProcessWatchdog watchdog;
+
+  private Process process;
+
+  @Before
+  public void init() throws Exception {
+    Assume.assumeFalse(SystemUtils.IS_OS_WINDOWS);
+    proc = folder.newFolder("proc");
+    FileUtils.writeStringToFile(new File(proc, "uptime"), "1000.50 2000.00\n", ASCII);
+    watchdog = new ProcessWatchdog(proc);
+  }
+
+  @After
+  public void after() throws Exception {
+    watchdog.stop();
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  /**
+   * @param cpuTicks user and system time in clock ticks.
+   * @param startTicks start time in clock ticks after the boot.
+   */
+  private PidProcess start(long cpuTicks, long startTicks, long residentPages, int openFiles) throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess result = Processes.newPidProcess(process);
+    File dir = new File(proc, String.valueOf(result.getPid()));
+    dir.mkdir();
+    FileUtils.writeStringToFile(new File(dir, "stat"), result.getPid() + " (sleep) S 1 1 1 0 -1 4194304 100 0 0 0 "
+        + cpuTicks + " 0 0 0 20 0 1 0 " + startTicks + " 1000000 100\n", ASCII);
+    FileUtils.writeStringToFile(new File(dir, "statm"), "100000 " + residentPages + " 100 10 0 1000 0\n", ASCII);
+    File fd = new File(dir, "fd");
+    fd.mkdir();
+    for (int i = 0; i < openFiles; i++) {
+      new File(fd, String.valueOf(i)).createNewFile();
+    }
+    return result;
+  }
+
+  private void writeStat(PidProcess process, String state, long startTicks) throws Exception {
+    FileUtils.writeStringToFile(new File(proc, process.getPid() + "/stat"), process.getPid() + " (sleep) " + state
+        + " 1 1 1 0 -1 4194304 100 0 0 0 0 0 0 0 20 0 1 0 " + startTicks + " 1000000 100\n", ASCII);
+  }
+
+  @Test
+  public void testWithinLimits() throws Exception {
+    PidProcess process = start(0, 99000, 10, 3);
+    watchdog.watch(process, Limits.none().withMaxCpuTime(1, TimeUnit.SECONDS).withMaxAge(1, TimeUnit.HOURS)
+        .withMaxRss(1L << 30).withMaxOpenFiles(3));
+    assertTrue(watchdog.sample().isEmpty());
+    assertEquals(1, watchdog.getProcesses().size());
+  }
+
+  @Test
+  public void testCpuTime() throws Exception {
+    PidProcess process = start(100000, 0, 10, 0);
+    watchdog.watch(process, Limits.none().withMaxCpuTime(1, TimeUnit.SECONDS));
+    List<PidProcess> breached = watchdog.sample();
+    assertEquals(1, breached.size());
+    assertSame(process, breached.get(0));
+    assertTrue(watchdog.getProcesses().isEmpty());
+  }
+
+  @Test
+  public void testAge() throws Exception {
+    PidProcess process = start(0, 0, 10, 0);
+    watchdog.watch(process, Limits.none().withMaxAge(1, TimeUnit.MINUTES));
+    assertEquals(1, watchdog.sample().size());
+  }
+
+  @Test
+  public void testRss() throws Exception {
+    PidProcess process = start(0, 0, 1000000, 0);
+    watchdog.watch(process, Limits.none().withMaxRss(1L << 20));
+    assertEquals(1, watchdog.sample().size());
+  }
+
+  @Test
+  public void testOpenFiles() throws Exception {
+    PidProcess process = start(0, 0, 10, 5);
+    watchdog.watch(process, Limits.none().withMaxOpenFiles(4));
+    assertEquals(1, watchdog.sample().size());
+  }
+
+  @Test
+  public void testFinishedUnwatched() throws Exception {
+    PidProcess process = start(0, 0, 10, 0);
+    FileUtils.deleteDirectory(new File(proc, String.valueOf(process.getPid())));
+    watchdog.watch(process, Limits.none().withMaxCpuTime(1, TimeUnit.SECONDS));
+    assertTrue(watchdog.sample().isEmpty());
+    assertTrue(watchdog.getProcesses().isEmpty());
+  }
+
+  @Test
+  public void testReusedPidUnwatched() throws Exception {
+    PidProcess process = start(0, 5000, 1000000, 0);
+    watchdog.watch(process, Limits.none().withMaxRss(1L << 20));
+    writeStat(process, "S", 6000);
+    assertTrue(watchdog.sample().isEmpty());
+    assertTrue(watchdog.getProcesses().isEmpty());
+  }
+
+  @Test
+  public void testZombieUnwatched() throws Exception {
+    PidProcess process = start(0, 5000, 1000000, 0);
+    watchdog.watch(process, Limits.none().withMaxRss(1L << 20));
+    writeStat(process, "Z", 5000);
+    assertTrue(watchdog.sample().isEmpty());
+    assertTrue(watchdog.getProcesses().isEmpty());
+  }
+
+  @Test
+  public void testIntervalWithinBudget() throws Exception {
+    watchdog.watch(start(0, 0, 10, 0), Limits.none().withMaxRss(1L << 30));
+    watchdog.setIntervalBounds(10, 60000);
+    watchdog.setCpuBudget(1e-9);
+    watchdog.sample();
+    // Even a single sample costs more than a microsecond of CPU time
+    assertEquals(60000, watchdog.getInterval());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyed() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    watchdog = new ProcessWatchdog();
+    process = new ProcessBuilder("sleep", "30").start();
+    PidProcess pidProcess = watchdog.watch(Processes.newPidProcess(process), Limits.none().withMaxAge(200, TimeUnit.MILLISECONDS));
+    watchdog.setIntervalBounds(50, 100);
+    watchdog.start();
+    assertTrue(pidProcess.waitFor(10, TimeUnit.SECONDS));
+  }
+
+}
@@ -0,0 +1,95 @@
+package org.zeroturnaround.process.test;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.ResourceRelease;
+
+public class ResourceReleaseTest extends Assert {
+
+  @Rule
+  public TemporaryFolder tmp = new TemporaryFolder();
+
+  @Test
+  public void testTimeWaitFixture() throws Exception {
+    File root = tmp.newFolder("proc");
+    FileUtils.writeStringToFile(new File(root, "net/tcp"),
+        "  sl  local_address rem_address   st tx_queue rx_queue tr tm->when retrnsmt   uid  timeout inode\n" +
+        "   0: 0100007F:1F90 0100007F:A2C4 06 00000000:00000000 03:00000A1B 00000000     0        0 0 3 0000000000000000\n" +
+        "   1: 00000000:0016 00000000:0000 0A 00000000:00000000 00:00000000 00000000     0        0 12345 1 0000000000000000 100 0 0 10 0\n",
+        "US-ASCII");
+    ResourceRelease release = ResourceRelease.none().withProcRoot(root);
+    assertTrue(release.withPorts(8080).isReleased());
+    assertFalse(release.withPorts(8080).withTimeWait(true).isReleased());
+    assertFalse(release.withPorts(80, 22).isReleased());
+    assertTrue(release.withPorts(23).isReleased());
+  }
+
+  @Test(timeout = 10000)
+  public void testPort() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    final ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    ResourceRelease release = ResourceRelease.none().withPorts(socket.getLocalPort()).withTimeout(5, TimeUnit.SECONDS);
+    assertFalse(release.isReleased());
+    closeLater(socket);
+    ProcessUtil.waitForRelease(release);
+    assertTrue(release.isReleased());
+  }
+
+  @Test(timeout = 10000)
+  public void testFile() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    File file = tmp.newFile("locked");
+    FileInputStream in = new FileInputStream(file);
+    ResourceRelease release = ResourceRelease.none().withFiles(file).withTimeout(5, TimeUnit.SECONDS);
+    assertFalse(release.isReleased());
+    closeLater(in);
+    ProcessUtil.waitForRelease(release);
+    assertTrue(release.isReleased());
+  }
+
+  @Test(timeout = 10000)
+  public void testTimeout() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    ServerSocket socket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+    try {
+      ProcessUtil.waitForRelease(ResourceRelease.none().withPorts(socket.getLocalPort()).withTimeout(200, TimeUnit.MILLISECONDS));
+      fail("Port should not be released");
+    }
+    catch (TimeoutException e) {
+      // expected
+    }
+    finally {
+      socket.close();
+    }
+  }
+
+  private static void closeLater(final Closeable closeable) {
+    new Thread() {
+      @Override
+      public void run() {
+        try {
+          Thread.sleep(300);
+          closeable.close();
+        }
+        catch (Exception e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }.start();
+  }
+
+}
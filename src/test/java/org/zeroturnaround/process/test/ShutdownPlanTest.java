@@ -0,0 +1,142 @@
+package org.zeroturnaround.process.test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.zeroturnaround.process.AbstractProcess;
+import org.zeroturnaround.process.ShutdownPlan;
+
+public class ShutdownPlanTest extends Assert {
+
+  private final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+
+  /**
+   * Finishes the given time after it was destroyed and records the events.
+   */
+  private class DelayedProcess extends AbstractProcess {
+
+    private final String name;
+
+    private final long delay;
+
+    private volatile long finishAt = Long.MAX_VALUE;
+
+    DelayedProcess(String name, long delay) {
+      this.name = name;
+      this.delay = delay;
+    }
+
+    @Override
+    public boolean isAlive() {
+      return System.nanoTime() < finishAt;
+    }
+
+    @Override
+    public void waitFor() throws InterruptedException {
+      while (isAlive()) {
+        Thread.sleep(10);
+      }
+      events.add("finished " + name);
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+      long deadline = System.nanoTime() + unit.toNanos(timeout);
+      while (isAlive()) {
+        if (System.nanoTime() >= deadline) {
+          return false;
+        }
+        Thread.sleep(10);
+      }
+      events.add("finished " + name);
+      return true;
+    }
+
+    @Override
+    public synchronized void destroy(boolean forceful) throws IOException, InterruptedException {
+      if (finishAt == Long.MAX_VALUE) {
+        events.add("destroyed " + name);
+        finishAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+      }
+    }
+
+    @Override
+    protected String getDescription() {
+      return name;
+    }
+
+  }
+
+  private int indexOf(String event) {
+    int result = events.indexOf(event);
+    assertTrue(event + " missing in " + events, result >= 0);
+    return result;
+  }
+
+  @Test(timeout = 15000)
+  public void testReverseDependencyOrder() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("worker1", new DelayedProcess("worker1", 100), "broker");
+    plan.add("worker2", new DelayedProcess("worker2", 200), "broker");
+    plan.add("broker", new DelayedProcess("broker", 100), "storage");
+    plan.add("storage", new DelayedProcess("storage", 100));
+    Map<String, Exception> errors = plan.execute();
+    assertTrue(errors.toString(), errors.isEmpty());
+    assertTrue(indexOf("finished worker1") < indexOf("destroyed broker"));
+    assertTrue(indexOf("finished worker2") < indexOf("destroyed broker"));
+    assertTrue(indexOf("finished broker") < indexOf("destroyed storage"));
+    assertTrue(indexOf("destroyed worker2") < indexOf("finished worker1"));
+  }
+
+  @Test(timeout = 15000)
+  public void testNoWaitingForLevel() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("slow", new DelayedProcess("slow", 1000), "slowDependency");
+    plan.add("slowDependency", new DelayedProcess("slowDependency", 0));
+    plan.add("fast", new DelayedProcess("fast", 0), "fastDependency");
+    plan.add("fastDependency", new DelayedProcess("fastDependency", 0));
+    assertTrue(plan.execute().isEmpty());
+    assertTrue(indexOf("destroyed fastDependency") < indexOf("finished slow"));
+  }
+
+  @Test(timeout = 15000)
+  public void testFailedNode() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("stuck", new DelayedProcess("stuck", 10000), "storage")
+        .setGracefulTimeout(100, TimeUnit.MILLISECONDS)
+        .setForcefulTimeout(100, TimeUnit.MILLISECONDS);
+    plan.add("storage", new DelayedProcess("storage", 0));
+    Map<String, Exception> errors = plan.execute();
+    assertEquals(Collections.singleton("stuck"), errors.keySet());
+    indexOf("finished storage");
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testCycle() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("a", new DelayedProcess("a", 0), "b");
+    plan.add("b", new DelayedProcess("b", 0), "a");
+    plan.execute();
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testUnknownDependency() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("a", new DelayedProcess("a", 0), "b");
+    plan.execute();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testDuplicate() throws Exception {
+    ShutdownPlan plan = new ShutdownPlan();
+    plan.add("a", new DelayedProcess("a", 0));
+    plan.add("a", new DelayedProcess("a", 0));
+  }
+
+}
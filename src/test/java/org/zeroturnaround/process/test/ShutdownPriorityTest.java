@@ -0,0 +1,68 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.ShutdownPriority;
+import org.zeroturnaround.process.SystemProcess;
+import org.zeroturnaround.process.UnixProcess;
+
+public class ShutdownPriorityTest extends Assert {
+
+  private Process process;
+
+  @Before
+  public void linuxOnly() {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      Processes.newPidProcess(process).destroyForcefully();
+      process.waitFor();
+    }
+  }
+
+  @Test
+  public void testIoPriority() throws Exception {
+    assertEquals((3 << 13) | 7, ShutdownPriority.ioPriority(ShutdownPriority.IOPRIO_CLASS_IDLE, 7));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidNiceness() throws Exception {
+    ShutdownPriority.lowest().withNiceness(20);
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroy() throws Exception {
+    process = new ProcessBuilder("sleep", "30").start();
+    SystemProcess standard = Processes.newStandardProcess(process);
+    ProcessUtil.destroyGracefullyOrForcefullyAndWait(standard, 10, TimeUnit.SECONDS, 10, TimeUnit.SECONDS, ShutdownPriority.lowest());
+    assertFalse(standard.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testPrioritiesLowered() throws Exception {
+    process = StubbornProcessFactory.createStubbornProcess();
+    UnixProcess unix = (UnixProcess) Processes.newPidProcess(process);
+    try {
+      ProcessUtil.destroyGracefullyAndWait(unix, 500, TimeUnit.MILLISECONDS, ShutdownPriority.lowest());
+      fail("TimeoutException expected");
+    }
+    catch (TimeoutException e) {
+      // expected
+    }
+    assertEquals(19, unix.getNiceness());
+    assertEquals(ShutdownPriority.ioPriority(ShutdownPriority.IOPRIO_CLASS_IDLE, 0), unix.getIoPriority());
+  }
+
+}
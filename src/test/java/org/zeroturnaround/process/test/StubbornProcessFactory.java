@@ -0,0 +1,26 @@
+package org.zeroturnaround.process.test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+/**
+ * Creates UNIX processes that ignore <code>SIGTERM</code>, so they survive the graceful destroy operation.
+ */
+public class StubbornProcessFactory {
+
+  /**
+   * Starts a shell that ignores <code>SIGTERM</code> and blocks on reading the standard input without using any CPU.
+   *
+   * @return the process, once it's ignoring the signal.
+   */
+  public static Process createStubbornProcess() throws IOException {
+    Process process = new ProcessBuilder("sh", "-c", "trap '' TERM; echo ready; read x").start();
+    String line = new BufferedReader(new InputStreamReader(process.getInputStream(), "US-ASCII")).readLine();
+    if (!"ready".equals(line)) {
+      throw new IllegalStateException("Shell did not start: " + line);
+    }
+    return process;
+  }
+
+}
@@ -0,0 +1,93 @@
+package org.zeroturnaround.process.test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.PidProcess;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SubreaperTracker;
+
+public class SubreaperTrackerTest extends Assert {
+
+  private SubreaperTracker tracker;
+
+  @Before
+  public void before() throws Exception {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+    SubreaperTracker.enableSubreaper();
+    assertTrue(SubreaperTracker.isSubreaper());
+    tracker = new SubreaperTracker();
+  }
+
+  @After
+  public void after() throws Exception {
+    if (tracker != null) {
+      tracker.stop();
+      // Zombies are reaped on the second call
+      tracker.reap();
+      tracker.reap();
+      // Don't let the other tests in the same JVM adopt orphans
+      SubreaperTracker.disableSubreaper();
+      assertFalse(SubreaperTracker.isSubreaper());
+    }
+  }
+
+  /**
+   * @return PID of a process whose parent has exited.
+   */
+  private static int startOrphan() throws Exception {
+    // The shell exits right away leaving its child behind
+    Process shell = new ProcessBuilder("sh", "-c", "sleep 30 > /dev/null & echo $!").start();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(shell.getInputStream()));
+    int orphan = Integer.parseInt(reader.readLine().trim());
+    reader.close();
+    assertEquals(0, shell.waitFor());
+    return orphan;
+  }
+
+  @Test(timeout = 20000)
+  public void testOrphanIsAdoptedAndDestroyed() throws Exception {
+    int orphan = startOrphan();
+    assertTrue(ArrayUtils.contains(tracker.getDescendants(), orphan));
+    assertTrue(ArrayUtils.contains(tracker.getAliveDescendants(), orphan));
+    assertFalse(ArrayUtils.contains(tracker.getDescendants(), PidUtil.getMyPid()));
+
+    assertTrue(tracker.destroyAll(10, TimeUnit.SECONDS));
+    assertFalse(ArrayUtils.contains(tracker.getAliveDescendants(), orphan));
+    // The orphan is reaped once it has been a zombie for a while
+    for (int i = 0; i < 3; i++) {
+      tracker.reap();
+    }
+    assertFalse(ArrayUtils.contains(tracker.getDescendants(), orphan));
+  }
+
+  @Test(timeout = 20000)
+  public void testZombieIsNotAlive() throws Exception {
+    PidProcess orphan = Processes.newPidProcess(startOrphan());
+    assertTrue(orphan.isAlive());
+    orphan.destroyForcefully();
+    // The orphan stays a zombie of the JVM until it's reaped, but it has finished
+    assertTrue(orphan.waitFor(10, TimeUnit.SECONDS));
+    assertTrue(ArrayUtils.contains(tracker.getDescendants(), orphan.getPid()));
+  }
+
+  @Test(timeout = 20000)
+  public void testBackgroundReaping() throws Exception {
+    int orphan = startOrphan();
+    tracker.start(50, TimeUnit.MILLISECONDS);
+    Processes.newPidProcess(orphan).destroyForcefully();
+    while (ArrayUtils.contains(tracker.getDescendants(), orphan)) {
+      Thread.sleep(50);
+    }
+  }
+
+}
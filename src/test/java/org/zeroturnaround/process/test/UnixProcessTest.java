@@ -0,0 +1,73 @@
+package org.zeroturnaround.process.test;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.AndProcess;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.ProcessUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.SystemProcess;
+import org.zeroturnaround.process.UnixProcess;
+
+public class UnixProcessTest extends Assert {
+
+  @Before
+  public void linuxOnly() {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+  }
+
+  @Test(timeout = 15000)
+  public void testKillAndReleaseMemory() throws Exception {
+    Process process = new ProcessBuilder("sleep", "30").start();
+    UnixProcess unix = new UnixProcess(PidUtil.getPid(process));
+    long result = unix.killAndReleaseMemory();
+    // -1 if process_mrelease is not available on this kernel
+    assertTrue("Unexpected result " + result, result >= 0 || result == -1);
+    assertTrue(unix.waitFor(5, TimeUnit.SECONDS));
+    assertFalse(unix.isAlive());
+    process.waitFor();
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyAllAndReleaseMemory() throws Exception {
+    Process first = new ProcessBuilder("sleep", "30").start();
+    Process second = new ProcessBuilder("sleep", "30").start();
+    AndProcess both = new AndProcess(Arrays.asList(new UnixProcess(PidUtil.getPid(first)), new UnixProcess(PidUtil.getPid(second))));
+    ProcessUtil.destroyForcefullyAndWait(both, 10, TimeUnit.SECONDS, true);
+    assertFalse(both.isAlive());
+    first.waitFor();
+    second.waitFor();
+  }
+
+  @Test(timeout = 15000)
+  public void testReleaseMemoryOnKill() throws Exception {
+    Process process = new ProcessBuilder("sleep", "30").start();
+    UnixProcess unix = new UnixProcess(PidUtil.getPid(process));
+    unix.setReleaseMemoryOnKill(true);
+    unix.destroyForcefully();
+    process.waitFor();
+    assertFalse(unix.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyForcefullyAndReleaseMemory() throws Exception {
+    Process process = new ProcessBuilder("sleep", "30").start();
+    SystemProcess standard = Processes.newStandardProcess(process);
+    ProcessUtil.destroyForcefullyAndWait(standard, 10, TimeUnit.SECONDS, true);
+    assertFalse(standard.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testFinished() throws Exception {
+    Process process = new ProcessBuilder("true").start();
+    process.waitFor();
+    assertEquals(-1, new UnixProcess(PidUtil.getPid(process)).killAndReleaseMemory());
+  }
+
+}
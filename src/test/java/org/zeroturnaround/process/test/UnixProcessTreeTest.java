@@ -0,0 +1,74 @@
+package org.zeroturnaround.process.test;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.SystemUtils;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.zeroturnaround.process.PidSet;
+import org.zeroturnaround.process.PidUtil;
+import org.zeroturnaround.process.Processes;
+import org.zeroturnaround.process.UnixProcessTree;
+
+public class UnixProcessTreeTest extends Assert {
+
+  private Process process;
+
+  @Before
+  public void linuxOnly() {
+    Assume.assumeTrue(SystemUtils.IS_OS_LINUX);
+  }
+
+  @After
+  public void after() throws Exception {
+    if (process != null) {
+      process.destroy();
+      process.waitFor();
+    }
+  }
+
+  private UnixProcessTree startTree() throws Exception {
+    process = new ProcessBuilder("sh", "-c", "sleep 30 & sleep 30 & wait").start();
+    UnixProcessTree tree = Processes.newProcessTree(PidUtil.getPid(process));
+    tree.setIntervalForCheckingFinished(100);
+    long deadline = System.currentTimeMillis() + 5000;
+    while (tree.getDescendants().length < 2 && System.currentTimeMillis() < deadline) {
+      Thread.sleep(50);
+    }
+    return tree;
+  }
+
+  @Test(timeout = 15000)
+  public void testDescendants() throws Exception {
+    UnixProcessTree tree = startTree();
+    assertEquals(2, tree.getDescendants().length);
+    assertTrue(tree.isAlive());
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyForcefully() throws Exception {
+    UnixProcessTree tree = startTree();
+    PidSet descendants = new PidSet(tree.getDescendants());
+    descendants.setIntervalForCheckingFinished(100);
+
+    tree.destroyForcefully();
+    process.waitFor();
+    assertTrue(descendants.waitFor(10, TimeUnit.SECONDS));
+    assertTrue(tree.waitFor(10, TimeUnit.SECONDS));
+  }
+
+  @Test(timeout = 15000)
+  public void testDestroyGracefully() throws Exception {
+    UnixProcessTree tree = startTree();
+    PidSet descendants = new PidSet(tree.getDescendants());
+    descendants.setIntervalForCheckingFinished(100);
+
+    tree.destroyGracefully();
+    process.waitFor();
+    assertTrue(descendants.waitFor(10, TimeUnit.SECONDS));
+  }
+
+}